@@ -0,0 +1,84 @@
+package glassfrog.handevaluator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for ranking 7 card hands with the {@link HandEvaluator} and the
+ * {@link TableHandRanker}, and for finding the best 5 cards of a hand.  The
+ * hands are dealt once from a fixed seed and each call ranks the next one, so
+ * every run sees the same mix of hands and the branches can't be learned.
+ * @author jdavidso
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EvaluatorBenchmark {
+
+    private static final int NUM_HANDS = 4096;
+    private static final int HAND_SIZE = 7;
+    private EvaluateHand[] hands;
+    private int[][] cards;
+    private HandEvaluator evaluator;
+    private TableHandRanker table;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        hands = new EvaluateHand[NUM_HANDS];
+        cards = new int[NUM_HANDS][HAND_SIZE];
+        for (int i = 0; i < NUM_HANDS; i++) {
+            boolean[] used = new boolean[52];
+            hands[i] = new EvaluateHand();
+            for (int c = 0; c < HAND_SIZE; c++) {
+                int card;
+                do {
+                    card = random.nextInt(52);
+                } while (used[card]);
+                used[card] = true;
+                hands[i].addCard(card);
+                cards[i][c] = card;
+            }
+        }
+        evaluator = new HandEvaluator();
+        table = TableHandRanker.getInstance();
+    }
+
+    /**
+     * Get the index of the next hand to rank
+     * @return the index
+     */
+    private int next() {
+        next = (next + 1) & (NUM_HANDS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public int rankHand() {
+        return HandEvaluator.rankHand(hands[next()]);
+    }
+
+    @Benchmark
+    public EvaluateHand getBest5CardHand() {
+        return evaluator.getBest5CardHand(hands[next()]);
+    }
+
+    @Benchmark
+    public int tableRankCards() {
+        return table.rankCards(cards[next()], HAND_SIZE);
+    }
+}
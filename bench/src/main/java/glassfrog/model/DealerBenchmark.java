@@ -0,0 +1,71 @@
+package glassfrog.model;
+
+import glassfrog.players.Player;
+import glassfrog.players.RandomLimitPlayer;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the work the {@link Dealer} does on every action: building a
+ * player's MATCHSTATE and reading the player's response.  The dealer plays
+ * one heads up limit hand first so there is a finished hand's betting and
+ * cards to encode, then sends the players that state.  The response is a
+ * full MATCHSTATE response to it from the player whose turn it is, so it
+ * takes the whole parse, including the check against the state sent.
+ * @author jdavidso
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DealerBenchmark {
+
+    private Dealer dealer;
+    private Player player;
+    private String response;
+    private String bareResponse;
+
+    @Setup
+    public void setup() {
+        LinkedList<Player> players = new LinkedList<Player>();
+        players.add(new RandomLimitPlayer("Random0", 200, 0, 1));
+        players.add(new RandomLimitPlayer("Random1", 200, 1, 2));
+        dealer = new Dealer(new Gamedef(), players, 42);
+        dealer.setHeadless(true);
+        dealer.playHands(1);
+        dealer.updatePlayers();
+        player = dealer.getCurrentPlayer();
+        response = dealer.getGameState(player) + ":c";
+        bareResponse = "r";
+        if (!dealer.parseAction(response)) {
+            throw new IllegalStateException("Dealer did not take " + response);
+        }
+    }
+
+    @Benchmark
+    public String getGameState() {
+        return dealer.getGameState(player);
+    }
+
+    @Benchmark
+    public boolean parseAction() {
+        return dealer.parseAction(response);
+    }
+
+    @Benchmark
+    public boolean parseBareAction() {
+        return dealer.parseAction(bareResponse);
+    }
+}
@@ -0,0 +1,55 @@
+package glassfrog.model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for dealing a heads up hold'em hand from the {@link Deck} with
+ * each of the shuffles, both into a new Hand as the dealer did before hands
+ * were reused and into the same Hand every time.
+ * @author jdavidso
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DeckBenchmark {
+
+    @Param({"Legacy", "FisherYates", "Counter"})
+    public String shuffle;
+    private Gamedef gamedef;
+    private Deck deck;
+    private Hand hand;
+
+    @Setup
+    public void setup() {
+        gamedef = new Gamedef();
+        deck = Deck.forShuffle(Deck.parseShuffleMode(shuffle), 42);
+        hand = new Hand(gamedef.getMaxPlayers(), gamedef.getNumRounds(),
+                gamedef.getNumPrivateCards(), gamedef.getNumPublicCards());
+    }
+
+    @Benchmark
+    public Hand dealNewHand() {
+        return deck.dealHand(gamedef.getMaxPlayers(), gamedef.getNumRounds(),
+                gamedef.getNumPrivateCards(), gamedef.getNumPublicCards());
+    }
+
+    @Benchmark
+    public Hand dealIntoHand() {
+        deck.dealHand(hand);
+        return hand;
+    }
+}
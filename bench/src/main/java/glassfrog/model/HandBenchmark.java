@@ -0,0 +1,62 @@
+package glassfrog.model;
+
+import glassfrog.players.Player;
+import glassfrog.players.RandomLimitPlayer;
+import glassfrog.players.RandomNoLimitPlayer;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for playing whole heads up hands in process, as the
+ * {@link MatchEngine} does: dealing, the betting between two random players,
+ * the showdown and paying the pot, on a headless {@link Dealer} so there is
+ * no logging.  The limit game is the default Gamedef and the no limit game is
+ * the same with 400 chip stacks.
+ * @author jdavidso
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HandBenchmark {
+
+    private static final int NO_LIMIT_STACK = 400;
+    @Param({"limit", "nolimit"})
+    public String game;
+    private Dealer dealer;
+
+    @Setup
+    public void setup() {
+        Gamedef gamedef = new Gamedef();
+        LinkedList<Player> players = new LinkedList<Player>();
+        if (game.equals("nolimit")) {
+            gamedef.setNoLimit(true);
+            gamedef.setStackSize(NO_LIMIT_STACK);
+            players.add(new RandomNoLimitPlayer("Random0", NO_LIMIT_STACK, 0, 1));
+            players.add(new RandomNoLimitPlayer("Random1", NO_LIMIT_STACK, 1, 2));
+        } else {
+            players.add(new RandomLimitPlayer("Random0", gamedef.getStackSize(), 0, 1));
+            players.add(new RandomLimitPlayer("Random1", gamedef.getStackSize(), 1, 2));
+        }
+        dealer = new Dealer(gamedef, players, 42);
+        dealer.setHeadless(true);
+    }
+
+    @Benchmark
+    public int playHand() {
+        return dealer.playHands(1);
+    }
+}
@@ -62,6 +62,14 @@ public class HandEvaluator {
       return name_hand(rankHand(h));
    }
 
+   /**
+    * Given a rank from rankHand or a HandRanker, return a string naming the
+    * hand ('Ace High Flush', etc..)
+    */
+   public static String nameHand(int rank) {
+      return name_hand(rank);
+   }
+
    /**
     * Compares two hands against each other.
     * 
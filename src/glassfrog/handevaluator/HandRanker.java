@@ -0,0 +1,27 @@
+package glassfrog.handevaluator;
+
+/**
+ * A HandRanker assigns a numerical rank to a set of cards such that the better
+ * poker hand always gets the higher number.  All implementations must produce
+ * exactly the values of {@link HandEvaluator#rankHand(EvaluateHand)} so that
+ * ranks can be compared, named and logged no matter which engine produced them.
+ *
+ * Cards are given as {@link EvaluateCard} indices {0..51}.
+ */
+public interface HandRanker {
+
+    /**
+     * Rank the cards held in an EvaluateHand
+     * @param h A hand of 5 to 7 cards
+     * @return the rank of the best 5 card poker hand in h
+     */
+    public int rankHand(EvaluateHand h);
+
+    /**
+     * Rank the first numCards card indices of the given array
+     * @param cards An array of card indices {0..51}
+     * @param numCards The number of cards in the array to use, 5 to 7
+     * @return the rank of the best 5 card poker hand in the cards
+     */
+    public int rankCards(int[] cards, int numCards);
+}
@@ -0,0 +1,34 @@
+package glassfrog.handevaluator;
+
+/**
+ * The original evaluator.  Every call is passed straight through to
+ * {@link HandEvaluator#rankHand(EvaluateHand)}.
+ */
+public class LegacyHandRanker implements HandRanker {
+
+    private EvaluateHand scratch = new EvaluateHand();
+
+    /**
+     * Rank the hand using HandEvaluator
+     * @param h A hand of 5 to 7 cards
+     * @return the rank of the best 5 card poker hand in h
+     */
+    public int rankHand(EvaluateHand h) {
+        return HandEvaluator.rankHand(h);
+    }
+
+    /**
+     * Copy the cards into a scratch EvaluateHand and rank it with HandEvaluator.
+     * Not thread safe, use one LegacyHandRanker per thread.
+     * @param cards An array of card indices {0..51}
+     * @param numCards The number of cards in the array to use, 5 to 7
+     * @return the rank of the best 5 card poker hand in the cards
+     */
+    public int rankCards(int[] cards, int numCards) {
+        scratch.makeEmpty();
+        for (int i = 0; i < numCards; i++) {
+            scratch.addCard(cards[i]);
+        }
+        return HandEvaluator.rankHand(scratch);
+    }
+}
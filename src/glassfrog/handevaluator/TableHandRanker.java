@@ -0,0 +1,183 @@
+package glassfrog.handevaluator;
+
+import java.util.HashMap;
+
+/**
+ * A lookup table hand ranker.  The rank of a non flush hand only depends on
+ * the multiset of card ranks it holds, so we walk a precomputed state table
+ * with one transition per card rank, where each state is a multiset of up to
+ * 7 ranks.  Hands holding 5 or more cards of one suit can only ever be a flush
+ * or a straight flush when there are 7 cards or less, so those are read from a
+ * second table indexed by the 13 bit rank mask of the flush suit.
+ *
+ * Both tables are filled in once at class load from
+ * {@link HandEvaluator#rankHand(EvaluateHand)}, so the ranks returned are
+ * identical to the legacy evaluator.  Ranking a hand walks the cards once and
+ * allocates nothing.  The tables are read only after construction and the
+ * shared instance is safe to use from any number of threads.
+ */
+public class TableHandRanker implements HandRanker {
+
+    private static final int MAX_CARDS = EvaluateHand.MAX_CARDS;
+    private static final int NUM_RANKS = EvaluateCard.NUM_RANKS;
+    private static final int NUM_SUITS = EvaluateCard.NUM_SUITS;
+    private static final int FLUSH_SIZE = 5;
+    private static final int RANK_MASK = (1 << NUM_RANKS) - 1;
+    private static final int SUIT_SHIFT = 16;
+    private static final byte[] CARD_RANK = new byte[EvaluateCard.NUM_CARDS];
+    private static final byte[] CARD_SHIFT = new byte[EvaluateCard.NUM_CARDS];
+
+    static {
+        for (int c = 0; c < EvaluateCard.NUM_CARDS; c++) {
+            CARD_RANK[c] = (byte) EvaluateCard.getRank(c);
+            CARD_SHIFT[c] = (byte) (EvaluateCard.getSuit(c) * SUIT_SHIFT + EvaluateCard.getRank(c));
+        }
+    }
+    private static final TableHandRanker instance = new TableHandRanker();
+
+    /** next[state * NUM_RANKS + rank] is the state reached by adding a card of rank */
+    private final int[] next;
+    /** The legacy rank of each rank multiset, assuming no flush */
+    private final int[] ranks;
+    /** The legacy rank of a flush, indexed by the rank mask of the flush suit */
+    private final int[] flushRanks;
+
+    /**
+     * Return the shared table ranker.  The tables are built the first time
+     * this class is used.
+     * @return The shared TableHandRanker
+     */
+    public static TableHandRanker getInstance() {
+        return instance;
+    }
+
+    /**
+     * Build the rank state table and the flush table.
+     */
+    private TableHandRanker() {
+        // States are found breadth first, keyed by the base 5 encoding of
+        // the rank counts.  This map is only used while building.
+        HashMap<Long, Integer> stateIds = new HashMap<Long, Integer>();
+        long[] power = new long[NUM_RANKS];
+        power[0] = 1;
+        for (int r = 1; r < NUM_RANKS; r++) {
+            power[r] = power[r - 1] * 5;
+        }
+
+        int capacity = 1 << 17;
+        long[] keys = new long[capacity];
+        int[] transitions = new int[capacity * NUM_RANKS];
+        int numStates = 1;
+        keys[0] = 0;
+        stateIds.put(0L, 0);
+        for (int state = 0; state < numStates; state++) {
+            long key = keys[state];
+            int size = 0;
+            for (int r = 0; r < NUM_RANKS; r++) {
+                size += (int) ((key / power[r]) % 5);
+            }
+            for (int r = 0; r < NUM_RANKS; r++) {
+                int count = (int) ((key / power[r]) % 5);
+                if (size >= MAX_CARDS || count >= NUM_SUITS) {
+                    transitions[state * NUM_RANKS + r] = 0;
+                    continue;
+                }
+                Long nextKey = key + power[r];
+                Integer nextId = stateIds.get(nextKey);
+                if (nextId == null) {
+                    nextId = numStates++;
+                    keys[nextId] = nextKey;
+                    stateIds.put(nextKey, nextId);
+                }
+                transitions[state * NUM_RANKS + r] = nextId;
+            }
+        }
+
+        next = new int[numStates * NUM_RANKS];
+        System.arraycopy(transitions, 0, next, 0, next.length);
+        ranks = new int[numStates];
+        EvaluateHand h = new EvaluateHand();
+        for (int state = 0; state < numStates; state++) {
+            // Deal the ranks out in ascending order cycling through the suits,
+            // which puts at most 2 of 7 cards in a suit and keeps quads legal
+            h.makeEmpty();
+            int dealt = 0;
+            for (int r = 0; r < NUM_RANKS; r++) {
+                int count = (int) ((keys[state] / power[r]) % 5);
+                for (int i = 0; i < count; i++) {
+                    h.addCard(EvaluateCard.toIndex(r, dealt++ % NUM_SUITS));
+                }
+            }
+            // HandEvaluator can't rank partial hands, leave those at 0
+            if (dealt >= FLUSH_SIZE) {
+                ranks[state] = HandEvaluator.rankHand(h);
+            }
+        }
+
+        flushRanks = new int[RANK_MASK + 1];
+        for (int mask = 0; mask <= RANK_MASK; mask++) {
+            int bits = Integer.bitCount(mask);
+            if (bits < FLUSH_SIZE || bits > MAX_CARDS) {
+                continue;
+            }
+            h.makeEmpty();
+            for (int r = 0; r < NUM_RANKS; r++) {
+                if ((mask & (1 << r)) != 0) {
+                    h.addCard(EvaluateCard.toIndex(r, EvaluateCard.SPADES));
+                }
+            }
+            flushRanks[mask] = HandEvaluator.rankHand(h);
+        }
+    }
+
+    /**
+     * Rank the cards held in an EvaluateHand
+     * @param h A hand of 5 to 7 cards
+     * @return the rank of the best 5 card poker hand in h
+     */
+    public int rankHand(EvaluateHand h) {
+        int[] cards = h.getCardArray();
+        int state = 0;
+        long suitMasks = 0;
+        for (int i = 1; i <= cards[0]; i++) {
+            int c = cards[i];
+            state = next[state * NUM_RANKS + CARD_RANK[c]];
+            suitMasks |= 1L << CARD_SHIFT[c];
+        }
+        return lookup(state, suitMasks);
+    }
+
+    /**
+     * Rank the first numCards card indices of the given array
+     * @param cards An array of card indices {0..51}
+     * @param numCards The number of cards in the array to use, 5 to 7
+     * @return the rank of the best 5 card poker hand in the cards
+     */
+    public int rankCards(int[] cards, int numCards) {
+        int state = 0;
+        long suitMasks = 0;
+        for (int i = 0; i < numCards; i++) {
+            int c = cards[i];
+            state = next[state * NUM_RANKS + CARD_RANK[c]];
+            suitMasks |= 1L << CARD_SHIFT[c];
+        }
+        return lookup(state, suitMasks);
+    }
+
+    /**
+     * Pick the flush rank if any suit holds 5 or more cards, otherwise the
+     * rank of the rank multiset
+     * @param state The final rank state
+     * @param suitMasks 16 bits of rank mask per suit
+     * @return the hand rank
+     */
+    private int lookup(int state, long suitMasks) {
+        for (int s = 0; s < NUM_SUITS; s++) {
+            int mask = (int) (suitMasks >>> (s * SUIT_SHIFT)) & RANK_MASK;
+            if (Integer.bitCount(mask) >= FLUSH_SIZE) {
+                return flushRanks[mask];
+            }
+        }
+        return ranks[state];
+    }
+}
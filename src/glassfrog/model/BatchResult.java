@@ -0,0 +1,139 @@
+package glassfrog.model;
+
+import java.io.Serializable;
+
+/**
+ * The results of a batch of matches played by the {@link BatchRunner}.  The
+ * result of every match is kept, in seed order, along with each seat's total
+ * score over the batch.
+ * @author jdavidso
+ */
+public class BatchResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final MatchResult[] results;
+    private final long[] totals;
+    private final double[] sumSquares;
+    private long handsPlayed;
+    private int disconnects;
+
+    /**
+     * Add up the results of a batch
+     * @param results The result of each match, in seed order
+     */
+    public BatchResult(MatchResult[] results) {
+        this.results = results;
+        int numPlayers = results.length > 0 ? results[0].getNumPlayers() : 0;
+        totals = new long[numPlayers];
+        sumSquares = new double[numPlayers];
+        for (MatchResult r : results) {
+            handsPlayed += r.getHandsPlayed();
+            if (r.isDisconnected()) {
+                disconnects++;
+            }
+            for (int seat = 0; seat < numPlayers; seat++) {
+                totals[seat] += r.getScore(seat);
+                sumSquares[seat] += (double) r.getScore(seat) * r.getScore(seat);
+            }
+        }
+    }
+
+    /**
+     * Get the number of matches played
+     * @return the number of matches
+     */
+    public int getNumMatches() {
+        return results.length;
+    }
+
+    /**
+     * Get the result of one match
+     * @param index The match, 0 for the first seed
+     * @return The result of the match
+     */
+    public MatchResult getResult(int index) {
+        return results[index];
+    }
+
+    /**
+     * Get the number of hands played over all matches
+     * @return the number of hands played
+     */
+    public long getHandsPlayed() {
+        return handsPlayed;
+    }
+
+    /**
+     * Get the number of matches cut short by a player failing to act
+     * @return the number of disconnected matches
+     */
+    public int getDisconnects() {
+        return disconnects;
+    }
+
+    /**
+     * Get the number of players in each match
+     * @return the number of players
+     */
+    public int getNumPlayers() {
+        return totals.length;
+    }
+
+    /**
+     * Get the name of the player in a seat, from the first match
+     * @param seat The seat
+     * @return The name of the player
+     */
+    public String getName(int seat) {
+        return results[0].getName(seat);
+    }
+
+    /**
+     * Get the total score of the player in a seat over all matches
+     * @param seat The seat
+     * @return The total score in chips
+     */
+    public long getTotalScore(int seat) {
+        return totals[seat];
+    }
+
+    /**
+     * Get the mean score per match of the player in a seat
+     * @param seat The seat
+     * @return The mean score in chips per match
+     */
+    public double getMeanScore(int seat) {
+        return results.length == 0 ? 0 : (double) totals[seat] / results.length;
+    }
+
+    /**
+     * Get the standard error of the mean score per match of the player in a seat
+     * @param seat The seat
+     * @return The standard error in chips per match
+     */
+    public double getStandardError(int seat) {
+        int n = results.length;
+        if (n < 2) {
+            return 0;
+        }
+        double mean = getMeanScore(seat);
+        double variance = (sumSquares[seat] - n * mean * mean) / (n - 1);
+        return Math.sqrt(Math.max(variance, 0) / n);
+    }
+
+    /**
+     * A string representation of the batch, a line for the batch and one for
+     * each seat
+     * @return The batch totals
+     */
+    @Override
+    public String toString() {
+        String batch = "BATCH:Matches:" + results.length + ":Hands:" + handsPlayed +
+                ":Disconnects:" + disconnects + "\n";
+        for (int seat = 0; seat < totals.length; seat++) {
+            batch += "SEAT:" + seat + ":Name:" + getName(seat) + ":Total:" + totals[seat] +
+                    ":Mean:" + getMeanScore(seat) + ":StdErr:" + getStandardError(seat) + "\n";
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,150 @@
+package glassfrog.model;
+
+import glassfrog.players.Player;
+import glassfrog.players.PlayerFactory;
+import glassfrog.tools.Threads;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The BatchRunner plays a series of matches, one for each seed in a range,
+ * between the same line up of in process players and adds up their scores.
+ *
+ * The matches are spread over a number of worker threads, one per core by
+ * default.  Each worker takes the next unplayed seed from a shared counter, so
+ * a worker that gets short matches just plays more of them, and plays it on
+ * its own headless {@link Dealer} with new Players from the factories.  A
+ * match depends only on its seed, so the result for each seed is the same
+ * however many threads are used.
+ * @author jdavidso
+ */
+public class BatchRunner {
+
+    private final MatchEngine engine;
+    private final List<PlayerFactory> factories;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean duplicate = false;
+
+    /**
+     * Create a runner for a line up of players
+     * @param gamedef The Gamedef to play
+     * @param factories A factory for each seat, in seat order
+     */
+    public BatchRunner(Gamedef gamedef, List<PlayerFactory> factories) {
+        this.engine = new MatchEngine(gamedef);
+        this.factories = factories;
+    }
+
+    /**
+     * Get the number of worker threads
+     * @return the number of threads matches are played on
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Set the number of worker threads.  1 plays the matches one after the
+     * other on the calling thread.
+     * @param threads the number of threads to play matches on
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Check to see if duplicate matches are played
+     * @return True for duplicate matches, False otherwise
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    /**
+     * Set whether each seed is played as a duplicate match, see
+     * {@link MatchEngine#playDuplicate}
+     * @param duplicate True to play duplicate matches
+     */
+    public void setDuplicate(boolean duplicate) {
+        this.duplicate = duplicate;
+    }
+
+    /**
+     * Play a match of the Gamedef's number of hands for each seed
+     * @param firstSeed The seed of the first match
+     * @param numMatches The number of matches, with seeds firstSeed, firstSeed+1...
+     * @return The results of the matches
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public BatchResult run(int firstSeed, int numMatches) throws InterruptedException {
+        return run(firstSeed, numMatches, engine.getGamedef().getNumHands());
+    }
+
+    /**
+     * Play a match of numHands hands for each seed
+     * @param firstSeed The seed of the first match
+     * @param numMatches The number of matches, with seeds firstSeed, firstSeed+1...
+     * @param numHands The number of hands in each match
+     * @return The results of the matches
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public BatchResult run(final int firstSeed, final int numMatches, final int numHands)
+            throws InterruptedException {
+        final MatchResult[] results = new MatchResult[numMatches];
+        final AtomicInteger next = new AtomicInteger();
+        final RuntimeException[] failure = new RuntimeException[1];
+        Runnable worker = new Runnable() {
+
+            public void run() {
+                int i;
+                while ((i = next.getAndIncrement()) < numMatches) {
+                    try {
+                        results[i] = playMatch(firstSeed + i, numHands);
+                    } catch (RuntimeException ex) {
+                        synchronized (failure) {
+                            if (failure[0] == null) {
+                                failure[0] = ex;
+                            }
+                        }
+                        next.set(numMatches);
+                    }
+                }
+            }
+        };
+        int numThreads = Math.min(threads, Math.max(1, numMatches));
+        if (numThreads == 1) {
+            worker.run();
+        } else {
+            Thread[] workers = new Thread[numThreads];
+            for (int t = 0; t < numThreads; t++) {
+                workers[t] = Threads.startDaemon(worker, "BatchRunner-" + t);
+            }
+            for (Thread t : workers) {
+                t.join();
+            }
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return new BatchResult(results);
+    }
+
+    /**
+     * Play one match with new players
+     * @param seed The seed of the match
+     * @param numHands The number of hands to play
+     * @return The result of the match
+     */
+    private MatchResult playMatch(int seed, int numHands) {
+        if (duplicate) {
+            return engine.playDuplicate(factories, seed, numHands);
+        }
+        int buyIn = engine.getGamedef().getStackSize();
+        LinkedList<Player> players = new LinkedList<Player>();
+        for (int seat = 0; seat < factories.size(); seat++) {
+            players.add(factories.get(seat).newPlayer(seat, buyIn, seed));
+        }
+        return engine.play(players, seed, numHands);
+    }
+}
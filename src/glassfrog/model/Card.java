@@ -3,144 +3,142 @@ package glassfrog.model;
 import java.io.Serializable;
 
 /**
- * The Card class is used to represent cards in the deck.  The cards have a suit
- * and a rank and are initialized as such
- * 
+ * The Card class is used to represent cards in the deck.  Cards are stored
+ * throughout the model as a single int (or byte) index {0..51} so that dealing
+ * and evaluating hands never has to create objects.  The index matches
+ * {@link glassfrog.handevaluator.EvaluateCard#getIndex()}, that is
+ * suit * 13 + rank, where the suits are {0..3} == {Clubs, Diamonds, Hearts,
+ * Spades} and the ranks are {0..12} == {2..Ace}.
+ *
+ * The static methods work on card indices directly.  A Card object simply
+ * wraps an index for callers that want one.
+ *
  * @author jdavidso
  */
 public class Card implements Serializable{
-    private Integer rank;
-    private String suit;
-   
-    /**
-     * A default constructor with rank 0 and unsuited.
-     */
-    public Card() {
-        rank = 0;
-        suit = "Unsuited";
+
+    public static final int NUM_SUITS = 4;
+    public static final int NUM_RANKS = 13;
+    public static final int NUM_CARDS = 52;
+    public static final int CLUBS = 0;
+    public static final int DIAMONDS = 1;
+    public static final int HEARTS = 2;
+    public static final int SPADES = 3;
+    public static final int TWO = 0;
+    public static final int TEN = 8;
+    public static final int JACK = 9;
+    public static final int QUEEN = 10;
+    public static final int KING = 11;
+    public static final int ACE = 12;
+    public static final int BAD_CARD = -1;
+    private static final String RANK_CHARS = "23456789TJQKA";
+    private static final String SUIT_CHARS = "cdhs";
+    private static final String[] CARD_STRINGS = new String[NUM_CARDS];
+
+    static {
+        for (int card = 0; card < NUM_CARDS; card++) {
+            CARD_STRINGS[card] = "" + RANK_CHARS.charAt(getRank(card)) +
+                    SUIT_CHARS.charAt(getSuit(card));
+        }
     }
 
+    private byte index;
+
     /**
-     * This is the constructor most often used to create a card with a given 
-     * suit and rank.
-     * 
-     * @param suit The String representation of a playing card suit
-     * @param rank The Integer representation of the card suit.
+     * Construct a card from its index
+     * @param index an int {0..51} representing the card
      */
-    public Card(String suit, Integer rank){
-        this.rank = rank;
-        this.suit = suit;
+    public Card(int index) {
+        this.index = (byte) index;
     }
-    
+
     /**
      * This constructor constructs a card out of just a string.
-     * Strinks are Rank then Suit, as such As for the Ace of spades, Kh for the
+     * Strings are Rank then Suit, as such As for the Ace of spades, Kh for the
      * king of hearts Qd for the queen of diamonds Jc for the Jack of clubs then
      * Th for the 10 of hearts 9-2 for the other ranks
      * @param cardString A String representation of the card
+     * @throws IllegalArgumentException if the string is not a card
      */
     public Card(String cardString) {
-        switch(cardString.toUpperCase().charAt(0)) {
-            case 'A':
-                this.rank = 1;
-                break;
-            case 'K':
-                this.rank = 13;
-                break;
-            case 'Q':
-                this.rank = 12;
-                break;
-            case 'J':
-                this.rank = 11;
-                break;
-            case 'T':
-                this.rank = 10;
-                break;
-            default:
-                try {
-                    this.rank = new Integer(cardString.substring(0,1));
-                } catch (NumberFormatException ex) {
-                    this.rank = 0;
-                }
+        int card = parse(cardString);
+        if (card == BAD_CARD) {
+            throw new IllegalArgumentException("Invalid card " + cardString);
         }
-        switch(cardString.toLowerCase().charAt(1)) {
-            case 's':
-                this.suit = "Spades";
-                break;
-            case 'h':
-                this.suit = "Hearts";
-                break;
-            case 'd':
-                this.suit = "Diamonds";
-                break;
-            case 'c':
-                this.suit = "Clubs";
-                break;            
-            default: this.suit = "Unsuited";
-        }
-        
-    }
-
-    /**
-     * Returns the rank of the Card
-     * 
-     * @return rank
-     */
-    public Integer getRank() {
-        return rank;
+        this.index = (byte) card;
     }
 
     /**
-     * Returns the suit of the Card
-     * 
-     * @return suit
+     * Returns the index of the Card
+     * @return an int {0..51} representing the card
      */
-    public String getSuit() {
-        return suit;
+    public int getIndex() {
+        return index;
     }
 
     /**
-     * Returns a human readable String representation of the Card given by the 
+     * Returns a human readable String representation of the Card given by the
      * rank then the first character of the suit.  ie: 7d, Ac
-     * 
+     *
      * @return a String representing the card (Suit and Rank)
      */
     @Override
     public String toString() {
-        return printRank() + printSuit();
+        return toString(index);
+    }
+
+    /**
+     * Build a card index from a rank and a suit
+     * @param rank an int {0..12} representing 2 through Ace
+     * @param suit an int {0..3} representing clubs, diamonds, hearts, spades
+     * @return the card index
+     */
+    public static int toIndex(int rank, int suit) {
+        return suit * NUM_RANKS + rank;
+    }
+
+    /**
+     * Get the rank of a card index
+     * @param card a card index
+     * @return an int {0..12} representing 2 through Ace
+     */
+    public static int getRank(int card) {
+        return card % NUM_RANKS;
     }
 
     /**
-     * Returns the first character of the suit in lower case.
-     * 
-     * @return substring(0,1) suit
+     * Get the suit of a card index
+     * @param card a card index
+     * @return an int {0..3} representing clubs, diamonds, hearts, spades
      */
-    private String printSuit() {
-        return suit.substring(0, 1).toLowerCase();
+    public static int getSuit(int card) {
+        return card / NUM_RANKS;
     }
 
     /**
-     * Returns a human readable rank from the rank integer.
-     * 
-     * @return rank {(0-9, T, J, Q, K, A }
+     * Get the two character String for a card index, ie: 7d, Ac.  The Strings
+     * are cached so this does not allocate.
+     * @param card a card index
+     * @return a String representing the card
      */
-    private String printRank() {
-        if (rank == 1) {
-            return "A";
-        } else if (rank < 10) {
-            return rank.toString();
-        } else {
-            switch (rank) {
-                case 10:
-                    return "T";
-                case 11:
-                    return "J";
-                case 12:
-                    return "Q";
-                case 13:
-                    return "K";
-            }
+    public static String toString(int card) {
+        return CARD_STRINGS[card];
+    }
+
+    /**
+     * Parse a two character card String such as As or 7d into a card index
+     * @param cardString A String representation of the card
+     * @return the card index, or BAD_CARD if the String is not a card
+     */
+    public static int parse(String cardString) {
+        if (cardString == null || cardString.length() < 2) {
+            return BAD_CARD;
+        }
+        int rank = RANK_CHARS.indexOf(Character.toUpperCase(cardString.charAt(0)));
+        int suit = SUIT_CHARS.indexOf(Character.toLowerCase(cardString.charAt(1)));
+        if (rank < 0 || suit < 0) {
+            return BAD_CARD;
         }
-        return "";
+        return toIndex(rank, suit);
     }
 }
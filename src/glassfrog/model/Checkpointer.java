@@ -0,0 +1,161 @@
+package glassfrog.model;
+
+import glassfrog.tools.Threads;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The Checkpointer saves a dealer's {@link DealerSnapshot} at the end of a
+ * hand without holding up the betting.  The dealer builds the snapshot, which
+ * is a few small arrays, and hands it over; a single background writer shared
+ * by every dealer encodes it and replaces the snapshot file with
+ * {@link DealerSnapshot#save}, which writes a temporary file, syncs it to disk
+ * and renames it over the old one.  After a crash the snapshot file always
+ * holds a whole snapshot, of the last hand that was checkpointed.
+ *
+ * Only the newest snapshot of each file is kept: if the writer falls behind,
+ * a snapshot waiting to be written is replaced by the next one for the same
+ * file.
+ *
+ * How often a checkpoint is taken is set for all dealers with the system
+ * property glassfrog.checkpoint, the number of hands between checkpoints (1,
+ * every hand, by default).  0 turns checkpoints off, leaving only the saves
+ * the Room makes when the dealer starts and stops.  For instance
+ * java -Dglassfrog.checkpoint=10 -jar GlassFrog.jar
+ * @author jdavidso
+ */
+public class Checkpointer {
+
+    public static final String INTERVAL_PROPERTY = "glassfrog.checkpoint";
+    private static final int INTERVAL;
+    private static final LinkedHashMap<String, DealerSnapshot> pending =
+            new LinkedHashMap<String, DealerSnapshot>();
+    private static final Object writeLock = new Object();
+    private static Thread writer;
+
+    static {
+        String interval = System.getProperty(INTERVAL_PROPERTY, "1");
+        int hands = 1;
+        try {
+            hands = Math.max(0, Integer.parseInt(interval));
+        } catch (NumberFormatException ex) {
+            Logger.getLogger("errorlogger").log(Level.WARNING,
+                    "Unknown " + INTERVAL_PROPERTY + " " + interval + ", checkpointing every hand");
+        }
+        INTERVAL = hands;
+    }
+
+    private Checkpointer() {
+    }
+
+    /**
+     * Get the number of hands between checkpoints
+     * @return the interval, or 0 if checkpoints are off
+     */
+    public static int getInterval() {
+        return INTERVAL;
+    }
+
+    /**
+     * Check to see if a checkpoint is due after a hand
+     * @param handsPlayed The number of hands played so far
+     * @return True if checkpoints are on and the hand is on the interval
+     */
+    public static boolean isDue(int handsPlayed) {
+        return INTERVAL > 0 && handsPlayed % INTERVAL == 0;
+    }
+
+    /**
+     * Queue a snapshot to be written to a file by the background writer,
+     * replacing any snapshot still waiting for the same file
+     * @param filename The snapshot file
+     * @param snapshot The snapshot
+     */
+    public static void checkpoint(String filename, DealerSnapshot snapshot) {
+        synchronized (pending) {
+            pending.put(filename, snapshot);
+            pending.notify();
+        }
+        startWriter();
+    }
+
+    /**
+     * Write a snapshot to a file now, on this thread.  A checkpoint of the
+     * same file still waiting to be written is dropped, so an older
+     * checkpoint never replaces this snapshot.
+     * @param filename The snapshot file
+     * @param snapshot The snapshot
+     * @throws java.io.IOException on a write error
+     */
+    public static void save(String filename, DealerSnapshot snapshot) throws IOException {
+        synchronized (writeLock) {
+            synchronized (pending) {
+                pending.remove(filename);
+            }
+            snapshot.save(filename);
+        }
+    }
+
+    /**
+     * Start the shared writer thread the first time a checkpoint is queued
+     */
+    private static synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = Threads.startDaemon(new Runnable() {
+
+            public void run() {
+                write();
+            }
+        }, "CheckpointWriter");
+    }
+
+    /**
+     * The writer loop.  Wait for a checkpoint and write the oldest one.  The
+     * checkpoint is taken out of the queue and written while holding the
+     * write lock, so a {@link #save} of the same file is never overtaken.
+     */
+    private static void write() {
+        while (true) {
+            synchronized (pending) {
+                while (pending.isEmpty()) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException ex) {
+                        //Nothing interrupts the writer, and a spurious wake
+                        //up just checks the queue again
+                    }
+                }
+            }
+            synchronized (writeLock) {
+                String filename = null;
+                DealerSnapshot snapshot = null;
+                synchronized (pending) {
+                    Iterator<Map.Entry<String, DealerSnapshot>> it = pending.entrySet().iterator();
+                    if (it.hasNext()) {
+                        Map.Entry<String, DealerSnapshot> next = it.next();
+                        filename = next.getKey();
+                        snapshot = next.getValue();
+                        it.remove();
+                    }
+                }
+                if (snapshot != null) {
+                    try {
+                        snapshot.save(filename);
+                    } catch (IOException ex) {
+                        Logger.getLogger("errorlogger").log(Level.SEVERE,
+                                "Could not write checkpoint " + filename + ": " + ex.toString());
+                    } catch (RuntimeException ex) {
+                        Logger.getLogger("errorlogger").log(Level.SEVERE,
+                                "Could not write checkpoint " + filename + ": " + ex.toString());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -4,13 +4,12 @@ import glassfrog.players.HandRankComparator;
 import glassfrog.players.Player;
 import glassfrog.players.PositionComparator;
 import glassfrog.players.PotCommitedComparator;
-import glassfrog.handevaluator.EvaluateHand;
 import glassfrog.handevaluator.HandEvaluator;
+import glassfrog.handevaluator.HandRanker;
+import glassfrog.handevaluator.TableHandRanker;
 import glassfrog.players.AAAIPlayer;
 import glassfrog.players.SeatComparator;
 import glassfrog.players.SocketPlayer;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -18,7 +17,7 @@ import java.io.Serializable;
 import java.security.SecureRandom;
 import java.util.Collections;
 import java.util.LinkedList;
-import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
@@ -42,17 +41,37 @@ public class Dealer implements Runnable, Serializable {
     private Gamedef gamedef;
     private GameState gamestate;
     private Hand currentHand;
+    private Hand dealtHand;
     private LinkedList<Player> players;
     private Deck deck;
     private int currentPlayer;
     private int handsPlayed;
-    private String lastAction,  matchLog,  matchLogger,  errorLog,  errorLogger,  name;
+    private static final int NO_AMOUNT = -1;
+    private static final int POKER_HAND = 5;
+    private char actionType;
+    private int actionAmount = NO_AMOUNT;
+    private String matchLog,  matchLogger,  errorLog,  errorLogger,  name;
     private boolean gameOver = false;
     private boolean hasReported = false;
     private boolean shuffle = true;        
+    private boolean headless = false;
     private transient FileHandler errorFileHandler,  matchFileHandler;
-    private transient FileWriter rawLog, divatLog;
-    private transient BufferedWriter rawLogWriter, divatLogWriter;
+    private transient MatchLog log;
+    private transient HandRanker handRanker;
+    private transient int[] evaluationCards;
+    private transient int[] bestCards;
+    private transient int[] rankCounts;
+    private transient StringBuilder cardString;
+    private transient MatchStateEncoder encoder;
+    private transient HandHistory history;
+    private transient String[] sentStates;
+    private transient int responseKind;
+    private transient String responseText;
+    private transient String checkpointFile;
+    private transient boolean timed;
+    private transient long actionStartTime;
+    private transient long actionDeadline;
+    private transient MatchMetrics metrics;
     private boolean disconnected = false;
 
     /**
@@ -62,6 +81,7 @@ public class Dealer implements Runnable, Serializable {
         gamedef = new Gamedef();
         currentHand = new Hand();
         players = new LinkedList<Player>();
+        metrics = new MatchMetrics(players);
     }
 
     /**
@@ -76,11 +96,12 @@ public class Dealer implements Runnable, Serializable {
         this.gamedef = gamedef;
         this.players = players;
         int seed = new SecureRandom().nextInt();
-        deck = new Deck(seed);
+        deck = Deck.forShuffle(gamedef.getShuffleMode(), seed);
         handsPlayed = 0;
         for (Player p : players) {
             p.setPosition(p.getSeat());
         }
+        metrics = new MatchMetrics(players);
     }
 
     /**
@@ -94,11 +115,12 @@ public class Dealer implements Runnable, Serializable {
     public Dealer(Gamedef gamedef, LinkedList<Player> players, int seed) {
         this.gamedef = gamedef;
         this.players = players;
-        deck = new Deck(seed);
+        deck = Deck.forShuffle(gamedef.getShuffleMode(), seed);
         handsPlayed = 0;
         for (Player p : players) {
             p.setPosition(p.getSeat());
         }
+        metrics = new MatchMetrics(players);
     }
 
     /**
@@ -114,11 +136,33 @@ public class Dealer implements Runnable, Serializable {
         this.gamedef = gamedef;
         this.players = players;
         this.name = name;
-        deck = new Deck(seed);
+        deck = Deck.forShuffle(gamedef.getShuffleMode(), seed);
         handsPlayed = 0;
         for (Player p : players) {
             p.setPosition(p.getSeat());
         }
+        metrics = new MatchMetrics(players);
+    }
+
+    /**
+     * Dealer constructor that takes a ready made Deck, for instance one built
+     * on a {@link XoshiroDeckRandom} with the Fisher-Yates shuffle.
+     *
+     * @param gamedef The Gamedef that will be used to play
+     * @param players A list of Players that will be seated in the game.
+     * @param deck The Deck to deal from
+     * @param name A String to represent the name of the game for the log file
+     */
+    public Dealer(Gamedef gamedef, LinkedList<Player> players, Deck deck, String name) {
+        this.gamedef = gamedef;
+        this.players = players;
+        this.name = name;
+        this.deck = deck;
+        handsPlayed = 0;
+        for (Player p : players) {
+            p.setPosition(p.getSeat());
+        }
+        metrics = new MatchMetrics(players);
     }
 
     /**
@@ -132,10 +176,7 @@ public class Dealer implements Runnable, Serializable {
                     if (p1.isSocketPlayer()) {
                         if (p.getName().equalsIgnoreCase(p1.getName())) {
                             try {
-                                ((SocketPlayer) p).reconnect(((SocketPlayer) p1).getSocket());
-                            } catch (IOException ex) {
-                                logError(ex);
-                                return false;
+                                ((SocketPlayer) p).reconnect((SocketPlayer) p1);
                             } catch (NullPointerException ex) {
                                 logError(ex);
                                 return false;
@@ -197,10 +238,12 @@ public class Dealer implements Runnable, Serializable {
             matchFileHandler = new FileHandler(matchLog, true);
             matchFileHandler.setFormatter(new SimpleFormatter());
             Logger.getLogger(matchLogger).addHandler(matchFileHandler);
-            rawLog = new FileWriter(logPath + name + ".dealer.rawlog", true);
-            rawLogWriter = new BufferedWriter(rawLog);
-            divatLog = new FileWriter(logPath + name + ".dealer.divatlog", true);
-            divatLogWriter = new BufferedWriter(divatLog);
+            log = new MatchLog(logPath + name + ".dealer", matchLogger, errorLogger);
+            if (log.hasHistory()) {
+                history = new HandHistory();
+                log.logHistory(history.header(gamedef, deck == null ? 0 : deck.getSeed(),
+                        isDivatLogged(), players));
+            }
         } catch (IOException ex) {
             System.err.println("Could not initialize dealer logs for " + name + ", exit with IO Error " + ex.toString());
         } catch (SecurityException ex) {
@@ -226,17 +269,15 @@ public class Dealer implements Runnable, Serializable {
     }
 
     /**
-     * Log a gamesate to the matchlogger
+     * Log a gamesate to the rawlog and the matchlogger.  The line is written
+     * by the {@link MatchLog} writer, off this thread.
      * @param matchstate the gamestate message to log to the match log 
      */
     public void logState(String matchstate) {
-        try {
-            rawLogWriter.write(matchstate + "\n");
-            rawLogWriter.flush();
-        } catch (IOException ex) {
-            logError(ex);
+        if (headless || log == null) {
+            return;
         }
-        Logger.getLogger(matchLogger).log(Level.INFO, matchstate);
+        log.logState(matchstate);
     }
     
     /**
@@ -258,6 +299,9 @@ public class Dealer implements Runnable, Serializable {
      * @param value The value of the game for the first player
      */
     private void logDivat() {
+        if (headless || log == null || !log.isText()) {
+            return;
+        }
         String divatLine = handsPlayed+":";
         for(Player p : players) {
             divatLine += p.getName()+",";
@@ -287,12 +331,15 @@ public class Dealer implements Runnable, Serializable {
             divatLine += p.getStack() - p.getBuyIn() + ",";            
         }        
         divatLine = divatLine.substring(0, divatLine.length()-1);
-        try {
-            divatLogWriter.write(divatLine+"\n");
-            divatLogWriter.flush();
-        } catch (IOException ex) {
-            logError(ex);
-        }
+        log.logDivat(divatLine);
+    }
+
+    /**
+     * Check to see if the match keeps a divatlog
+     * @return True for heads up limit games
+     */
+    private boolean isDivatLogged() {
+        return !gamedef.isNoLimit() && gamedef.getMaxPlayers() == 2;
     }
 
     /**
@@ -311,35 +358,19 @@ public class Dealer implements Runnable, Serializable {
      * 
      */
     public void deal() {
-        initLogging();
+        if (!headless) {
+            initLogging();
+        }
         sendPlayerInfos();
         while (!gameOver && !disconnected) {
-            //Initialize the winners, gamestate, and get a new hand
-            gamestate = new GameState();
-            gamestate.setButton(players.size() - 1);
-            for (Player p : players) {
-                p.resetPlayer();
-            }
-            Collections.sort(players, new PositionComparator());
-            //Used to check specific hands that can be pre set
-            if (shuffle) {                
-                currentHand = deck.dealHand(players.size(), gamedef.getNumRounds(),
-                        gamedef.getNumPrivateCards(), gamedef.getNumPublicCards());                
-            } else {
-                shuffle = true;
-            }            
-            logState(currentHand.toString());
-            playHand();
-            if(shuffle) {
-                logStats();            
-            }
+            playNextHand(null);
             if (handsPlayed >= gamedef.getNumHands()) {
                 gameOver = true;
             }
         }
         if (gameOver) {
             String gameOverString = "#GAMEOVER";
-            if(gamedef.hasSurvey()){
+            if(gamedef.hasSurvey() && !headless){
                 gameOverString += "||"+gamedef.getSurveyURL();
                 try {
                     String command = "python scripts/emailSurvey.py " +
@@ -355,6 +386,12 @@ public class Dealer implements Runnable, Serializable {
                 p.update(gameOverString);                
             }
         }
+        if (headless) {
+            return;
+        }
+        if (log != null) {
+            log.close();
+        }
         while (!hasReported) {
             try {
                 Thread.sleep(5000);
@@ -366,6 +403,140 @@ public class Dealer implements Runnable, Serializable {
         errorFileHandler.close();
     }
 
+    /**
+     * Play the given number of hands, or until a player disconnects, without
+     * ending the match.  This is used by the {@link MatchEngine} to play hands
+     * between in process players, and may be called again to play more hands.
+     * @param numHands The number of hands to play
+     * @return The number of hands that were played
+     */
+    public int playHands(int numHands) {
+        int start = handsPlayed;
+        while (handsPlayed - start < numHands && !disconnected) {
+            playNextHand(null);
+        }
+        return handsPlayed - start;
+    }
+
+    /**
+     * Play one hand with cards that have already been dealt instead of dealing
+     * from this dealer's deck.  This is used by the {@link MatchEngine} to
+     * replay each hand of a duplicate match with the players in different
+     * seats.  The cards go to the players by position, as they would from the
+     * deck.
+     * @param hand The dealt hand to play, which is not changed
+     */
+    public void playDealtHand(Hand hand) {
+        playNextHand(hand);
+    }
+
+    /**
+     * Reset the players and the gamestate, deal a new hand (unless a hand was
+     * given, set with setCurrentHand or is being replayed after a disconnect)
+     * and play it.
+     * @param dealt A hand that has already been dealt, or null to deal one
+     */
+    private void playNextHand(Hand dealt) {
+        //Initialize the winners, gamestate, and get a new hand
+        gamestate = new GameState();
+        gamestate.setButton(players.size() - 1);
+        for (Player p : players) {
+            p.resetPlayer();
+        }
+        Collections.sort(players, new PositionComparator());
+        //Used to check specific hands that can be pre set
+        if (dealt != null) {
+            currentHand = dealt;
+        } else if (shuffle) {
+            currentHand = dealNextHand();
+        } else {
+            shuffle = true;
+        }
+        if (!headless) {
+            logState(currentHand.toString());
+        }
+        if (history != null) {
+            history.startHand(handsPlayed, currentHand, players);
+        }
+        playHand();
+        if (shuffle && !headless) {
+            logStats();
+            if (history != null) {
+                log.logHistory(history.endHand(currentPlayer, players));
+            }
+        }
+        if (log != null && !headless) {
+            log.endHand();
+        }
+        if (checkpointFile != null && shuffle && !headless && Checkpointer.isDue(handsPlayed)) {
+            Checkpointer.checkpoint(checkpointFile, getSnapshot());
+        }
+    }
+
+    /**
+     * Get the counts and response times of the match so far
+     * @return the metrics
+     */
+    public MatchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the file the dealer checkpoints to
+     * @return the snapshot file, or null if the dealer doesn't checkpoint
+     */
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Set the file to checkpoint the match to.  A snapshot of the match is
+     * queued to the {@link Checkpointer} after each hand the glassfrog.checkpoint
+     * interval falls on, so a match can be carried on from the last
+     * checkpointed hand after a crash.  Headless dealers never checkpoint.
+     * @param checkpointFile The snapshot file, or null to not checkpoint
+     */
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Check to see if the dealer is headless
+     * @return True if the dealer writes no logs, False otherwise
+     */
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Set the dealer to run headless.  A headless dealer opens no log files,
+     * writes no match logs, sends no survey and does not wait for the Room to
+     * collect the stats at the end of the match.  Errors and warnings still go
+     * to the errorlogger.  The best five card hand strings are not worked out
+     * at showdown either, since only the GUI shows them.
+     * @param headless True to run headless
+     */
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+        if (headless && errorLogger == null) {
+            errorLogger = "errorlogger";
+        }
+    }
+
+    /**
+     * Deal the next hand from the deck into the dealer's reusable Hand.  The
+     * Hand is only reallocated if the number of players or rounds changes.
+     * @return The Hand that was dealt
+     */
+    private Hand dealNextHand() {
+        if (dealtHand == null || !dealtHand.fits(players.size(), gamedef.getNumRounds())) {
+            dealtHand = new Hand(players.size(), gamedef.getNumRounds(),
+                    gamedef.getNumPrivateCards(), gamedef.getNumPublicCards());
+        }
+        deck.dealHand(dealtHand);
+        return dealtHand;
+    }
+
     /**
      * Send the gui players the player info for correct display.
      */
@@ -384,6 +555,122 @@ public class Dealer implements Runnable, Serializable {
         }
     }
 
+    /**
+     * Find the best 5 of the first numCards evaluationCards with the
+     * HandRanker and write them as {@link HandEvaluator#getBest5CardHand}
+     * does: the largest groups of a rank first, then the higher ranks, the
+     * ace last in a 5 high straight, and cards of the same rank in the order
+     * they were dealt.  Nothing is allocated but the String.
+     * @param ranker The ranker the hand was ranked with
+     * @param numCards The number of cards, 5 or more
+     * @param rank The rank of the cards
+     * @return The best 5 cards, each preceded by a space
+     */
+    private String getBest5CardString(HandRanker ranker, int numCards, int rank) {
+        if (bestCards == null) {
+            bestCards = new int[POKER_HAND];
+            rankCounts = new int[Card.NUM_RANKS];
+            cardString = new StringBuilder(POKER_HAND * 3);
+        }
+        int[] cards = evaluationCards;
+        int[] best = bestCards;
+        //The first 5 cards that make the rank, in the order they were dealt
+        found:
+        for (int a = 0; a < numCards; a++) {
+            for (int b = a + 1; b < numCards; b++) {
+                for (int c = b + 1; c < numCards; c++) {
+                    for (int d = c + 1; d < numCards; d++) {
+                        for (int e = d + 1; e < numCards; e++) {
+                            best[0] = cards[a];
+                            best[1] = cards[b];
+                            best[2] = cards[c];
+                            best[3] = cards[d];
+                            best[4] = cards[e];
+                            if (ranker.rankCards(best, POKER_HAND) == rank) {
+                                break found;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < Card.NUM_RANKS; i++) {
+            rankCounts[i] = 0;
+        }
+        for (int i = 0; i < POKER_HAND; i++) {
+            rankCounts[Card.getRank(best[i])]++;
+        }
+        boolean wheel = rankCounts[Card.ACE] == 1 && rankCounts[Card.TWO] == 1 &&
+                rankCounts[1] == 1 && rankCounts[2] == 1 && rankCounts[3] == 1;
+        //A straight takes the last dealt card of each rank, as Find_Straight
+        //does.  Unpaired, unsuited cards that are not a straight have no other
+        //card of their ranks to take
+        boolean paired = false;
+        boolean suited = true;
+        for (int i = 0; i < POKER_HAND; i++) {
+            paired |= rankCounts[Card.getRank(best[i])] > 1;
+            suited &= Card.getSuit(best[i]) == Card.getSuit(best[0]);
+        }
+        if (!paired && !suited) {
+            for (int i = 0; i < POKER_HAND; i++) {
+                for (int j = 0; j < numCards; j++) {
+                    if (Card.getRank(cards[j]) == Card.getRank(best[i])) {
+                        best[i] = cards[j];
+                    }
+                }
+            }
+        }
+        //Insertion sort keeps cards of the same rank in the order dealt
+        for (int i = 1; i < POKER_HAND; i++) {
+            int card = best[i];
+            int j = i - 1;
+            while (j >= 0 && cardOrder(best[j], wheel) < cardOrder(card, wheel)) {
+                best[j + 1] = best[j];
+                j--;
+            }
+            best[j + 1] = card;
+        }
+        cardString.setLength(0);
+        for (int i = 0; i < POKER_HAND; i++) {
+            cardString.append(' ').append(Card.toString(best[i]));
+        }
+        return cardString.toString();
+    }
+
+    /**
+     * Get the order a card is written in by getBest5CardString, higher first
+     * @param card The card index
+     * @param wheel True if the cards are a 5 high straight
+     * @return The size of the card's rank group, then its rank
+     */
+    private int cardOrder(int card, boolean wheel) {
+        int rank = Card.getRank(card);
+        int order = wheel && rank == Card.ACE ? -1 : rank;
+        return rankCounts[rank] * Card.NUM_RANKS + order;
+    }
+
+    /**
+     * Get the HandRanker used to rank hands at showdown.  Defaults to the shared
+     * {@link TableHandRanker} if none has been set
+     * @return the HandRanker used by this dealer
+     */
+    public HandRanker getHandRanker() {
+        if (handRanker == null) {
+            handRanker = TableHandRanker.getInstance();
+        }
+        return handRanker;
+    }
+
+    /**
+     * Set the HandRanker used to rank hands at showdown, for example a
+     * {@link glassfrog.handevaluator.LegacyHandRanker} to use the original
+     * HandEvaluator code
+     * @param handRanker the HandRanker to use
+     */
+    public void setHandRanker(HandRanker handRanker) {
+        this.handRanker = handRanker;
+    }
+
     /**
      * Only used for test purposed, this is a method to create a specific hand
      */
@@ -408,6 +695,7 @@ public class Dealer implements Runnable, Serializable {
         if (shuffle) {
             evaluateHand();
             handsPlayed++;
+            metrics.handPlayed();
             for (Player p : players) {
                 p.setPosition((p.getPosition() + 1) % players.size());
             }
@@ -436,10 +724,19 @@ public class Dealer implements Runnable, Serializable {
             updatePlayers();
             Player p = getNextPlayer();
             try {
-                lastAction = parseAction(p.getAction());
+                startAction(p);
+                boolean answered = parseAction(nextResponse());
+                if (!answered) {
+                    timeOut(p);
+                }
+                long took = System.nanoTime() - actionStartTime;
+                p.addActionTime(took);
+                metrics.action(p, took, !answered);
             } catch (NullPointerException ex) {
                 gamestate.setHandOver(true);
-                lastAction = "f";
+                actionType = 'f';
+                actionAmount = NO_AMOUNT;
+                responseKind = HandHistory.RESPONSE_NONE;
                 handleDisconnect();                
             }
             updateGamestate();
@@ -479,6 +776,9 @@ public class Dealer implements Runnable, Serializable {
             p.resetRound();
         }
         gamestate.nextRound();
+        if (history != null) {
+            history.nextRound();
+        }
     }
 
     /**
@@ -496,7 +796,10 @@ public class Dealer implements Runnable, Serializable {
             gamestate.makeBet(betValue, 0);
             //No Limit Betting
             if (gamedef.isNoLimit()) {
-                gamestate.addToActionString("b" + betValue);
+                gamestate.addAction('b', betValue, true);
+                if (history != null) {
+                    history.blind(betValue);
+                }
             }
         }
         gamestate.setNumBets(0);
@@ -565,43 +868,36 @@ public class Dealer implements Runnable, Serializable {
         int currentBet = gamestate.getCurrentBet();
         int playerBet = p.getCurrentBet();
 
-        switch (lastAction.toLowerCase().charAt(0)) {
+        switch (actionType) {
             case 'f':
                 //fold case
                 p.fold();
-                gamestate.addToActionString("f");
+                addAction('f', 0, false);
                 break;
             case 'c':
                 //call case
                 gamestate.makeBet(p.call(currentBet), playerBet);
-                gamestate.addToActionString("c");
-                if (gamedef.isNoLimit()) {
-                    gamestate.addToActionString("" + currentBet);
-                }
+                addAction('c', currentBet, gamedef.isNoLimit());
                 break;
             case 'r':
                 //raise case
-                if (lastAction.length() > 1) {
-                    try {                        
-                        raise = new Integer(lastAction.substring(1)).intValue() - playerBet;
-                        if (raise <= 0 || raise < gamestate.getMinBet()) {
-                            lastAction = "c";
-                            updateGamestate();
-                            return;
-                        } else {
-                            gamestate.addToActionString("r" + (raise + playerBet));
-                        }
-                    } catch (NumberFormatException e) {
-                        //Do nothing yet
+                if (actionAmount != NO_AMOUNT) {
+                    raise = actionAmount - playerBet;
+                    if (raise <= 0 || raise < gamestate.getMinBet()) {
+                        actionType = 'c';
+                        updateGamestate();
+                        return;
+                    } else {
+                        addAction('r', raise + playerBet, true);
                     }
                 } else {
                     if (gamestate.getNumBets() >= gamedef.getBetsPerRound()[gamestate.getRound()]) {
-                        lastAction = "c";
+                        actionType = 'c';
                         updateGamestate();
                         return;
                     }
                     raise = gamestate.getCurrentBet() + gamedef.getBet(gamestate.getRound()) - playerBet;
-                    gamestate.addToActionString("r");
+                    addAction('r', raise + playerBet, false);
                 }
                 gamestate.makeBet(p.bet(raise), playerBet);
                 break;
@@ -613,6 +909,20 @@ public class Dealer implements Runnable, Serializable {
         gamestate.setHandOver(isHandOver());
     }
 
+    /**
+     * Add the current player's action to the gamestate, and to the hand
+     * history along with the response it came from
+     * @param action one of {f,c,r}
+     * @param amount the amount bet to
+     * @param showAmount True if the amount is shown in the betting
+     */
+    private void addAction(char action, int amount, boolean showAmount) {
+        gamestate.addAction(action, amount, showAmount);
+        if (history != null) {
+            history.action(action, amount, showAmount, currentPlayer, responseKind, responseText);
+        }
+    }
+
     /**
      * Check to see if everyone is all in or has folded (basically nobody can 
      * act anymore)
@@ -655,18 +965,23 @@ public class Dealer implements Runnable, Serializable {
      * 
      */
     private void evaluateHand() {
-        String cardString;
         LinkedList<Player> rankedPlayers = new LinkedList<Player>();
         LinkedList<Player> foldedPlayers = new LinkedList<Player>();
-        HandEvaluator h = new HandEvaluator();
-        
+        HandRanker ranker = getHandRanker();
+        if (evaluationCards == null || evaluationCards.length < currentHand.getEvaluationSize()) {
+            evaluationCards = new int[currentHand.getEvaluationSize()];
+        }
+
         //Assign Hand Ranks
         for (Player p : players) {
-            cardString = currentHand.getEvaluationString(players.indexOf(p));
             if (!p.isFolded()) {
-                p.setHandRank(HandEvaluator.rankHand(new EvaluateHand(cardString)));
-                p.setHandString(HandEvaluator.nameHand(new EvaluateHand(cardString)));
-                p.setCardString(h.getBest5CardHand(new EvaluateHand(cardString)).toString());
+                int numCards = currentHand.getEvaluationCards(players.indexOf(p), evaluationCards);
+                int rank = ranker.rankCards(evaluationCards, numCards);
+                p.setHandRank(rank);
+                p.setHandString(HandEvaluator.nameHand(rank));
+                if (!headless) {
+                    p.setCardString(getBest5CardString(ranker, numCards, rank));
+                }
                 rankedPlayers.add(p);
             } else {
                 p.setHandRank(-1);
@@ -674,6 +989,9 @@ public class Dealer implements Runnable, Serializable {
             }
         }
 
+        if (rankedPlayers.size() > 1) {
+            metrics.showdown();
+        }
         int i = 0;
         while (gamestate.getPotsize() > 0) {
             i++;
@@ -726,10 +1044,13 @@ public class Dealer implements Runnable, Serializable {
             }
 
             //Let the players see the hand if there was a showdown
-            if (rankedPlayers.size() > 1) {
+            boolean showdown = rankedPlayers.size() > 1;
+            if (showdown) {
                 for (Player p : players) {
-                    p.update(getShowdownGameState(p));
-                    logState(getShowdownGameState(p));
+                    String showdownState = getShowdownGameState(p);
+                    p.update(showdownState);
+                    metrics.sent(showdownState);
+                    logState(showdownState);
                 }
             }
 
@@ -753,49 +1074,34 @@ public class Dealer implements Runnable, Serializable {
                 int score = p.getStack() - p.getBuyIn();
                 p.addToScore(score);                
             }
-            if(!gamedef.isNoLimit() && gamedef.getMaxPlayers() == 2) {
+            if(isDivatLogged()) {
                 logDivat();
             }
+            if (history != null) {
+                history.pot(i == 1, showdown, players);
+            }
         }
     }
 
+    /**
+     * Get the player whose turn it is.  Package private for the benchmarks in
+     * bench/
+     * @return The current player
+     */
+    Player getCurrentPlayer() {
+        return players.get(currentPlayer);
+    }
+
     /**
      * Get the gamestate for the specified player in the AAAI competition format
      * This is a string representation of the betting, and the private and public
-     * cards
+     * cards.  Package private for the benchmarks in bench/
      * @param p The player for whom to show the gamestate
      * @return A string representing the current state of the game
      */
-    private String getGameState(Player p) {
-        String delimiter = ":";
-        String currentGameState = "MATCHSTATE" + delimiter;
-        currentGameState += p.getPosition() + delimiter;
-        currentGameState += handsPlayed + delimiter;
-        currentGameState += gamestate.getActionString() + delimiter;
-
-        for (Player player : players) {
-            if (player.equals(p)) {
-                for (int round = 0; round <= gamestate.getRound(); round++) {
-                    String privateCardString = currentHand.getPrivateCardsString(
-                            p.getPosition(), round);
-                    currentGameState += (round > 0 &&
-                            !privateCardString.equalsIgnoreCase("") ? "/" : "");
-                    currentGameState += privateCardString;
-                }
-            }
-            if (player.getPosition() < (players.size() - 1)) {
-                currentGameState += "|";
-            }
-        }
-
-        for (int round = 0; round <= gamestate.getRound(); round++) {
-            String publicCardString = currentHand.getPublicCardsString(round);
-            currentGameState += (round > 0 &&
-                    !publicCardString.equalsIgnoreCase("") ? "/" : "");
-            currentGameState += publicCardString;
-        }
-
-        return currentGameState;
+    String getGameState(Player p) {
+        return getEncoder().encode(p.getPosition(), handsPlayed,
+                gamestate.getActionString(), currentHand, gamestate.getRound());
     }
 
     /**
@@ -804,68 +1110,239 @@ public class Dealer implements Runnable, Serializable {
      * @return A string representation of the Full Showdown Gamestate
      */
     private String getShowdownGameState(Player p) {
-        String delimiter = ":";
-        String fullGameState = "MATCHSTATE" + delimiter;
-        fullGameState += p.getPosition() + delimiter;
-        fullGameState += handsPlayed + delimiter;
-        fullGameState += gamestate.getActionString() + delimiter;
+        return getEncoder().encodeShowdown(p.getPosition(), handsPlayed,
+                gamestate.getActionString(), currentHand);
+    }
+
+    /**
+     * Get the encoder for the MATCHSTATE messages, creating it the first time
+     * (or after the dealer has been loaded from file)
+     * @return this dealer's MatchStateEncoder
+     */
+    private MatchStateEncoder getEncoder() {
+        if (encoder == null) {
+            encoder = new MatchStateEncoder();
+        }
+        return encoder;
+    }
 
-        for (Player player : players) {
-            for (int round = 0; round < gamedef.getNumRounds(); round++) {
-                String privateCardString = currentHand.getPrivateCardsString(
-                        player.getPosition(), round);
-                fullGameState += (round > 0 &&
-                        !privateCardString.equalsIgnoreCase("") ? "/" : "");
-                fullGameState += privateCardString;
+    /**
+     * Send the players thier new gamestates.  The state sent to each position
+     * is kept so a response can be checked against it.  Package private for
+     * the benchmarks in bench/
+     */
+    void updatePlayers() {
+        if (sentStates == null || sentStates.length != players.size()) {
+            sentStates = new String[players.size()];
+        }
+        for (Player p : players) {
+            String matchstate = getGameState(p);
+            p.update(matchstate);
+            metrics.sent(matchstate);
+            logState(matchstate);
+            sentStates[p.getPosition()] = matchstate;
+        }
+    }
+
+    /**
+     * Parse a player's response into the actionType and actionAmount.  The
+     * response is of the form MATCHSTATE:position:handNumber:betting:cards:action
+     * where the action is one of {f,c,r,rN}.  In process players such as the
+     * RandomLimitPlayer may answer with just the action, and a response with no
+     * ':' is taken as the action.  A player whose lines are read by an
+     * ActionReader must echo the state, so that a late answer still in the
+     * reader's queue is never taken for the answer to the state just sent.
+     *
+     * The response is checked in one pass without making any objects.  A
+     * response for another hand or position, one that doesn't echo the state
+     * just sent to the player, or with an action that can't be read, is
+     * logged as a warning and the player is asked for their action
+     * again, until a good response arrives or the player runs out of time.
+     * Package private for the benchmarks in bench/
+     * 
+     * @param response The player's response, or null if the player ran out of
+     * time
+     * @return True if an action was read, False if the player ran out of time
+     */
+    boolean parseAction(String response) {        
+        while (true) {
+            if (response == null) {
+                return false;
             }
-            if (player.getPosition() < players.size() - 1) {
-                fullGameState += "|";
+            int length = response.length();
+            int field = 0;
+            int position = 0;
+            int handNumber = 0;
+            int actionStart = 0;
+            boolean numbersOk = true;
+            for (int i = 0; i < length; i++) {
+                char c = response.charAt(i);
+                if (c == ':') {
+                    field++;
+                    actionStart = i + 1;
+                } else if (field == 1 || field == 2) {
+                    if (c < '0' || c > '9') {
+                        numbersOk = false;
+                    } else if (field == 1) {
+                        position = position * 10 + (c - '0');
+                    } else {
+                        handNumber = handNumber * 10 + (c - '0');
+                    }
+                }
+            }
+            String warning = null;
+            if (field == 0 && players.get(currentPlayer).hasActionReader()) {
+                warning = "Dealer recieved an action without the state it answers " + response;
+            } else if (field == 0) {
+                if (readAction(response, 0)) {
+                    responseKind = HandHistory.RESPONSE_BARE;
+                    return true;
+                }
+                warning = "Dealer could not read action " + response;
+            } else if (field < 5 || !numbersOk) {
+                warning = "Dealer could not read response " + response;
+            } else if (handNumber != handsPlayed) {
+                warning = "Dealer recieved action for hand number " + handNumber +
+                        " waiting for hand number " + handsPlayed;
+            } else if (position != players.get(currentPlayer).getPosition()) {
+                warning = "Dealer recieved action for position " + position +
+                        " waiting for position " + players.get(currentPlayer).getPosition();
+            } else if (!isSentState(response, position, actionStart)) {
+                warning = "Dealer recieved a response to an earlier state " + response;
+            } else if (!readAction(response, actionStart)) {
+                warning = "Dealer could not read action in response " + response;
+            } else {
+                logState(response);
+                if (history != null) {
+                    recordResponse(response, actionStart);
+                }
+                return true;
             }
+            logWarning(warning);
+            response = nextResponse();
         }
+    }
 
-        for (int round = 0; round < gamedef.getNumRounds(); round++) {
-            String publicCardString = currentHand.getPublicCardsString(round);
-            fullGameState += (round > 0 &&
-                    !publicCardString.equalsIgnoreCase("") ? "/" : "");
-            fullGameState += publicCardString;
+    /**
+     * Start timing the current player's action.  With an ActionTimeout or
+     * HandTimeout in the Gamedef the player has until the sooner of the action
+     * limit and the end of what is left of their budget for the hand.
+     * @param p The player to act
+     */
+    private void startAction(Player p) {
+        actionStartTime = System.nanoTime();
+        timed = gamedef.isTimed();
+        if (timed) {
+            long limit = Long.MAX_VALUE;
+            if (gamedef.getActionTimeout() > 0) {
+                limit = TimeUnit.MILLISECONDS.toNanos(gamedef.getActionTimeout());
+            }
+            if (gamedef.getHandTimeout() > 0) {
+                limit = Math.min(limit,
+                        TimeUnit.MILLISECONDS.toNanos(gamedef.getHandTimeout()) - p.getHandTime());
+            }
+            actionDeadline = actionStartTime + Math.max(0, limit);
         }
-
-        return fullGameState;
     }
 
     /**
-     * Send the players thier new gamestates
+     * Get the current player's next response, waiting no longer than their
+     * time allows
+     * @return The response, or null if the player has run out of time
+     * @throws NullPointerException if the player disconnected
      */
-    private void updatePlayers() {
-        for (Player p : players) {
-            p.update(getGameState(p));
-            logState(getGameState(p));
+    private String nextResponse() {
+        Player p = players.get(currentPlayer);
+        String response;
+        if (!timed) {
+            response = p.getAction();
+            if (response == null) {
+                throw new NullPointerException("Player Disconnected");
+            }
+        } else {
+            long remaining = actionDeadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            response = p.getAction(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        }
+        if (response != null) {
+            metrics.received(response);
         }
+        return response;
     }
 
     /**
-     * Parse out the last token of the response string and return it as the action
-     * the player took
-     * 
-     * @param playerResponse
-     * @return the action from the response string
+     * Take the Gamedef's TimeoutAction for a player that ran out of time
+     * @param p The player that ran out of time
      */
-    private String parseAction(String response) {        
-        StringTokenizer st = new StringTokenizer(response, ":");
-        String action = "";
-        st.nextToken();
-        st.nextToken();
-        int handCheck = new Integer(st.nextToken()).intValue();
-        if(handCheck != handsPlayed) {
-            logWarning("Dealer recieved action for hand number "+handCheck+" waiting for hand number "+handsPlayed);
-            action = parseAction(players.get(currentPlayer).getAction());
-            return action;
+    private void timeOut(Player p) {
+        actionType = gamedef.getTimeoutAction();
+        actionAmount = NO_AMOUNT;
+        responseKind = HandHistory.RESPONSE_NONE;
+        logWarning("Player " + p.getName() + " ran out of time on hand " + handsPlayed +
+                ", " + (actionType == 'c' ? "calling" : "folding"));
+    }
+
+    /**
+     * Check that a response is the MATCHSTATE last sent to its position
+     * followed by the action.  A late answer to an earlier state, such as
+     * one the player ran out of time on, is not.
+     * @param response The response
+     * @param position The position the response is from
+     * @param actionStart The index the action starts at
+     * @return True if the response answers the state just sent
+     */
+    private boolean isSentState(String response, int position, int actionStart) {
+        String sent = sentStates == null || position >= sentStates.length ? null : sentStates[position];
+        return sent != null && actionStart == sent.length() + 1 && response.startsWith(sent);
+    }
+
+    /**
+     * Keep a logged response for the hand history.  The response has been
+     * checked to be the MATCHSTATE the player was sent followed by the
+     * action, so only the action is kept.
+     * @param response The response
+     * @param actionStart The index the action starts at
+     */
+    private void recordResponse(String response, int actionStart) {
+        responseKind = HandHistory.RESPONSE_ECHO;
+        responseText = response.substring(actionStart);
+    }
+
+    /**
+     * Read an action of the form f, c, r or rN from the end of a response
+     * into the actionType and actionAmount
+     * @param response The response
+     * @param start The index the action starts at
+     * @return True if the action could be read, False otherwise
+     */
+    private boolean readAction(String response, int start) {
+        int length = response.length();
+        if (start >= length) {
+            return false;
+        }
+        char type = Character.toLowerCase(response.charAt(start));
+        if (type != 'f' && type != 'c' && type != 'r') {
+            return false;
         }
-        logState(response);
-        while (st.hasMoreTokens()) {
-            action = st.nextToken();
+        int amount = NO_AMOUNT;
+        if (start + 1 < length) {
+            if (type != 'r' || length - start - 1 > 9) {
+                return false;
+            }
+            amount = 0;
+            for (int i = start + 1; i < length; i++) {
+                char c = response.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+                amount = amount * 10 + (c - '0');
+            }
         }
-        return action;
+        actionType = type;
+        actionAmount = amount;
+        return true;
     }
 
     /**
@@ -961,19 +1438,100 @@ public class Dealer implements Runnable, Serializable {
     }
 
     /**
-     * Used to restore the game to a specific hand.  The game deals out the 
-     * hands from the deck until the hand number is reached
+     * Used to restore the game to a specific hand.  The deck is moved to the
+     * hand with {@link Deck#seekToHand(int, int)}, which is constant time for a
+     * counter deck.  Other decks shuffle forward without dealing the hands.
      * @param handNumber The hand to restore to
-     * @return True on a sucessful restore, False otherwise
      */
     public void restoreToHand(int handNumber) {
-        while (handsPlayed < handNumber) {
-            currentHand = deck.dealHand(players.size(), gamedef.getNumRounds(),
-                    gamedef.getNumPrivateCards(), gamedef.getNumPublicCards());
-            handsPlayed++;
+        if (handsPlayed < handNumber) {
+            deck.seekToHand(handNumber, getCardsPerHand());
+            handsPlayed = handNumber;
         }
         if (handsPlayed >= gamedef.getNumHands()) {
                 gameOver = true;
        }
     }
+
+    /**
+     * Take a snapshot of the state needed to carry on the match, to be saved
+     * in place of the whole dealer.  See {@link DealerSnapshot}
+     * @return The snapshot
+     */
+    public DealerSnapshot getSnapshot() {
+        int numPlayers = players.size();
+        String[] names = new String[numPlayers];
+        int[] seats = new int[numPlayers];
+        int[] positions = new int[numPlayers];
+        int[] stacks = new int[numPlayers];
+        int[] scores = new int[numPlayers];
+        int i = 0;
+        for (Player p : players) {
+            names[i] = p.getName();
+            seats[i] = p.getSeat();
+            positions[i] = p.getPosition();
+            stacks[i] = p.getStack();
+            scores[i] = p.getScore();
+            i++;
+        }
+        byte[] replayCards = null;
+        if (!shuffle && currentHand != null) {
+            replayCards = new byte[currentHand.getTotalCards()];
+            currentHand.getCards(replayCards, 0);
+        }
+        return new DealerSnapshot(name, deck.getShuffleMode(), deck.getSeed(),
+                deck.getHandsDealt(), getCardsPerHand(), handsPlayed, gameOver,
+                replayCards, names, seats, positions, stacks, scores);
+    }
+
+    /**
+     * Restore the match from a snapshot.  The dealer should have been built
+     * with the deck from {@link DealerSnapshot#newDeck} and the players that
+     * have connected, each of which must be in the snapshot.
+     * @param snapshot The snapshot to restore
+     * @return True on a sucessful restore, false if a player is missing
+     */
+    public boolean restoreSnapshot(DealerSnapshot snapshot) {
+        if (snapshot.getNumPlayers() != players.size()) {
+            return false;
+        }
+        for (int i = 0; i < snapshot.getNumPlayers(); i++) {
+            if (!restorePlayer(snapshot.getName(i), snapshot.getSeat(i), snapshot.getStack(i),
+                    snapshot.getPosition(i), snapshot.getScore(i))) {
+                return false;
+            }
+        }
+        handsPlayed = snapshot.getHandsPlayed();
+        gameOver = snapshot.isGameOver() || handsPlayed >= gamedef.getNumHands();
+        disconnected = false;
+        if (snapshot.getReplayCards() != null) {
+            Hand hand = new Hand(players.size(), gamedef.getNumRounds(),
+                    gamedef.getNumPrivateCards(), gamedef.getNumPublicCards());
+            hand.setCards(snapshot.getReplayCards(), 0);
+            setCurrentHand(hand);
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of cards the deck deals each hand
+     * @return the cards per hand
+     */
+    private int getCardsPerHand() {
+        return players.size() * sum(gamedef.getNumPrivateCards()) +
+                sum(gamedef.getNumPublicCards());
+    }
+
+    /**
+     * Add up an array of card counts
+     * @param counts the card counts per round
+     * @return the total
+     */
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int c : counts) {
+            total += c;
+        }
+        return total;
+    }
 }
@@ -0,0 +1,394 @@
+package glassfrog.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A DealerSnapshot is the state a {@link Dealer} needs to carry on a match
+ * from where it left off: the deck's shuffle, seed and the number of hands it
+ * has dealt, the number of hands played, and each player's seat, position,
+ * stack and score.  Everything else a dealer has is either rebuilt from the
+ * Gamedef or belongs to the players that connect to the room.
+ *
+ * Snapshots are written in a small binary format of their own rather than
+ * with java.io serialization, so they can still be read after the classes
+ * change:
+ *
+ *   "GFDS", version
+ *   name (empty for none)
+ *   shuffle mode, seed, hands dealt, cards per hand
+ *   hands played, game over
+ *   replay: 1 if the next hand is the last one dealt being played again
+ *   after a disconnect, followed by the number of cards and the cards
+ *   players, then for each player: name, seat, position, stack, score
+ *
+ * using DataOutputStream numbers and strings.  A reader accepts every version
+ * up to its own.
+ *
+ * The deck is rebuilt with {@link Deck#forShuffle} from the seed and moved on
+ * to the hands dealt, which is how the server builds its dealers' decks.
+ * @author jdavidso
+ */
+public class DealerSnapshot {
+
+    private static final int MAGIC = ('G' << 24) | ('F' << 16) | ('D' << 8) | 'S';
+    public static final int VERSION = 1;
+    private final String name;
+    private final int shuffleMode;
+    private final long seed;
+    private final int handsDealt;
+    private final int cardsPerHand;
+    private final int handsPlayed;
+    private final boolean gameOver;
+    private final byte[] replayCards;
+    private final String[] names;
+    private final int[] seats;
+    private final int[] positions;
+    private final int[] stacks;
+    private final int[] scores;
+
+    /**
+     * Build a snapshot from the state of a dealer.  See {@link Dealer#getSnapshot}
+     * @param name The name of the match, or null
+     * @param shuffleMode The deck's shuffle
+     * @param seed The deck's seed
+     * @param handsDealt The number of hands the deck has dealt
+     * @param cardsPerHand The number of cards dealt each hand
+     * @param handsPlayed The number of hands played
+     * @param gameOver True if the match is over
+     * @param replayCards The cards of the hand to play again, laid out as
+     * by {@link Hand#getCards}, or null if the next hand is a new one
+     * @param names The players' names
+     * @param seats The players' seats
+     * @param positions The players' positions
+     * @param stacks The players' stacks
+     * @param scores The players' scores
+     */
+    public DealerSnapshot(String name, int shuffleMode, long seed, int handsDealt,
+            int cardsPerHand, int handsPlayed, boolean gameOver, byte[] replayCards,
+            String[] names, int[] seats, int[] positions, int[] stacks, int[] scores) {
+        this.name = name;
+        this.shuffleMode = shuffleMode;
+        this.seed = seed;
+        this.handsDealt = handsDealt;
+        this.cardsPerHand = cardsPerHand;
+        this.handsPlayed = handsPlayed;
+        this.gameOver = gameOver;
+        this.replayCards = replayCards;
+        this.names = names;
+        this.seats = seats;
+        this.positions = positions;
+        this.stacks = stacks;
+        this.scores = scores;
+    }
+
+    /**
+     * Get a copy of this snapshot moved on to a hand, as if every hand before
+     * it had been played out.  A snapshot already at or past the hand is
+     * copied as it is.
+     * @param handNumber The number of the next hand to play
+     * @return The new snapshot
+     */
+    public DealerSnapshot atHand(int handNumber) {
+        if (handNumber <= handsPlayed) {
+            return new DealerSnapshot(name, shuffleMode, seed, handsDealt, cardsPerHand,
+                    handsPlayed, gameOver, replayCards, names.clone(), seats.clone(),
+                    positions.clone(), stacks.clone(), scores.clone());
+        }
+        return new DealerSnapshot(name, shuffleMode, seed, handNumber, cardsPerHand,
+                handNumber, gameOver, null, names.clone(), seats.clone(),
+                positions.clone(), stacks.clone(), scores.clone());
+    }
+
+    /**
+     * Restores a player matching the name.  This resets thier stack score and
+     * position, as {@link Dealer#restorePlayer} does
+     * @param name The players name to restore
+     * @param seat The seat to restore the player to
+     * @param stack The stacksize the player needs restoring to
+     * @param position The positions to restore the player to
+     * @param score The score of the player to be restored
+     * @return True on a sucessful restore, false otherwise
+     */
+    public boolean restorePlayer(String name, int seat, int stack, int position, int score) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                seats[i] = seat;
+                stacks[i] = stack;
+                positions[i] = position;
+                scores[i] = score;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Build the deck the dealer was dealing from, ready to deal the next hand
+     * @return The Deck
+     */
+    public Deck newDeck() {
+        Deck deck = Deck.forShuffle(shuffleMode, (int) seed);
+        deck.seekToHand(handsDealt, cardsPerHand);
+        return deck;
+    }
+
+    /**
+     * Write the snapshot
+     * @param out The stream to write to, which is not closed
+     * @throws java.io.IOException on a write error
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeUTF(name == null ? "" : name);
+        data.writeByte(shuffleMode);
+        data.writeLong(seed);
+        data.writeInt(handsDealt);
+        data.writeInt(cardsPerHand);
+        data.writeInt(handsPlayed);
+        data.writeBoolean(gameOver);
+        data.writeBoolean(replayCards != null);
+        if (replayCards != null) {
+            data.writeShort(replayCards.length);
+            data.write(replayCards);
+        }
+        data.writeShort(names.length);
+        for (int i = 0; i < names.length; i++) {
+            data.writeUTF(names[i]);
+            data.writeInt(seats[i]);
+            data.writeInt(positions[i]);
+            data.writeInt(stacks[i]);
+            data.writeInt(scores[i]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Encode the snapshot
+     * @return The snapshot's bytes
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            write(bytes);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex.toString());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a snapshot
+     * @param in The stream to read from, which is not closed
+     * @return The snapshot
+     * @throws java.io.IOException on a read error, or if the stream doesn't
+     * hold a snapshot this version can read
+     */
+    public static DealerSnapshot read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a dealer snapshot");
+        }
+        int version = data.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unknown dealer snapshot version " + version);
+        }
+        String name = data.readUTF();
+        int shuffleMode = data.readUnsignedByte();
+        long seed = data.readLong();
+        int handsDealt = data.readInt();
+        int cardsPerHand = data.readInt();
+        int handsPlayed = data.readInt();
+        boolean gameOver = data.readBoolean();
+        byte[] replayCards = null;
+        if (data.readBoolean()) {
+            replayCards = new byte[data.readUnsignedShort()];
+            data.readFully(replayCards);
+        }
+        int numPlayers = data.readUnsignedShort();
+        String[] names = new String[numPlayers];
+        int[] seats = new int[numPlayers];
+        int[] positions = new int[numPlayers];
+        int[] stacks = new int[numPlayers];
+        int[] scores = new int[numPlayers];
+        for (int i = 0; i < numPlayers; i++) {
+            names[i] = data.readUTF();
+            seats[i] = data.readInt();
+            positions[i] = data.readInt();
+            stacks[i] = data.readInt();
+            scores[i] = data.readInt();
+        }
+        return new DealerSnapshot(name.length() == 0 ? null : name, shuffleMode, seed,
+                handsDealt, cardsPerHand, handsPlayed, gameOver, replayCards,
+                names, seats, positions, stacks, scores);
+    }
+
+    /**
+     * Read a snapshot from a file
+     * @param filename The file
+     * @return The snapshot
+     * @throws java.io.FileNotFoundException if there is no such file
+     * @throws java.io.IOException on a read error or a bad snapshot
+     */
+    public static DealerSnapshot load(String filename) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(filename));
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the snapshot to a file, replacing it.  The snapshot is written to
+     * filename.tmp and synced to disk, then renamed over the file, so the file
+     * always holds a whole snapshot even if the server dies part way through.
+     * @param filename The file
+     * @throws java.io.IOException on a write error
+     */
+    public void save(String filename) throws IOException {
+        File file = new File(filename);
+        File tmp = new File(filename + ".tmp");
+        FileOutputStream fileOut = new FileOutputStream(tmp);
+        try {
+            fileOut.write(toByteArray());
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // Some platforms won't rename over an existing file
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Could not rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Get the name of the match
+     * @return the name, or null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the shuffle of the deck
+     * @return One of the Deck shuffle modes
+     */
+    public int getShuffleMode() {
+        return shuffleMode;
+    }
+
+    /**
+     * Get the seed of the deck
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the number of hands the deck has dealt
+     * @return the hands dealt
+     */
+    public int getHandsDealt() {
+        return handsDealt;
+    }
+
+    /**
+     * Get the number of cards dealt each hand
+     * @return the cards per hand
+     */
+    public int getCardsPerHand() {
+        return cardsPerHand;
+    }
+
+    /**
+     * Get the number of hands played
+     * @return the hands played
+     */
+    public int getHandsPlayed() {
+        return handsPlayed;
+    }
+
+    /**
+     * Check to see if the match is over
+     * @return True if the match is over
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Get the cards of the hand to play again after a disconnect
+     * @return The cards, or null if the next hand is a new one
+     */
+    public byte[] getReplayCards() {
+        return replayCards;
+    }
+
+    /**
+     * Get the number of players
+     * @return the number of players
+     */
+    public int getNumPlayers() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of a player
+     * @param index The index of the player
+     * @return the name
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Get the seat of a player
+     * @param index The index of the player
+     * @return the seat
+     */
+    public int getSeat(int index) {
+        return seats[index];
+    }
+
+    /**
+     * Get the position of a player
+     * @param index The index of the player
+     * @return the position
+     */
+    public int getPosition(int index) {
+        return positions[index];
+    }
+
+    /**
+     * Get the stack of a player
+     * @param index The index of the player
+     * @return the stack
+     */
+    public int getStack(int index) {
+        return stacks[index];
+    }
+
+    /**
+     * Get the score of a player
+     * @param index The index of the player
+     * @return the score
+     */
+    public int getScore(int index) {
+        return scores[index];
+    }
+}
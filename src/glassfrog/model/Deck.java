@@ -1,11 +1,24 @@
 package glassfrog.model;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A Class given to represent a standard 52 card, 4 suit deck of playing cards.
+ * The cards are held as {@link Card} indices in a byte array so that shuffling
+ * and dealing never allocate.
+ *
+ * A Deck built from an int seed uses java.util.Random and the original
+ * shuffle, so existing seeds (keys.xml, saved matches, MatchRebuilder) keep
+ * dealing the same hands.  A Deck built from a {@link DeckRandom} uses an in
+ * place partial Fisher-Yates shuffle, which is uniform and only costs one
+ * random number and one swap per card dealt.
+ *
+ * A counter deck also uses Fisher-Yates, but starts every hand from a fresh
+ * deck with the generator reseeded from the match seed and the hand number.
+ * Hand N then depends only on (seed, N), so {@link #seekToHand(int, int)} is
+ * constant time and a match can be restored to any hand instantly.
  * @author jdavidso
  */
 public class Deck implements Serializable{
@@ -13,44 +26,187 @@ public class Deck implements Serializable{
     private static final int DECK_SHUFFLE = 52;
     private static final int NUM_SUITS = 4;
     private static final int NUM_RANKS = 13;
-    private static final String[] suits = {"Spades", "Hearts", "Clubs", "Diamonds"};
-    private static final Integer[] ranks = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
-    private Random rng;
+    /** The original deck order was Spades, Hearts, Clubs, Diamonds, Ace to King */
+    private static final int[] suits = {Card.SPADES, Card.HEARTS, Card.CLUBS, Card.DIAMONDS};
+    private static final int[] ranks = {Card.ACE, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    /** The original, non uniform shuffle.  Hands depend on every earlier hand */
+    public static final int LEGACY_SHUFFLE = 0;
+    /** Partial Fisher-Yates.  Hands depend on every earlier hand */
+    public static final int FISHER_YATES = 1;
+    /** Partial Fisher-Yates from a fresh deck reseeded with (seed, hand) */
+    public static final int COUNTER = 2;
+    private static final byte[] NEW_DECK = new byte[DECK_SHUFFLE];
+
+    static {
+        int i = 0;
+        for (int suit : suits) {
+            for (int rank : ranks) {
+                NEW_DECK[i++] = (byte) Card.toIndex(rank, suit);
+            }
+        }
+    }
+
+    private DeckRandom rng;
+    private int shuffleMode;
+    private long seed;
+    private int handsDealt;
     private int numUsedCards;
     private int usedIndex;
-    private ArrayList<Card> deck;
-    
+    private byte[] deck;
+
     /**
      * Return a card at a given index in the deck
      * @param cardIndex The index from which to draw the card
-     * @return The Card in the current deck
+     * @return The Card index at that position in the current deck
      */
-    public Card getCard(int cardIndex) {
-        return deck.get(cardIndex % deck.size());
+    public int getCard(int cardIndex) {
+        return deck[cardIndex % deck.length];
     }
 
     /**
      * Get the next unused Card in the deck. Incrementing the used index by 1.
      * Used for the deal function
-     * @return The next card in the deck
+     * @return The next card index in the deck
      */
-    public Card getNextCard() {
-        return deck.get(usedIndex++);
+    public int getNextCard() {
+        return deck[usedIndex++];
     }
 
     /**
-     * Construtor specifying a seed to set our RNG with.
+     * Construtor specifying a seed to set our RNG with.  This deck uses
+     * java.util.Random and the original shuffle so a seed always deals the
+     * same hands it did in earlier versions.
      * The deck is then sonstructed as an array of 52 cards in order of suit/rank
      */
     public Deck(int seed) {
+        this(new JavaDeckRandom(seed), LEGACY_SHUFFLE, seed);
+    }
+
+    /**
+     * Constructor for a deck that shuffles with a partial Fisher-Yates shuffle
+     * driven by the given generator
+     * @param rng The DeckRandom to shuffle with
+     */
+    public Deck(DeckRandom rng) {
+        this(rng, FISHER_YATES, 0);
+    }
+
+    /**
+     * Constructor specifying the generator, the shuffle and the match seed.
+     * The seed is only used by the COUNTER shuffle, which reseeds the
+     * generator from it every hand.
+     * The deck is then sonstructed as an array of 52 cards in order of suit/rank
+     * @param rng The DeckRandom to shuffle with
+     * @param shuffleMode One of LEGACY_SHUFFLE, FISHER_YATES or COUNTER
+     * @param seed The match seed
+     */
+    public Deck(DeckRandom rng, int shuffleMode, long seed) {
         usedIndex = 0;
         numUsedCards = 0;
-        rng = new Random(seed);
-        deck = new ArrayList<Card>();
-        for (String suit : suits) {
-            for (Integer rank : ranks) {
-                deck.add(new Card(suit, rank));
-            }
+        handsDealt = 0;
+        this.rng = rng;
+        this.shuffleMode = shuffleMode;
+        this.seed = seed;
+        deck = NEW_DECK.clone();
+    }
+
+    /**
+     * Build the deck a Gamedef asks for from a match seed.  Legacy decks use
+     * java.util.Random so old seeds deal the same cards, the others use a
+     * {@link XoshiroDeckRandom}.
+     * @param shuffleMode One of LEGACY_SHUFFLE, FISHER_YATES or COUNTER
+     * @param seed The match seed
+     * @return A new Deck
+     */
+    public static Deck forShuffle(int shuffleMode, int seed) {
+        switch (shuffleMode) {
+            case FISHER_YATES:
+                return new Deck(new XoshiroDeckRandom(seed), FISHER_YATES, seed);
+            case COUNTER:
+                return new Deck(new XoshiroDeckRandom(seed), COUNTER, seed);
+            default:
+                return new Deck(seed);
+        }
+    }
+
+    /**
+     * Parse the name of a shuffle as given in a gamedef file.  A missing
+     * Shuffle is the legacy shuffle, and anything that is not recognised is
+     * logged and treated as the legacy shuffle.
+     * @param name Legacy, FisherYates or Counter, case insensitive, or None
+     * if the gamedef has no Shuffle
+     * @return The matching shuffle mode
+     */
+    public static int parseShuffleMode(String name) {
+        if ("FisherYates".equalsIgnoreCase(name)) {
+            return FISHER_YATES;
+        } else if ("Counter".equalsIgnoreCase(name)) {
+            return COUNTER;
+        } else if (name != null && name.length() > 0 && !"Legacy".equalsIgnoreCase(name) &&
+                !"None".equals(name)) {
+            Logger.getLogger("errorlogger").log(Level.WARNING,
+                    "Unknown Shuffle " + name + ", using the legacy shuffle");
+        }
+        return LEGACY_SHUFFLE;
+    }
+
+    /**
+     * Get the shuffle this deck uses
+     * @return One of LEGACY_SHUFFLE, FISHER_YATES or COUNTER
+     */
+    public int getShuffleMode() {
+        return shuffleMode;
+    }
+
+    /**
+     * Check to see if this deck uses the original shuffle
+     * @return True for the original shuffle, False for Fisher-Yates
+     */
+    public boolean isLegacyShuffle() {
+        return shuffleMode == LEGACY_SHUFFLE;
+    }
+
+    /**
+     * Get the match seed the deck was built from
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the number of hands dealt from this deck, which is also the number
+     * of the next hand it will deal
+     * @return the number of hands dealt
+     */
+    public int getHandsDealt() {
+        return handsDealt;
+    }
+
+    /**
+     * Move the deck so that the next hand dealt is the given hand.  A COUNTER
+     * deck just sets its hand number, so this is constant time and can move
+     * backwards as well as forwards.  The other shuffles depend on every
+     * earlier hand, so they have to shuffle their way forward one hand at a
+     * time and cannot go back.
+     * @param handNumber The number of the next hand to deal, from 0
+     * @param cardsPerHand The number of cards each hand takes from the deck
+     * @throws IllegalArgumentException if a non COUNTER deck is asked to seek
+     * to a hand it has already dealt
+     */
+    public void seekToHand(int handNumber, int cardsPerHand) {
+        if (shuffleMode == COUNTER) {
+            handsDealt = handNumber;
+            return;
+        }
+        if (handNumber < handsDealt) {
+            throw new IllegalArgumentException("Cannot seek back to hand " +
+                    handNumber + " after dealing " + handsDealt + " hands");
+        }
+        numUsedCards = cardsPerHand;
+        while (handsDealt < handNumber) {
+            shuffle();
+            handsDealt++;
         }
     }
 
@@ -61,11 +217,50 @@ public class Deck implements Serializable{
      */
     public void shuffle() {
         usedIndex = 0;
+        if (shuffleMode == LEGACY_SHUFFLE) {
+            legacyShuffle();
+            return;
+        }
+        if (shuffleMode == COUNTER) {
+            System.arraycopy(NEW_DECK, 0, deck, 0, DECK_SHUFFLE);
+            rng.setSeed(handSeed(seed, handsDealt));
+        }
+        for (int i = 0; i < numUsedCards; i++) {
+            int index = i + rng.nextInt(DECK_SHUFFLE - i);
+            byte swap = deck[index];
+            deck[index] = deck[i];
+            deck[i] = swap;
+        }
+    }
+
+    /**
+     * The generator seed for a hand of a COUNTER deck.  The hand number is
+     * stepped along a SplitMix64 sequence started at the match seed and mixed,
+     * so neighbouring hands get unrelated seeds.
+     * @param seed The match seed
+     * @param handNumber The hand number
+     * @return The seed for that hand
+     */
+    static long handSeed(long seed, int handNumber) {
+        return XoshiroDeckRandom.mix(seed + (handNumber + 1L) * XoshiroDeckRandom.GOLDEN_GAMMA);
+    }
+
+    /**
+     * The original shuffle.  This is not uniform, but it is kept so old seeds
+     * deal the same hands.  Each drawn card is moved to position i and the
+     * cards between its old position and i slide over by one, exactly as
+     * removing it from a list and re-inserting it at i would.
+     */
+    private void legacyShuffle() {
         for (int i = 0; i < numUsedCards; i++) {
             int index = (rng.nextInt(NUM_SUITS * NUM_RANKS) + i) % (DECK_SHUFFLE - i);
-            Card swap = deck.get(index);
-            deck.remove(swap);
-            deck.add(i, swap);
+            byte swap = deck[index];
+            if (index > i) {
+                System.arraycopy(deck, i, deck, i + 1, index - i);
+            } else if (index < i) {
+                System.arraycopy(deck, index + 1, deck, index, i - index);
+            }
+            deck[i] = swap;
         }
     }
 
@@ -75,66 +270,67 @@ public class Deck implements Serializable{
      */
     @Override
     public String toString() {
-        String retString = "";
-        for (Card c : deck) {
-            retString += c.toString() + "\n";
+        StringBuilder retString = new StringBuilder();
+        for (byte c : deck) {
+            retString.append(Card.toString(c)).append('\n');
         }
-        return retString;
+        return retString.toString();
     }
 
     /**
      * Deals a new hand from the deck.  This method takes in the parameters needed
-     * to create a new hand from a shuffled deck.  It deals the cards using the 
-     * following algorithm:
-     * 
-     * calculate number of cards needed to shuffle
-     * shuffle
-     * For each round:
-     *   For each player:
-     *     add to privateCards[player][round] number of private cards for this round
-     *   add to publicCards[round] number of public cards for this round
-     * 
-     * Essentially for each round, deal each player the cards they need then deal 
-     * the board cards
-     * 
+     * to create a new hand from a shuffled deck.  See {@link #dealHand(Hand)}
+     *
      * @param numPlayers An integer representing the number of players
      * @param numRounds An integer representing the number of rounds
-     * @param numPrivateCards An array of integers where the index is the round 
+     * @param numPrivateCards An array of integers where the index is the round
      * and the value is the number of private cards for each player for that round
-     * @param numPublicCards An array of integers where the index is the round 
+     * @param numPublicCards An array of integers where the index is the round
      * and the value is the number of public cards for that round
-     * @return A Hand object representing all of the card information to play a 
+     * @return A Hand object representing all of the card information to play a
      * hand of poker
      */
     public Hand dealHand(int numPlayers, int numRounds, int[] numPrivateCards,
             int[] numPublicCards) {
-
         Hand newHand = new Hand(numPlayers, numRounds, numPrivateCards, numPublicCards);
-        ArrayList<Card>[][] privateCards = new ArrayList[numPlayers][numRounds];
-        ArrayList<Card>[] publicCards = new ArrayList[numRounds];
-        numUsedCards = 0;
+        dealHand(newHand);
+        return newHand;
+    }
 
-        for (int i = 0; i < numRounds; i++) {
-            numUsedCards += numPlayers * numPrivateCards[i] + numPublicCards[i];
-        }
+    /**
+     * Deals a new hand from the deck into an existing Hand, overwriting its
+     * cards.  Reusing the Hand means dealing does no allocation at all.
+     * It deals the cards using the following algorithm:
+     *
+     * calculate number of cards needed to shuffle
+     * shuffle
+     * For each round:
+     *   For each player:
+     *     add to privateCards[player][round] number of private cards for this round
+     *   add to publicCards[round] number of public cards for this round
+     *
+     * Essentially for each round, deal each player the cards they need then deal
+     * the board cards
+     *
+     * @param hand The Hand to deal into, which defines the number of players,
+     * rounds and cards
+     */
+    public void dealHand(Hand hand) {
+        int numPlayers = hand.getNumPlayers();
+        int numRounds = hand.getNumRounds();
+        numUsedCards = hand.getTotalCards();
 
         shuffle();
+        handsDealt++;
         for (int round = 0; round < numRounds; round++) {
             for (int player = 0; player < numPlayers; player++) {
-                privateCards[player][round] = new ArrayList<Card>();
-                for (int cardIndex = 0; cardIndex < numPrivateCards[round]; cardIndex++) {
-                    privateCards[player][round].add(getNextCard());
+                for (int cardIndex = 0; cardIndex < hand.getNumPrivateCards(round); cardIndex++) {
+                    hand.setPrivateCard(player, round, cardIndex, getNextCard());
                 }
             }
-            publicCards[round] = new ArrayList<Card>();
-            for (int cardIndex = 0; cardIndex < numPublicCards[round]; cardIndex++) {
-                publicCards[round].add(getNextCard());
+            for (int cardIndex = 0; cardIndex < hand.getNumPublicCards(round); cardIndex++) {
+                hand.setPublicCard(round, cardIndex, getNextCard());
             }
         }
-
-        newHand.setPrivateCards(privateCards);
-        newHand.setPublicCards(publicCards);
-
-        return newHand;
     }
 }
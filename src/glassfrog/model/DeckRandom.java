@@ -0,0 +1,34 @@
+package glassfrog.model;
+
+import java.io.Serializable;
+
+/**
+ * The source of randomness used by a {@link Deck} to shuffle.  Implementations
+ * must be Serializable so a Deck can be saved and reloaded mid match and pick up
+ * the same sequence of cards.
+ * @author jdavidso
+ */
+public interface DeckRandom extends Serializable {
+
+    /**
+     * Return a uniformly distributed int between 0 (inclusive) and bound
+     * (exclusive)
+     * @param bound The upper bound, must be positive
+     * @return a random int in [0, bound)
+     */
+    public int nextInt(int bound);
+
+    /**
+     * Reset the generator to the start of the sequence for the given seed
+     * @param seed The new seed
+     */
+    public void setSeed(long seed);
+
+    /**
+     * Create a new, independent generator from this one.  Used to hand every
+     * match in a series its own stream from a single master generator.  This
+     * advances the state of this generator.
+     * @return A new DeckRandom
+     */
+    public DeckRandom split();
+}
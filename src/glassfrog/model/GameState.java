@@ -8,6 +8,11 @@ import java.io.Serializable;
  * It holds information pertinant to the actual game, not the individual players
  * such as potsize, current bet, num bets, round number
  * 
+ * The betting is kept as a log of actions, each with its round and amount, so
+ * it can be looked at action by action without parsing the action string.
+ * The action string is appended to as the actions are made and only turned
+ * into a String when it is asked for and has changed.
+ * 
  * @author jdavidso
  */
 public class GameState implements Serializable{
@@ -20,7 +25,15 @@ public class GameState implements Serializable{
     private int numBets;
     private int button;
     private boolean handOver;      
-    private String actionString;
+    private StringBuilder actions;
+    private transient String actionString;
+    private byte[] actionCodes;
+    private int[] actionAmounts;
+    private byte[] actionRounds;
+    private int numActions;
+    private int[] raisesPerRound;
+    private int lastRaiseTo;
+    private int lastRaiseSize;
     
     /**
      *  Get the current position of the button
@@ -155,8 +168,74 @@ public class GameState implements Serializable{
      * @return A string representing the betting sequence
      */
     public String getActionString() {
+        if (actionString == null) {
+            actionString = actions.toString();
+        }
         return actionString;
     }
+
+    /**
+     * Get the number of actions made so far in the hand
+     * @return the number of actions in the action log
+     */
+    public int getNumActions() {
+        return numActions;
+    }
+
+    /**
+     * Get an action from the action log
+     * @param index The index of the action, 0 for the first of the hand
+     * @return one of {b,f,c,r}
+     */
+    public char getAction(int index) {
+        return (char) actionCodes[index];
+    }
+
+    /**
+     * Get the amount of an action from the action log.  This is the amount bet
+     * to, for a raise, call or blind, whether or not it is shown in the action
+     * string, and 0 for a fold.
+     * @param index The index of the action, 0 for the first of the hand
+     * @return the amount of the action
+     */
+    public int getActionAmount(int index) {
+        return actionAmounts[index];
+    }
+
+    /**
+     * Get the round an action from the action log was made in
+     * @param index The index of the action, 0 for the first of the hand
+     * @return the round of the action
+     */
+    public int getActionRound(int index) {
+        return actionRounds[index];
+    }
+
+    /**
+     * Get the number of raises made in a round
+     * @param round The round
+     * @return the number of raise actions in the round
+     */
+    public int getNumRaises(int round) {
+        return round < raisesPerRound.length ? raisesPerRound[round] : 0;
+    }
+
+    /**
+     * Get the amount the last raise of the hand was to
+     * @return The amount bet to by the last raise, 0 if there has been none
+     */
+    public int getLastRaiseTo() {
+        return lastRaiseTo;
+    }
+
+    /**
+     * Get the size of the last raise of the hand, the amount it put the bet up
+     * by
+     * @return The size of the last raise, 0 if there has been none
+     */
+    public int getLastRaiseSize() {
+        return lastRaiseSize;
+    }
     
     /**
      * Default constructor.
@@ -170,7 +249,11 @@ public class GameState implements Serializable{
         minBet = 0;
         currentBet = 0;
         handOver = false;   
-        actionString = "";
+        actions = new StringBuilder(32);
+        actionCodes = new byte[16];
+        actionAmounts = new int[16];
+        actionRounds = new byte[16];
+        raisesPerRound = new int[4];
     }
 
     /**
@@ -180,8 +263,14 @@ public class GameState implements Serializable{
     public void nextRound() {
         round++;        
         minBet = 0;
-        actionString += "/";
+        actions.append('/');
+        actionString = null;
         numBets = 0;        
+        if (round >= raisesPerRound.length) {
+            int[] grown = new int[round + 1];
+            System.arraycopy(raisesPerRound, 0, grown, 0, raisesPerRound.length);
+            raisesPerRound = grown;
+        }
     }
     
     /**
@@ -219,11 +308,54 @@ public class GameState implements Serializable{
     }
     
     /**
-     * Add an action to the action string.
+     * Add an action to the action log and the action string.  Raises are
+     * counted for the round, and the size of a raise is worked out from the
+     * current bet, so a raise should be added before the bet is made.
+     * @param action one of {b,f,c,r}
+     * @param amount the amount bet to, 0 for a fold
+     * @param showAmount True to write the amount after the action in the action
+     * string, as for no limit games
+     */
+    public void addAction(char action, int amount, boolean showAmount) {
+        if (numActions == actionCodes.length) {
+            int size = numActions * 2;
+            byte[] codes = new byte[size];
+            int[] amounts = new int[size];
+            byte[] rounds = new byte[size];
+            System.arraycopy(actionCodes, 0, codes, 0, numActions);
+            System.arraycopy(actionAmounts, 0, amounts, 0, numActions);
+            System.arraycopy(actionRounds, 0, rounds, 0, numActions);
+            actionCodes = codes;
+            actionAmounts = amounts;
+            actionRounds = rounds;
+        }
+        actionCodes[numActions] = (byte) action;
+        actionAmounts[numActions] = amount;
+        actionRounds[numActions] = (byte) round;
+        numActions++;
+        if (action == 'r') {
+            raisesPerRound[round]++;
+            lastRaiseSize = amount - currentBet;
+            lastRaiseTo = amount;
+        }
+        actions.append(action);
+        if (showAmount) {
+            actions.append(amount);
+        }
+        actionString = null;
+    }
+
+    /**
+     * Add an action to the action string, as one of {b,f,c,r} followed by the
+     * amount if it is to be shown.
      * @param action a string representing what actions to add to the action string
      */
     public void addToActionString(String action) {
-        actionString += action;
+        int amount = 0;
+        if (action.length() > 1) {
+            amount = Integer.parseInt(action.substring(1));
+        }
+        addAction(action.charAt(0), amount, action.length() > 1);
     }
     
     /**
@@ -3,6 +3,8 @@ package glassfrog.model;
 import glassfrog.tools.XMLParser;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -34,6 +36,10 @@ public class Gamedef implements Serializable{
     private boolean doylesGame;
     private boolean noLimit;    
     private String surveyURL;
+    private int shuffleMode;
+    private int actionTimeout;
+    private int handTimeout;
+    private char timeoutAction = 'f';
     
     /**
      * The Blind structure is an array that represents what players must pay
@@ -344,6 +350,80 @@ public class Gamedef implements Serializable{
         return surveyURL != null;
     }
 
+    /**
+     * Get the shuffle the deck uses for this game.  See {@link Deck}
+     * @return One of Deck.LEGACY_SHUFFLE, Deck.FISHER_YATES or Deck.COUNTER
+     */
+    public int getShuffleMode() {
+        return shuffleMode;
+    }
+
+    /**
+     * Get the longest a player may take over one action, in milliseconds
+     * @return the time limit, or 0 for no limit
+     */
+    public int getActionTimeout() {
+        return actionTimeout;
+    }
+
+    /**
+     * Set the longest a player may take over one action
+     * @param actionTimeout the time limit in milliseconds, 0 for no limit
+     */
+    public void setActionTimeout(int actionTimeout) {
+        this.actionTimeout = actionTimeout;
+    }
+
+    /**
+     * Get the total time a player may take over all of their actions in one
+     * hand, in milliseconds
+     * @return the time budget, or 0 for no budget
+     */
+    public int getHandTimeout() {
+        return handTimeout;
+    }
+
+    /**
+     * Set the total time a player may take over all of their actions in one hand
+     * @param handTimeout the time budget in milliseconds, 0 for no budget
+     */
+    public void setHandTimeout(int handTimeout) {
+        this.handTimeout = handTimeout;
+    }
+
+    /**
+     * Check to see if the players' actions are timed
+     * @return True if there is an action time limit or a hand time budget
+     */
+    public boolean isTimed() {
+        return actionTimeout > 0 || handTimeout > 0;
+    }
+
+    /**
+     * Get the action the dealer takes for a player that runs out of time
+     * @return 'f' to fold or 'c' to call
+     */
+    public char getTimeoutAction() {
+        return timeoutAction;
+    }
+
+    /**
+     * Set the action the dealer takes for a player that runs out of time
+     * @param timeoutAction 'f' to fold or 'c' to call
+     */
+    public void setTimeoutAction(char timeoutAction) {
+        this.timeoutAction = timeoutAction;
+    }
+
+    /**
+     * Set the shuffle the deck uses for this game.  A Deck.COUNTER shuffle
+     * lets a match be restored to any hand in constant time.
+     * @param shuffleMode One of Deck.LEGACY_SHUFFLE, Deck.FISHER_YATES or Deck.COUNTER
+     */
+    public void setShuffleMode(int shuffleMode) {
+        this.shuffleMode = shuffleMode;
+    }
+
     /**
      * Default contructor.  Set to 2 player texas holdem limit 1/2 for testing     
      */
@@ -362,6 +442,7 @@ public class Gamedef implements Serializable{
         reverseBlinds = true;
         noLimit = false;
         surveyURL = null;
+        shuffleMode = Deck.LEGACY_SHUFFLE;
     }
 
     /**
@@ -397,10 +478,33 @@ public class Gamedef implements Serializable{
                 doylesGame = parser.getBooleanFromNode(gdNode, "DoylesGame");
                 noLimit = parser.getBooleanFromNode(gdNode, "NoLimit");
                 surveyURL = parser.getStringFromNode(gdNode, "SurveyURL");
+                shuffleMode = Deck.parseShuffleMode(parser.getStringFromNode(gdNode, "Shuffle"));
+                actionTimeout = parser.getIntFromNode(gdNode, "ActionTimeout");
+                handTimeout = parser.getIntFromNode(gdNode, "HandTimeout");
+                timeoutAction = parseTimeoutAction(parser.getStringFromNode(gdNode, "TimeoutAction"));
             }
         }
     }
 
+    /**
+     * Get the action a TimeoutAction element names.  A missing TimeoutAction
+     * is Fold, and anything that is not recognised is logged and taken as
+     * Fold.
+     * @param name Fold or Call, case insensitive, or None if the gamedef has
+     * no TimeoutAction
+     * @return 'c' for Call, 'f' otherwise
+     */
+    public static char parseTimeoutAction(String name) {
+        if ("Call".equalsIgnoreCase(name)) {
+            return 'c';
+        } else if (name != null && name.length() > 0 && !"Fold".equalsIgnoreCase(name) &&
+                !"None".equals(name)) {
+            Logger.getLogger("errorlogger").log(Level.WARNING,
+                    "Unknown TimeoutAction " + name + ", folding");
+        }
+        return 'f';
+    }
+
     /**
      * Get the blind / ante associated with the index using the blind structure
      * and the small blind value.
@@ -1,79 +1,49 @@
 package glassfrog.model;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 
 /**
- * The Hand class is used to represent a set of cards for the players and the 
- * board.  More specifically, a Hand is the set of all the private cards for 
- * all of the players over all of the rounds and the set of public cards for 
+ * The Hand class is used to represent a set of cards for the players and the
+ * board.  More specifically, a Hand is the set of all the private cards for
+ * all of the players over all of the rounds and the set of public cards for
  * all of the rounds.
  * Use: To store hands dealt from the deck and give string representations of
  * those hands for evaluation.
+ *
+ * The cards are stored as {@link Card} indices in two flat byte arrays.  The
+ * private cards for a player are laid out round after round starting at
+ * player * cardsPerPlayer, and the public cards round after round.  A Hand is
+ * sized once and can then be dealt into over and over by the {@link Deck}.
  * @author jdavidso
  */
 public class Hand implements Serializable{
 
     private int numRounds;
-    private int numPlayers;    
+    private int numPlayers;
     private int[] numPrivateCards;
     private int[] numPublicCards;
-    private ArrayList<Card>[] publicCards; //[round]
-    private ArrayList<Card>[][] privateCards; //[player][round]    
-   
-    /**
-     * Return the public cards for a given round
-     * @param round an int representing the round to return the public cards for
-     * @return an @ArrayList of @Cards for the given round
-     */
-    public ArrayList<Card> getPublicCards(int round) {
-        return publicCards[round];
-    }
-    
-    /**
-     * Set the public card array for the hand
-     * @param publicCards an @ArrayList of @Cards that represents the public cards
-     * for the hand
-     */
-    public void setPublicCards(ArrayList<Card>[] publicCards){
-        this.publicCards = publicCards;
-    }
+    private int[] privateOffset; //[round]
+    private int[] publicOffset; //[round]
+    private int cardsPerPlayer;
+    private byte[] publicCards; //[publicOffset[round] + card]
+    private byte[] privateCards; //[player * cardsPerPlayer + privateOffset[round] + card]
 
-    /**
-     * Return the private cards for a player for the given hand in a given round
-     * @param player an int representing the seat of the player to return the cards
-     * to
-     * @param round an int representing the round the private cards came from
-     * @return an @ArrayList of @Cards for the player and round specified
-     */
-    public ArrayList<Card> getPrivateCards(int player, int round) {
-        return privateCards[player][round];
-    }
-    
-    /**
-     * Set the private cards for a specific player
-     * @param privateCards an @ArrayList of @Cards representing the players private cards
-     */
-    public void setPrivateCards(ArrayList<Card>[][] privateCards){
-        this.privateCards = privateCards;
-    }
-    
     /**
      * Default constructor. Not really intened for use.
      */
     public Hand() {
         numRounds = 0;
-        numPrivateCards = null;
-        numPublicCards = null;
+        numPrivateCards = new int[0];
+        numPublicCards = new int[0];
         numPlayers = 0;
         initializeCardArrays();
     }
 
     /**
      * Good constructor.  Takes in the number of players, rounds, private and
-     * public cards and initializes the arrays and numbers for holding and 
+     * public cards and initializes the arrays and numbers for holding and
      * displaying the Hand information.
-     * 
+     *
      * @param numPlayers
      * @param numRounds
      * @param numPrivateCards
@@ -83,80 +53,219 @@ public class Hand implements Serializable{
             int[] numPublicCards) {
         this.numRounds = numRounds;
         this.numPlayers = numPlayers;
-        this.numPrivateCards = numPrivateCards;        
+        this.numPrivateCards = numPrivateCards;
         this.numPublicCards = numPublicCards;
-        initializeCardArrays();        
+        initializeCardArrays();
     }
-    
+
     /**
-     * Used to preset a hand with given cards
-     * @param numPlayers
-     * @param numRounds
-     * @param publicCards
-     * @param privateCards
+     * Initializes the public and private card arrays with to the proper sizes
      */
-    public Hand(int numPlayers, int numRounds, ArrayList<Card>[] publicCards, 
-            ArrayList<Card>[][] privateCards) {
-        this.numRounds = numRounds;
-        this.numPlayers = numPlayers;
-        this.publicCards = publicCards;
-        this.privateCards = privateCards;
+    private void initializeCardArrays() {
+        privateOffset = new int[numRounds + 1];
+        publicOffset = new int[numRounds + 1];
+        for (int round = 0; round < numRounds; round++) {
+            privateOffset[round + 1] = privateOffset[round] + numPrivateCards[round];
+            publicOffset[round + 1] = publicOffset[round] + numPublicCards[round];
+        }
+        cardsPerPlayer = privateOffset[numRounds];
+        privateCards = new byte[numPlayers * cardsPerPlayer];
+        publicCards = new byte[publicOffset[numRounds]];
     }
 
     /**
-     * Initializes the public and private card arrays with to the proper sizes
+     * Check to see if this hand has the given layout, used to decide if a Hand
+     * can be reused for a deal
+     * @param numPlayers the number of players
+     * @param numRounds the number of rounds
+     * @return True if the hand is sized for this many players and rounds
      */
-    private void initializeCardArrays() {
-        publicCards = new ArrayList[numRounds];
-        privateCards = new ArrayList[numPlayers][numRounds];        
-    }    
+    public boolean fits(int numPlayers, int numRounds) {
+        return this.numPlayers == numPlayers && this.numRounds == numRounds;
+    }
+
+    /**
+     * Get the number of players this hand is dealt to
+     * @return the number of players
+     */
+    public int getNumPlayers() {
+        return numPlayers;
+    }
+
+    /**
+     * Get the number of rounds in this hand
+     * @return the number of rounds
+     */
+    public int getNumRounds() {
+        return numRounds;
+    }
+
+    /**
+     * Get the number of private cards each player gets in a round
+     * @param round the round
+     * @return the number of private cards per player in the round
+     */
+    public int getNumPrivateCards(int round) {
+        return numPrivateCards[round];
+    }
+
+    /**
+     * Get the number of public cards dealt in a round
+     * @param round the round
+     * @return the number of public cards in the round
+     */
+    public int getNumPublicCards(int round) {
+        return numPublicCards[round];
+    }
+
+    /**
+     * Get the total number of cards needed from the deck for this hand
+     * @return the number of cards dealt
+     */
+    public int getTotalCards() {
+        return privateCards.length + publicCards.length;
+    }
+
+    /**
+     * Return a private card
+     * @param player the position of the player
+     * @param round the round the card was dealt in
+     * @param card which of the player's cards for the round
+     * @return the card index
+     */
+    public int getPrivateCard(int player, int round, int card) {
+        return privateCards[player * cardsPerPlayer + privateOffset[round] + card];
+    }
+
+    /**
+     * Set a private card
+     * @param player the position of the player
+     * @param round the round the card is dealt in
+     * @param card which of the player's cards for the round
+     * @param value the card index
+     */
+    public void setPrivateCard(int player, int round, int card, int value) {
+        privateCards[player * cardsPerPlayer + privateOffset[round] + card] = (byte) value;
+    }
+
+    /**
+     * Return a public card
+     * @param round the round the card was dealt in
+     * @param card which of the public cards for the round
+     * @return the card index
+     */
+    public int getPublicCard(int round, int card) {
+        return publicCards[publicOffset[round] + card];
+    }
+
+    /**
+     * Set a public card
+     * @param round the round the card is dealt in
+     * @param card which of the public cards for the round
+     * @param value the card index
+     */
+    public void setPublicCard(int round, int card, int value) {
+        publicCards[publicOffset[round] + card] = (byte) value;
+    }
+
+    /**
+     * Copy all of the cards of the hand into a byte array, the private cards
+     * position by position and then the public cards, as they are laid out in
+     * the hand
+     * @param cards the array to copy into
+     * @param offset where in the array to start
+     * @return the number of cards copied, getTotalCards()
+     */
+    public int getCards(byte[] cards, int offset) {
+        System.arraycopy(privateCards, 0, cards, offset, privateCards.length);
+        System.arraycopy(publicCards, 0, cards, offset + privateCards.length, publicCards.length);
+        return privateCards.length + publicCards.length;
+    }
+
+    /**
+     * Set all of the cards of the hand from a byte array laid out as by
+     * {@link #getCards}
+     * @param cards the array to copy from
+     * @param offset where in the array to start
+     */
+    public void setCards(byte[] cards, int offset) {
+        System.arraycopy(cards, offset, privateCards, 0, privateCards.length);
+        System.arraycopy(cards, offset + privateCards.length, publicCards, 0, publicCards.length);
+    }
+
+    /**
+     * Copy a player's private cards and all of the public cards into an array
+     * of card indices, ready for a {@link glassfrog.handevaluator.HandRanker}.
+     * Does no allocation.
+     * @param player the position of the player
+     * @param cards the array to fill, at least getEvaluationSize() long
+     * @return the number of cards copied
+     */
+    public int getEvaluationCards(int player, int[] cards) {
+        int n = 0;
+        int start = player * cardsPerPlayer;
+        for (int i = 0; i < cardsPerPlayer; i++) {
+            cards[n++] = privateCards[start + i];
+        }
+        for (int i = 0; i < publicCards.length; i++) {
+            cards[n++] = publicCards[i];
+        }
+        return n;
+    }
+
+    /**
+     * Get the number of cards a player has to evaluate with
+     * @return the number of private cards per player plus the public cards
+     */
+    public int getEvaluationSize() {
+        return cardsPerPlayer + publicCards.length;
+    }
 
     /**
      * Override of the toString method for easy to read hand representation.
-     * 
+     *
      * @return an easy to read representation of the hand
      */
     @Override
     public String toString() {
-        String retString = "";
+        StringBuilder retString = new StringBuilder();
         for (int player = 0; player < numPlayers; player++) {
-            retString += "Position " + player + ": [ ";
-            for (int round = 0; round < numRounds; round++) {                                
-                for (Card c : privateCards[player][round]) {
-                    retString += c.toString() + " ";
-                }                
-                retString += "| ";
+            retString.append("Position ").append(player).append(": [ ");
+            for (int round = 0; round < numRounds; round++) {
+                for (int i = 0; i < numPrivateCards[round]; i++) {
+                    retString.append(Card.toString(getPrivateCard(player, round, i))).append(' ');
+                }
+                retString.append("| ");
             }
-            retString += "]\n";
+            retString.append("]\n");
         }
-        
-        retString += "Board Cards: [ ";
-        for (int round = 0; round < numRounds; round++) {            
-            for (Card c : publicCards[round]) {
-                retString += c.toString() + " ";
+
+        retString.append("Board Cards: [ ");
+        for (int round = 0; round < numRounds; round++) {
+            for (int i = 0; i < numPublicCards[round]; i++) {
+                retString.append(Card.toString(getPublicCard(round, i))).append(' ');
             }
-            retString += "| ";            
+            retString.append("| ");
         }
-        retString += "]";        
-        return retString;
+        retString.append("]");
+        return retString.toString();
     }
-    
+
     /**
      * Return the hand for the given player (only thier private cards) and all
      * public cards. This is used to be passed to the hand evaluation class.
-     * 
+     *
      * @param player An integer representing the index of the player for the hand
      * @return A string formatted for the hand evaluation class
      */
     public String getEvaluationString(int player) {
-        String retString = "";
-        for (int round = 0; round < numRounds; round++) {
-            for (Card c : privateCards[player][round]) {
-                retString += c.toString() + " ";
-            }            
-        }        
-        retString += boardToString();
-        return retString;
+        StringBuilder retString = new StringBuilder();
+        int start = player * cardsPerPlayer;
+        for (int i = 0; i < cardsPerPlayer; i++) {
+            retString.append(Card.toString(privateCards[start + i])).append(' ');
+        }
+        retString.append(boardToString());
+        return retString.toString();
     }
 
     /**
@@ -164,13 +273,11 @@ public class Hand implements Serializable{
      * @return A string representing the board cards
      */
     public String boardToString() {
-        String retString = "";
-        for (int roundIndex = 0; roundIndex < numRounds; roundIndex++) {
-            for (Card c : publicCards[roundIndex]) {
-                retString += c.toString() + " ";
-            }
+        StringBuilder retString = new StringBuilder();
+        for (int i = 0; i < publicCards.length; i++) {
+            retString.append(Card.toString(publicCards[i])).append(' ');
         }
-        return retString;
+        return retString.toString();
     }
 
     /**
@@ -180,11 +287,26 @@ public class Hand implements Serializable{
      * @return A string representing the private cards for a given player/round
      */
     public String getPrivateCardsString(int player, int round) {
-        String retString = "";
-        for (Card c : privateCards[player][round]) {
-            retString += c.toString();
+        if (numPrivateCards[round] == 0) {
+            return "";
+        }
+        StringBuilder retString = new StringBuilder();
+        appendPrivateCards(retString, player, round);
+        return retString.toString();
+    }
+
+    /**
+     * Append the cards for a player for a given round to a StringBuilder, in
+     * the same form as {@link #getPrivateCardsString}
+     * @param sb The StringBuilder to append to
+     * @param player An integer representation of the player for the index
+     * @param round An integer representation of the round for the index
+     */
+    public void appendPrivateCards(StringBuilder sb, int player, int round) {
+        int start = player * cardsPerPlayer + privateOffset[round];
+        for (int i = 0; i < numPrivateCards[round]; i++) {
+            sb.append(Card.toString(privateCards[start + i]));
         }
-        return retString;
     }
 
     /**
@@ -193,10 +315,24 @@ public class Hand implements Serializable{
      * @return A string representing the public cards for a specified round
      */
     public String getPublicCardsString(int round) {
-        String retString = "";
-        for (Card c : publicCards[round]) {
-            retString += c.toString();
+        if (numPublicCards[round] == 0) {
+            return "";
+        }
+        StringBuilder retString = new StringBuilder();
+        appendPublicCards(retString, round);
+        return retString.toString();
+    }
+
+    /**
+     * Append the public cards for a given round to a StringBuilder, in the
+     * same form as {@link #getPublicCardsString}
+     * @param sb The StringBuilder to append to
+     * @param round An integer representation of a round for the index
+     */
+    public void appendPublicCards(StringBuilder sb, int round) {
+        int start = publicOffset[round];
+        for (int i = 0; i < numPublicCards[round]; i++) {
+            sb.append(Card.toString(publicCards[start + i]));
         }
-        return retString;
     }
 }
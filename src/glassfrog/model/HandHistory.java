@@ -0,0 +1,343 @@
+package glassfrog.model;
+
+import glassfrog.players.Player;
+import glassfrog.players.SeatComparator;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The HandHistory builds the records of the binary hand history a Dealer
+ * writes to its .dealer.hh file.  The file holds everything needed to write
+ * the match's rawlog and divatlog back out (see
+ * {@link glassfrog.tools.HistoryConverter}) in a fraction of the space.
+ *
+ * A hand history file is a series of records.  Each record is a type byte,
+ * the length of the body as a varint and the body, so a reader can skip any
+ * record it doesn't want.  Numbers are unsigned LEB128 varints, signed numbers
+ * are zigzag encoded first, and strings are a varint byte length followed by
+ * UTF-8.
+ *
+ * HEADER, written each time the dealer opens its logs:
+ *   "GFHH", version
+ *   gamedef text, seed
+ *   flags: 1 for no limit, 2 if a divatlog is kept
+ *   players, rounds, private cards in each round, public cards in each round
+ *   for each player, in seat order:
+ *     seat, name, the player's toString prefix, buy in, score (signed)
+ *
+ * HAND, written at the end of each hand that is played out:
+ *   hand number
+ *   the seat of the player in each position
+ *   the cards, one byte each, private cards position by position then public
+ *   events, each starting with a byte whose low two bits are the event type:
+ *     ROUND  a "/" in the betting
+ *     BLIND  amount
+ *     ACTION bit 2 set if the amount is shown in the betting, bits 3-4 the
+ *            response kind; then the action, the amount bet to and the
+ *            position, followed by the action text the player sent after
+ *            echoing its MATCHSTATE, or the whole response if it wasn't
+ *            an exact echo
+ *     END    the last event
+ *   pots, each starting with a byte that is 1, or 3 for a showdown, then the
+ *   net of each position (signed); ended by a 0 byte
+ *   the dealer's current player
+ *   the change in score of each position (signed)
+ *
+ * Only hands that are played out are written, so the part of a hand cut short
+ * by a disconnect is not in the history.
+ * @author jdavidso
+ */
+public class HandHistory {
+
+    public static final byte[] MAGIC = {'G', 'F', 'H', 'H'};
+    public static final int VERSION = 1;
+    public static final int HEADER = 1;
+    public static final int HAND = 2;
+    public static final int EVENT_ROUND = 0;
+    public static final int EVENT_BLIND = 1;
+    public static final int EVENT_ACTION = 2;
+    public static final int EVENT_END = 3;
+    public static final int SHOW_AMOUNT = 4;
+    /** The player failed to respond */
+    public static final int RESPONSE_NONE = 0;
+    /** The player echoed the MATCHSTATE it was sent, followed by the action */
+    public static final int RESPONSE_ECHO = 1;
+    /** The player sent just the action, which isn't logged */
+    public static final int RESPONSE_BARE = 2;
+    /** The player sent some other response, which is kept whole */
+    public static final int RESPONSE_VERBATIM = 3;
+    public static final int FLAG_NO_LIMIT = 1;
+    public static final int FLAG_DIVAT = 2;
+    private static final String PLAYER_PREFIX = "PLAYER:Name:";
+
+    private byte[] buffer = new byte[256];
+    private int length;
+    private int[] startScores;
+
+    /**
+     * Build the header record for a match
+     * @param gamedef The Gamedef of the match
+     * @param seed The match seed
+     * @param divat True if a divatlog is kept for the match
+     * @param players The players of the match, in any order
+     * @return The header record
+     */
+    public byte[] header(Gamedef gamedef, long seed, boolean divat, List<Player> players) {
+        length = 0;
+        for (byte b : MAGIC) {
+            writeByte(b);
+        }
+        writeByte(VERSION);
+        writeString(gamedef.toString());
+        writeSigned(seed);
+        writeByte((gamedef.isNoLimit() ? FLAG_NO_LIMIT : 0) | (divat ? FLAG_DIVAT : 0));
+        writeVarint(players.size());
+        writeVarint(gamedef.getNumRounds());
+        for (int round = 0; round < gamedef.getNumRounds(); round++) {
+            writeVarint(gamedef.getNumPrivateCards()[round]);
+        }
+        for (int round = 0; round < gamedef.getNumRounds(); round++) {
+            writeVarint(gamedef.getNumPublicCards()[round]);
+        }
+        LinkedList<Player> seatSorted = new LinkedList<Player>(players);
+        Collections.sort(seatSorted, new SeatComparator());
+        for (Player p : seatSorted) {
+            String description = p.toString();
+            int prefix = description.indexOf(PLAYER_PREFIX);
+            writeVarint(p.getSeat());
+            writeString(p.getName());
+            writeString(prefix > 0 ? description.substring(0, prefix) : "");
+            writeVarint(p.getBuyIn());
+            writeSigned(p.getScore());
+        }
+        return record(HEADER);
+    }
+
+    /**
+     * Start the record for a hand
+     * @param handNumber The number of the hand
+     * @param hand The cards of the hand
+     * @param players The players, in position order
+     */
+    public void startHand(int handNumber, Hand hand, List<Player> players) {
+        length = 0;
+        writeVarint(handNumber);
+        if (startScores == null || startScores.length != players.size()) {
+            startScores = new int[players.size()];
+        }
+        int position = 0;
+        for (Player p : players) {
+            writeVarint(p.getSeat());
+            startScores[position++] = p.getScore();
+        }
+        ensure(hand.getTotalCards());
+        length += hand.getCards(buffer, length);
+    }
+
+    /**
+     * Record the start of the next round
+     */
+    public void nextRound() {
+        writeByte(EVENT_ROUND);
+    }
+
+    /**
+     * Record a blind shown in the betting
+     * @param amount The size of the blind
+     */
+    public void blind(int amount) {
+        writeByte(EVENT_BLIND);
+        writeVarint(amount);
+    }
+
+    /**
+     * Record an action
+     * @param action one of {f,c,r}
+     * @param amount the amount bet to
+     * @param showAmount True if the amount is shown in the betting
+     * @param position The position of the player who acted
+     * @param response One of the RESPONSE kinds
+     * @param text The action text after the echo for RESPONSE_ECHO, the whole
+     * response for RESPONSE_VERBATIM, otherwise not used
+     */
+    public void action(char action, int amount, boolean showAmount, int position,
+            int response, String text) {
+        writeByte(EVENT_ACTION | (showAmount ? SHOW_AMOUNT : 0) | (response << 3));
+        writeByte(action);
+        writeVarint(amount);
+        writeVarint(position);
+        if (response == RESPONSE_ECHO || response == RESPONSE_VERBATIM) {
+            writeString(text);
+        }
+    }
+
+    /**
+     * Record a pot being paid out.  The first pot ends the betting.
+     * @param firstPot True for the first pot of the hand
+     * @param showdown True if the cards were shown for the pot
+     * @param players The players, in position order
+     */
+    public void pot(boolean firstPot, boolean showdown, List<Player> players) {
+        if (firstPot) {
+            writeByte(EVENT_END);
+        }
+        writeByte(showdown ? 3 : 1);
+        for (Player p : players) {
+            writeSigned(p.getStack() - p.getBuyIn());
+        }
+    }
+
+    /**
+     * Finish the record for the hand
+     * @param currentPlayer The dealer's current player
+     * @param players The players, in position order
+     * @return The hand record
+     */
+    public byte[] endHand(int currentPlayer, List<Player> players) {
+        writeByte(0);
+        writeVarint(currentPlayer);
+        int position = 0;
+        for (Player p : players) {
+            writeSigned(p.getScore() - startScores[position++]);
+        }
+        return record(HAND);
+    }
+
+    /**
+     * Wrap the body in the buffer up as a record
+     * @param type The record type
+     * @return The record
+     */
+    private byte[] record(int type) {
+        int size = 1 + varintSize(length) + length;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put((byte) type);
+        putVarint(out, length);
+        out.put(buffer, 0, length);
+        return out.array();
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+
+    private void writeByte(int b) {
+        ensure(1);
+        buffer[length++] = (byte) b;
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeSigned(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeString(String s) {
+        byte[] bytes = utf8(s);
+        writeVarint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    /**
+     * Get the number of bytes a varint takes
+     * @param value The value
+     * @return The encoded size
+     */
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * Write a varint to a buffer
+     * @param out The buffer
+     * @param value The value
+     */
+    public static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Read a varint from a buffer
+     * @param in The buffer
+     * @return The value
+     * @throws IllegalArgumentException if the varint is too long
+     */
+    public static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Bad varint");
+    }
+
+    /**
+     * Read a varint that fits in an int from a buffer
+     * @param in The buffer
+     * @return The value
+     */
+    public static int getInt(ByteBuffer in) {
+        return (int) getVarint(in);
+    }
+
+    /**
+     * Read a zigzag encoded signed varint from a buffer
+     * @param in The buffer
+     * @return The value
+     */
+    public static long getSigned(ByteBuffer in) {
+        long value = getVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read a string from a buffer
+     * @param in The buffer
+     * @return The string
+     */
+    public static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[getInt(in)];
+        in.get(bytes);
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
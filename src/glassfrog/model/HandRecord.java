@@ -0,0 +1,281 @@
+package glassfrog.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One hand of a binary hand history: the players' positions, the cards, the
+ * betting events, the pots and the change in each player's score.  Players
+ * are given by position, as in the dealer.  See {@link HandHistory} for the
+ * layout.
+ * @author jdavidso
+ */
+public class HandRecord {
+
+    private final int handNumber;
+    private final int[] seats;
+    private final Hand hand;
+    private int numEvents;
+    private byte[] eventTypes = new byte[16];
+    private char[] eventActions = new char[16];
+    private int[] eventAmounts = new int[16];
+    private int[] eventPositions = new int[16];
+    private boolean[] eventShowAmounts = new boolean[16];
+    private byte[] responseKinds = new byte[16];
+    private String[] responseTexts = new String[16];
+    private int numPots;
+    private boolean[] potShowdowns = new boolean[2];
+    private int[][] potNets = new int[2][];
+    private final int currentPlayer;
+    private final int[] scoreChanges;
+
+    /**
+     * Read a hand from the body of a HAND record
+     * @param header The header of the match the hand is from
+     * @param body The record body, positioned at its start
+     */
+    public HandRecord(MatchHeader header, ByteBuffer body) {
+        int numPlayers = header.getNumPlayers();
+        handNumber = HandHistory.getInt(body);
+        seats = new int[numPlayers];
+        for (int position = 0; position < numPlayers; position++) {
+            seats[position] = HandHistory.getInt(body);
+        }
+        hand = header.newHand();
+        byte[] cards = new byte[hand.getTotalCards()];
+        body.get(cards);
+        hand.setCards(cards, 0);
+
+        int type;
+        do {
+            int code = body.get();
+            type = code & 3;
+            growEvents();
+            eventTypes[numEvents] = (byte) type;
+            if (type == HandHistory.EVENT_BLIND) {
+                eventAmounts[numEvents] = HandHistory.getInt(body);
+            } else if (type == HandHistory.EVENT_ACTION) {
+                int response = (code >> 3) & 3;
+                eventShowAmounts[numEvents] = (code & HandHistory.SHOW_AMOUNT) != 0;
+                eventActions[numEvents] = (char) body.get();
+                eventAmounts[numEvents] = HandHistory.getInt(body);
+                eventPositions[numEvents] = HandHistory.getInt(body);
+                responseKinds[numEvents] = (byte) response;
+                if (response == HandHistory.RESPONSE_ECHO || response == HandHistory.RESPONSE_VERBATIM) {
+                    responseTexts[numEvents] = HandHistory.getString(body);
+                }
+            }
+            numEvents++;
+        } while (type != HandHistory.EVENT_END);
+
+        int potCode;
+        while ((potCode = body.get()) != 0) {
+            if (numPots == potNets.length) {
+                boolean[] showdowns = new boolean[numPots * 2];
+                int[][] nets = new int[numPots * 2][];
+                System.arraycopy(potShowdowns, 0, showdowns, 0, numPots);
+                System.arraycopy(potNets, 0, nets, 0, numPots);
+                potShowdowns = showdowns;
+                potNets = nets;
+            }
+            potShowdowns[numPots] = (potCode & 2) != 0;
+            potNets[numPots] = new int[numPlayers];
+            for (int position = 0; position < numPlayers; position++) {
+                potNets[numPots][position] = (int) HandHistory.getSigned(body);
+            }
+            numPots++;
+        }
+        currentPlayer = HandHistory.getInt(body);
+        scoreChanges = new int[numPlayers];
+        for (int position = 0; position < numPlayers; position++) {
+            scoreChanges[position] = (int) HandHistory.getSigned(body);
+        }
+    }
+
+    /**
+     * Make room for another event
+     */
+    private void growEvents() {
+        if (numEvents < eventTypes.length) {
+            return;
+        }
+        int size = numEvents * 2;
+        byte[] types = new byte[size];
+        char[] actions = new char[size];
+        int[] amounts = new int[size];
+        int[] positions = new int[size];
+        boolean[] showAmounts = new boolean[size];
+        byte[] kinds = new byte[size];
+        String[] texts = new String[size];
+        System.arraycopy(eventTypes, 0, types, 0, numEvents);
+        System.arraycopy(eventActions, 0, actions, 0, numEvents);
+        System.arraycopy(eventAmounts, 0, amounts, 0, numEvents);
+        System.arraycopy(eventPositions, 0, positions, 0, numEvents);
+        System.arraycopy(eventShowAmounts, 0, showAmounts, 0, numEvents);
+        System.arraycopy(responseKinds, 0, kinds, 0, numEvents);
+        System.arraycopy(responseTexts, 0, texts, 0, numEvents);
+        eventTypes = types;
+        eventActions = actions;
+        eventAmounts = amounts;
+        eventPositions = positions;
+        eventShowAmounts = showAmounts;
+        responseKinds = kinds;
+        responseTexts = texts;
+    }
+
+    /**
+     * Get the hand number
+     * @return the hand number
+     */
+    public int getHandNumber() {
+        return handNumber;
+    }
+
+    /**
+     * Get the number of players
+     * @return the number of players
+     */
+    public int getNumPlayers() {
+        return seats.length;
+    }
+
+    /**
+     * Get the seat of the player in a position
+     * @param position The position
+     * @return the seat
+     */
+    public int getSeat(int position) {
+        return seats[position];
+    }
+
+    /**
+     * Get the cards of the hand, by position
+     * @return the Hand
+     */
+    public Hand getHand() {
+        return hand;
+    }
+
+    /**
+     * Get the number of events, the last of which is EVENT_END
+     * @return the number of events
+     */
+    public int getNumEvents() {
+        return numEvents;
+    }
+
+    /**
+     * Get the type of an event
+     * @param event The index of the event
+     * @return one of the HandHistory EVENT types
+     */
+    public int getEventType(int event) {
+        return eventTypes[event];
+    }
+
+    /**
+     * Get the action of an ACTION event
+     * @param event The index of the event
+     * @return one of {f,c,r}
+     */
+    public char getAction(int event) {
+        return eventActions[event];
+    }
+
+    /**
+     * Get the amount of a BLIND event, or the amount bet to of an ACTION
+     * @param event The index of the event
+     * @return the amount
+     */
+    public int getAmount(int event) {
+        return eventAmounts[event];
+    }
+
+    /**
+     * Check to see if the amount of an ACTION event is shown in the betting
+     * @param event The index of the event
+     * @return True if the amount is shown
+     */
+    public boolean isAmountShown(int event) {
+        return eventShowAmounts[event];
+    }
+
+    /**
+     * Get the position of the player who took an ACTION
+     * @param event The index of the event
+     * @return the position
+     */
+    public int getPosition(int event) {
+        return eventPositions[event];
+    }
+
+    /**
+     * Get the kind of response an ACTION came from
+     * @param event The index of the event
+     * @return one of the HandHistory RESPONSE kinds
+     */
+    public int getResponseKind(int event) {
+        return responseKinds[event];
+    }
+
+    /**
+     * Get the text kept from the response an ACTION came from
+     * @param event The index of the event
+     * @return the action after the echo, the whole response, or null
+     */
+    public String getResponseText(int event) {
+        return responseTexts[event];
+    }
+
+    /**
+     * Get the number of pots paid out
+     * @return the number of pots
+     */
+    public int getNumPots() {
+        return numPots;
+    }
+
+    /**
+     * Check to see if the cards were shown for a pot
+     * @param pot The index of the pot
+     * @return True for a showdown
+     */
+    public boolean isShowdown(int pot) {
+        return potShowdowns[pot];
+    }
+
+    /**
+     * Get the net of a position once a pot was paid out
+     * @param pot The index of the pot
+     * @param position The position
+     * @return the player's stack less their buy in
+     */
+    public int getNet(int pot, int position) {
+        return potNets[pot][position];
+    }
+
+    /**
+     * Get the net of a position at the end of the hand
+     * @param position The position
+     * @return the player's stack less their buy in after the last pot
+     */
+    public int getNet(int position) {
+        return potNets[numPots - 1][position];
+    }
+
+    /**
+     * Get the dealer's current player at the end of the hand
+     * @return the current player
+     */
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * Get the change in a position's score over the hand
+     * @param position The position
+     * @return the change in score
+     */
+    public int getScoreChange(int position) {
+        return scoreChanges[position];
+    }
+}
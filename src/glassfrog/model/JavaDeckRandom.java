@@ -0,0 +1,48 @@
+package glassfrog.model;
+
+import java.util.Random;
+
+/**
+ * A DeckRandom backed by java.util.Random.  This is the generator the Deck has
+ * always used, so an int seed gives the same numbers as it did in every earlier
+ * version of the server.
+ * @author jdavidso
+ */
+public class JavaDeckRandom implements DeckRandom {
+
+    private static final long serialVersionUID = 1L;
+    private Random rng;
+
+    /**
+     * Create a generator from a seed
+     * @param seed The seed for java.util.Random
+     */
+    public JavaDeckRandom(long seed) {
+        rng = new Random(seed);
+    }
+
+    /**
+     * Return the next int from java.util.Random
+     * @param bound The upper bound, must be positive
+     * @return a random int in [0, bound)
+     */
+    public int nextInt(int bound) {
+        return rng.nextInt(bound);
+    }
+
+    /**
+     * Reseed java.util.Random
+     * @param seed The new seed
+     */
+    public void setSeed(long seed) {
+        rng.setSeed(seed);
+    }
+
+    /**
+     * Create a new generator seeded from this one
+     * @return A new JavaDeckRandom
+     */
+    public DeckRandom split() {
+        return new JavaDeckRandom(rng.nextLong());
+    }
+}
@@ -0,0 +1,127 @@
+package glassfrog.model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A LatencyHistogram counts response times in a fixed set of buckets, in the
+ * manner of HdrHistogram: times are kept in microseconds, exactly below 64us
+ * and above that in 32 buckets for every power of two, so any percentile is
+ * within about 3% of the true time.  The histogram takes the same 10KB of
+ * memory however many times it records, and recording is a few shifts and an
+ * atomic add, so it can be done on the betting thread while the server reads
+ * the histogram from another.
+ *
+ * Times of more than about 100 days are counted as 100 days.
+ * @author jdavidso
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 37;
+    private static final int BUCKETS = (MAX_EXPONENT + 2) * SUB_BUCKETS;
+    private static final long MAX_MICROS = (2L * SUB_BUCKETS << MAX_EXPONENT) - 1;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a time
+     * @param nanos The time in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.min(Math.max(0, nanos / 1000), MAX_MICROS);
+        counts.incrementAndGet(bucket(micros));
+        count.incrementAndGet();
+        total.addAndGet(micros);
+        long m = max.get();
+        while (micros > m && !max.compareAndSet(m, micros)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Get the number of times recorded
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the mean of the times recorded
+     * @return the mean in microseconds, or 0 if nothing has been recorded
+     */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : total.get() / n;
+    }
+
+    /**
+     * Get the sum of the times recorded
+     * @return the total in microseconds
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * Get the longest time recorded
+     * @return the longest time in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the time that the given fraction of the recorded times are at or
+     * below
+     * @param fraction The fraction, from 0 to 1, for instance 0.99 for the 99th
+     * percentile
+     * @return the time in microseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double fraction) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get the bucket a time is counted in
+     * @param micros The time in microseconds
+     * @return the bucket index
+     */
+    private static int bucket(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    /**
+     * Get the longest time counted in a bucket
+     * @param index The bucket index
+     * @return the time in microseconds
+     */
+    private static long highest(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,146 @@
+package glassfrog.model;
+
+import glassfrog.players.Player;
+import glassfrog.players.PlayerFactory;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The MatchEngine plays matches between in process Players, such as the
+ * RandomLimitPlayer or the StringPlayer, without a Room, sockets or log files.
+ * It runs a headless {@link Dealer} on the calling thread and returns the
+ * result of the match as soon as the last hand is over, so it can be used to
+ * play large numbers of hands for regression testing bots and rule changes.
+ *
+ * An engine only holds its Gamedef, which it does not change, so one engine
+ * may play several matches at once on different threads as long as each match
+ * has its own Players.
+ *
+ * Players are answered the same MATCHSTATE strings that a socket player would
+ * get and may reply with a full MATCHSTATE response or just the action.
+ *
+ * A duplicate match plays every hand once for each rotation of the players
+ * around the seats, so that each player gets each seat's cards in turn and
+ * the luck of the deal cancels out of the combined scores.  For heads up this
+ * is the usual match and its seat swapped replay.  Each hand is dealt once and
+ * the same dealt hand is played by every rotation.
+ * @author jdavidso
+ */
+public class MatchEngine {
+
+    private final Gamedef gamedef;
+
+    /**
+     * Create an engine to play matches of the given game
+     * @param gamedef The Gamedef to play
+     */
+    public MatchEngine(Gamedef gamedef) {
+        this.gamedef = gamedef;
+    }
+
+    /**
+     * Get the Gamedef this engine plays
+     * @return the Gamedef
+     */
+    public Gamedef getGamedef() {
+        return gamedef;
+    }
+
+    /**
+     * Play a match of the number of hands in the Gamedef
+     * @param players The Players to seat, in any order
+     * @param seed The seed for the deck
+     * @return The result of the match
+     */
+    public MatchResult play(LinkedList<Player> players, int seed) {
+        return play(players, seed, gamedef.getNumHands());
+    }
+
+    /**
+     * Play a match of numHands hands.  The players' scores are set back to 0
+     * and they are put back in the positions of their seats first, so the same
+     * Players may be used for more than one match.
+     * @param players The Players to seat, in any order
+     * @param seed The seed for the deck
+     * @param numHands The number of hands to play
+     * @return The result of the match
+     */
+    public MatchResult play(LinkedList<Player> players, int seed, int numHands) {
+        for (Player p : players) {
+            p.setScore(0);
+        }
+        Dealer dealer = new Dealer(gamedef, players, seed);
+        dealer.setHeadless(true);
+        int handsPlayed = dealer.playHands(numHands);
+        return new MatchResult(seed, handsPlayed, dealer.isDisconnected(), players);
+    }
+
+    /**
+     * Play a duplicate match of the number of hands in the Gamedef
+     * @param factories A factory for each player, in seat order
+     * @param seed The seed for the deck
+     * @return The combined result of the rotations
+     */
+    public MatchResult playDuplicate(List<PlayerFactory> factories, int seed) {
+        return playDuplicate(factories, seed, gamedef.getNumHands());
+    }
+
+    /**
+     * Play a duplicate match of numHands hands.  Each rotation of the seats has
+     * its own Dealer and its own new Players, so no player sees a hand twice.
+     * The hands are played in order, each one by every rotation before the
+     * next is dealt.  Rotation 0 seats the players as listed, and is the same
+     * match that {@link #play} would play with the same seed.
+     *
+     * The result has the players' names from rotation 0 and the sum of each
+     * player's scores over all of the rotations.  The hands played count every
+     * rotation.
+     * @param factories A factory for each player, in seat order
+     * @param seed The seed for the deck
+     * @param numHands The number of hands to deal
+     * @return The combined result of the rotations
+     */
+    public MatchResult playDuplicate(List<PlayerFactory> factories, int seed, int numHands) {
+        int numPlayers = factories.size();
+        int buyIn = gamedef.getStackSize();
+        Dealer[] dealers = new Dealer[numPlayers];
+        Player[][] lineups = new Player[numPlayers][numPlayers];
+        for (int rotation = 0; rotation < numPlayers; rotation++) {
+            LinkedList<Player> players = new LinkedList<Player>();
+            for (int i = 0; i < numPlayers; i++) {
+                int seat = (i + rotation) % numPlayers;
+                lineups[rotation][i] = factories.get(i).newPlayer(seat, buyIn, seed);
+                players.add(lineups[rotation][i]);
+            }
+            dealers[rotation] = new Dealer(gamedef, players, seed);
+            dealers[rotation].setHeadless(true);
+        }
+
+        Deck deck = Deck.forShuffle(gamedef.getShuffleMode(), seed);
+        Hand hand = new Hand(numPlayers, gamedef.getNumRounds(),
+                gamedef.getNumPrivateCards(), gamedef.getNumPublicCards());
+        int handsPlayed = 0;
+        boolean disconnected = false;
+        for (int h = 0; h < numHands && !disconnected; h++) {
+            deck.dealHand(hand);
+            for (Dealer dealer : dealers) {
+                dealer.playDealtHand(hand);
+                handsPlayed++;
+                if (dealer.isDisconnected()) {
+                    disconnected = true;
+                    break;
+                }
+            }
+        }
+
+        String[] names = new String[numPlayers];
+        int[] scores = new int[numPlayers];
+        for (int i = 0; i < numPlayers; i++) {
+            names[i] = lineups[0][i].getName();
+            for (int rotation = 0; rotation < numPlayers; rotation++) {
+                scores[i] += lineups[rotation][i].getScore();
+            }
+        }
+        return new MatchResult(seed, handsPlayed, disconnected, names, scores);
+    }
+}
@@ -0,0 +1,186 @@
+package glassfrog.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The header record of a binary hand history: the game, the seed and the
+ * players as they were when the dealer opened its logs.  The players are kept
+ * in seat order.  See {@link HandHistory} for the layout.
+ * @author jdavidso
+ */
+public class MatchHeader {
+
+    private final int version;
+    private final String gamedef;
+    private final long seed;
+    private final int flags;
+    private final int numRounds;
+    private final int[] numPrivateCards;
+    private final int[] numPublicCards;
+    private final int[] seats;
+    private final String[] names;
+    private final String[] prefixes;
+    private final int[] buyIns;
+    private final int[] scores;
+
+    /**
+     * Read a header from the body of a HEADER record
+     * @param body The record body, positioned at its start
+     * @throws IllegalArgumentException if the body isn't a header this
+     * version can read
+     */
+    public MatchHeader(ByteBuffer body) {
+        byte[] magic = new byte[HandHistory.MAGIC.length];
+        body.get(magic);
+        if (!Arrays.equals(magic, HandHistory.MAGIC)) {
+            throw new IllegalArgumentException("Not a hand history");
+        }
+        version = body.get();
+        if (version != HandHistory.VERSION) {
+            throw new IllegalArgumentException("Unknown hand history version " + version);
+        }
+        gamedef = HandHistory.getString(body);
+        seed = HandHistory.getSigned(body);
+        flags = body.get();
+        int numPlayers = HandHistory.getInt(body);
+        numRounds = HandHistory.getInt(body);
+        numPrivateCards = new int[numRounds];
+        numPublicCards = new int[numRounds];
+        for (int round = 0; round < numRounds; round++) {
+            numPrivateCards[round] = HandHistory.getInt(body);
+        }
+        for (int round = 0; round < numRounds; round++) {
+            numPublicCards[round] = HandHistory.getInt(body);
+        }
+        seats = new int[numPlayers];
+        names = new String[numPlayers];
+        prefixes = new String[numPlayers];
+        buyIns = new int[numPlayers];
+        scores = new int[numPlayers];
+        for (int i = 0; i < numPlayers; i++) {
+            seats[i] = HandHistory.getInt(body);
+            names[i] = HandHistory.getString(body);
+            prefixes[i] = HandHistory.getString(body);
+            buyIns[i] = HandHistory.getInt(body);
+            scores[i] = (int) HandHistory.getSigned(body);
+        }
+    }
+
+    /**
+     * Build an empty Hand the size of the hands of this match
+     * @return A new Hand
+     */
+    public Hand newHand() {
+        return new Hand(seats.length, numRounds, numPrivateCards, numPublicCards);
+    }
+
+    /**
+     * Find the index of a player from their seat
+     * @param seat The seat
+     * @return The index of the player in seat order
+     * @throws IllegalArgumentException if nobody sits in the seat
+     */
+    public int indexOfSeat(int seat) {
+        for (int i = 0; i < seats.length; i++) {
+            if (seats[i] == seat) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No player in seat " + seat);
+    }
+
+    /**
+     * Get the gamedef of the match, as in {@link Gamedef#toString}
+     * @return the gamedef string
+     */
+    public String getGamedef() {
+        return gamedef;
+    }
+
+    /**
+     * Get the seed of the match
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Check to see if the game is no limit
+     * @return True for no limit
+     */
+    public boolean isNoLimit() {
+        return (flags & HandHistory.FLAG_NO_LIMIT) != 0;
+    }
+
+    /**
+     * Check to see if the dealer kept a divatlog for the match
+     * @return True if there is a divatlog
+     */
+    public boolean isDivatLogged() {
+        return (flags & HandHistory.FLAG_DIVAT) != 0;
+    }
+
+    /**
+     * Get the number of players
+     * @return the number of players
+     */
+    public int getNumPlayers() {
+        return seats.length;
+    }
+
+    /**
+     * Get the number of rounds
+     * @return the number of rounds
+     */
+    public int getNumRounds() {
+        return numRounds;
+    }
+
+    /**
+     * Get the seat of a player
+     * @param index The index of the player in seat order
+     * @return the seat
+     */
+    public int getSeat(int index) {
+        return seats[index];
+    }
+
+    /**
+     * Get the name of a player
+     * @param index The index of the player in seat order
+     * @return the name
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Get the start of a player's toString, such as "RandomLimit", which is
+     * written before "PLAYER:" in the STATS lines
+     * @param index The index of the player in seat order
+     * @return the prefix
+     */
+    public String getPrefix(int index) {
+        return prefixes[index];
+    }
+
+    /**
+     * Get a player's buy in
+     * @param index The index of the player in seat order
+     * @return the buy in
+     */
+    public int getBuyIn(int index) {
+        return buyIns[index];
+    }
+
+    /**
+     * Get a player's score when the header was written
+     * @param index The index of the player in seat order
+     * @return the score
+     */
+    public int getScore(int index) {
+        return scores[index];
+    }
+}
@@ -0,0 +1,470 @@
+package glassfrog.model;
+
+import glassfrog.tools.Threads;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The MatchLog writes a Dealer's rawlog, divatlog and match logger lines off
+ * the dealer's thread.  The dealer puts each line into the log's bounded ring
+ * buffer and carries on, and a single background writer shared by every
+ * MatchLog takes whole batches of lines out of the rings and writes them.  The
+ * dealer only waits if its ring is full.  If the writer fails on a log with
+ * anything other than an IOException the log is reported to the error logger
+ * and closed, and its lines are dropped so the dealer can carry on.
+ *
+ * When the lines are flushed to disk is set for all logs with the system
+ * property glassfrog.logflush:
+ *   line - after every batch of lines the writer takes, as soon as it can
+ *   hand - at the end of every hand (the default)
+ *   a number - every that many milliseconds
+ * for instance java -Dglassfrog.logflush=line -jar GlassFrog.jar
+ *
+ * With hand or timed flushing the lines of the last hand may be lost if the
+ * server is killed, but every hand that was flushed is complete.  All of the
+ * lines are written and flushed when the log is closed.
+ *
+ * Which logs are kept is set with the system property glassfrog.matchlog:
+ *   text - the rawlog and divatlog (the default)
+ *   binary - only the binary hand history, logPrefix.hh (see {@link HandHistory})
+ *   both - the text logs and the hand history
+ * The text logs can be written back out from the hand history with
+ * {@link glassfrog.tools.HistoryConverter}.
+ * @author jdavidso
+ */
+public class MatchLog {
+
+    public static final String FLUSH_PROPERTY = "glassfrog.logflush";
+    public static final int FLUSH_LINE = 0;
+    public static final int FLUSH_HAND = 1;
+    public static final int FLUSH_INTERVAL = 2;
+    public static final String FORMAT_PROPERTY = "glassfrog.matchlog";
+    private static final int CAPACITY = 4096;
+    private static final byte RAW = 0;
+    private static final byte DIVAT = 1;
+    private static final byte END_HAND = 2;
+    private static final byte CLOSE = 3;
+    private static final byte HISTORY = 4;
+    private static final int FLUSH_POLICY;
+    private static final long FLUSH_INTERVAL_MS;
+    private static final boolean TEXT;
+    private static final boolean BINARY;
+    private static final LinkedBlockingQueue<MatchLog> ready = new LinkedBlockingQueue<MatchLog>();
+    private static final Object[] batch = new Object[CAPACITY];
+    private static final byte[] batchKinds = new byte[CAPACITY];
+    private static Thread writer;
+
+    static {
+        String flush = System.getProperty(FLUSH_PROPERTY, "hand");
+        int policy = FLUSH_HAND;
+        long interval = 1000;
+        if (flush.equalsIgnoreCase("line")) {
+            policy = FLUSH_LINE;
+        } else if (!flush.equalsIgnoreCase("hand")) {
+            try {
+                interval = Math.max(1, Long.parseLong(flush));
+                policy = FLUSH_INTERVAL;
+            } catch (NumberFormatException ex) {
+                Logger.getLogger("errorlogger").log(Level.WARNING,
+                        "Unknown " + FLUSH_PROPERTY + " " + flush + ", flushing every hand");
+            }
+        }
+        FLUSH_POLICY = policy;
+        FLUSH_INTERVAL_MS = interval;
+
+        String format = System.getProperty(FORMAT_PROPERTY, "text");
+        boolean text = true;
+        boolean binary = false;
+        if (format.equalsIgnoreCase("binary")) {
+            text = false;
+            binary = true;
+        } else if (format.equalsIgnoreCase("both")) {
+            binary = true;
+        } else if (!format.equalsIgnoreCase("text")) {
+            Logger.getLogger("errorlogger").log(Level.WARNING,
+                    "Unknown " + FORMAT_PROPERTY + " " + format + ", writing text logs");
+        }
+        TEXT = text;
+        BINARY = binary;
+    }
+
+    private final BufferedWriter rawLogWriter;
+    private final BufferedWriter divatLogWriter;
+    private final BufferedOutputStream historyStream;
+    private final Logger matchLogger;
+    private final String errorLogger;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition finished = lock.newCondition();
+    private final Object[] lines = new Object[CAPACITY];
+    private final byte[] kinds = new byte[CAPACITY];
+    private int head;
+    private int count;
+    private boolean queued;
+    private boolean closing;
+    private boolean closed;
+    private boolean dirty;
+    private long lastFlush;
+
+    /**
+     * Open the log files for a match, appending to them if they exist
+     * @param logPrefix The start of the file names, the files are
+     * logPrefix.rawlog, logPrefix.divatlog and logPrefix.hh
+     * @param matchLogger The name of the Logger to send the rawlog lines to
+     * @param errorLogger The name of the Logger to report write errors to
+     * @throws java.io.IOException if a file could not be opened
+     */
+    public MatchLog(String logPrefix, String matchLogger, String errorLogger) throws IOException {
+        // Loggers are only weakly held by the LogManager, keep a reference so
+        // the handlers added to this one stay with it
+        this.matchLogger = Logger.getLogger(matchLogger);
+        this.errorLogger = errorLogger;
+        BufferedWriter raw = null;
+        BufferedWriter divat = null;
+        try {
+            if (TEXT) {
+                raw = new BufferedWriter(new FileWriter(logPrefix + ".rawlog", true));
+                divat = new BufferedWriter(new FileWriter(logPrefix + ".divatlog", true));
+            }
+            historyStream = BINARY ?
+                new BufferedOutputStream(new FileOutputStream(logPrefix + ".hh", true)) : null;
+        } catch (IOException ex) {
+            if (raw != null) {
+                raw.close();
+            }
+            if (divat != null) {
+                divat.close();
+            }
+            throw ex;
+        }
+        rawLogWriter = raw;
+        divatLogWriter = divat;
+        lastFlush = System.currentTimeMillis();
+        startWriter();
+    }
+
+    /**
+     * Get the flush policy in use
+     * @return one of FLUSH_LINE, FLUSH_HAND or FLUSH_INTERVAL
+     */
+    public static int getFlushPolicy() {
+        return FLUSH_POLICY;
+    }
+
+    /**
+     * Check to see if the text logs are kept
+     * @return True if the rawlog and divatlog are written
+     */
+    public boolean isText() {
+        return TEXT;
+    }
+
+    /**
+     * Check to see if the binary hand history is kept
+     * @return True if the hand history is written
+     */
+    public boolean hasHistory() {
+        return BINARY;
+    }
+
+    /**
+     * Log a line to the rawlog and the match logger
+     * @param line The line to log
+     */
+    public void logState(String line) {
+        if (TEXT) {
+            add(RAW, line);
+        }
+    }
+
+    /**
+     * Log a line to the divatlog
+     * @param line The line to log
+     */
+    public void logDivat(String line) {
+        if (TEXT) {
+            add(DIVAT, line);
+        }
+    }
+
+    /**
+     * Log a record to the hand history
+     * @param record The record, from a {@link HandHistory}
+     */
+    public void logHistory(byte[] record) {
+        if (BINARY) {
+            add(HISTORY, record);
+        }
+    }
+
+    /**
+     * Mark the end of a hand, the point at which the lines are flushed with
+     * the hand flush policy
+     */
+    public void endHand() {
+        add(END_HAND, null);
+    }
+
+    /**
+     * Write out every line logged so far, flush and close the files.  Waits
+     * until the writer has finished with the log.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closing) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        add(CLOSE, null);
+        lock.lock();
+        try {
+            closing = true;
+            while (!closed) {
+                finished.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put an entry in the ring, waiting for room if it is full, and hand the
+     * log to the writer if it isn't already waiting to be written
+     * @param kind The kind of entry
+     * @param line The line or record, or null for a marker
+     */
+    private void add(byte kind, Object line) {
+        boolean wake = false;
+        lock.lock();
+        try {
+            while (count == CAPACITY && !closing) {
+                notFull.awaitUninterruptibly();
+            }
+            if (closing) {
+                return;
+            }
+            int tail = (head + count) % CAPACITY;
+            lines[tail] = line;
+            kinds[tail] = kind;
+            count++;
+            if (!queued) {
+                queued = true;
+                wake = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (wake) {
+            ready.add(this);
+        }
+    }
+
+    /**
+     * Take everything out of the ring and write it.  Only called on the writer
+     * thread, which owns the batch arrays.
+     */
+    private void drain() {
+        int n;
+        lock.lock();
+        try {
+            n = count;
+            for (int i = 0; i < n; i++) {
+                int index = (head + i) % CAPACITY;
+                batch[i] = lines[index];
+                batchKinds[i] = kinds[index];
+                lines[index] = null;
+            }
+            head = (head + n) % CAPACITY;
+            count = 0;
+            queued = false;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        boolean close = n > 0 && batchKinds[n - 1] == CLOSE;
+        try {
+            for (int i = 0; i < n; i++) {
+                switch (batchKinds[i]) {
+                    case RAW:
+                        rawLogWriter.write((String) batch[i]);
+                        rawLogWriter.write('\n');
+                        matchLogger.log(Level.INFO, (String) batch[i]);
+                        dirty = true;
+                        break;
+                    case DIVAT:
+                        divatLogWriter.write((String) batch[i]);
+                        divatLogWriter.write('\n');
+                        dirty = true;
+                        break;
+                    case HISTORY:
+                        historyStream.write((byte[]) batch[i]);
+                        dirty = true;
+                        break;
+                    case END_HAND:
+                        if (FLUSH_POLICY == FLUSH_HAND) {
+                            flush();
+                        }
+                        break;
+                }
+                batch[i] = null;
+            }
+            if (FLUSH_POLICY == FLUSH_LINE || close) {
+                flush();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(errorLogger).log(Level.SEVERE, "Could not write match log: " + ex.toString());
+        }
+        if (close) {
+            try {
+                if (TEXT) {
+                    rawLogWriter.close();
+                    divatLogWriter.close();
+                }
+                if (BINARY) {
+                    historyStream.close();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(errorLogger).log(Level.SEVERE, "Could not close match log: " + ex.toString());
+            }
+            lock.lock();
+            try {
+                closed = true;
+                finished.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Give up on a log the writer failed on, so that it doesn't take the writer
+     * down with it.  The lines left in the ring are dropped, the files are
+     * closed as far as they can be and the dealer waiting on the log is let go.
+     * Only called on the writer thread.
+     * @param ex The exception the writer failed with
+     */
+    private void fail(RuntimeException ex) {
+        Logger.getLogger(errorLogger).log(Level.SEVERE, "Could not write match log, closing it: " + ex.toString());
+        for (int i = 0; i < CAPACITY; i++) {
+            batch[i] = null;
+        }
+        try {
+            if (TEXT) {
+                rawLogWriter.close();
+                divatLogWriter.close();
+            }
+            if (BINARY) {
+                historyStream.close();
+            }
+        } catch (IOException ioe) {
+            Logger.getLogger(errorLogger).log(Level.SEVERE, "Could not close match log: " + ioe.toString());
+        }
+        lock.lock();
+        try {
+            for (int i = 0; i < CAPACITY; i++) {
+                lines[i] = null;
+            }
+            count = 0;
+            closing = true;
+            closed = true;
+            notFull.signalAll();
+            finished.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush the files if anything has been written since the last flush.
+     * Only called on the writer thread.
+     * @throws java.io.IOException on a write error
+     */
+    private void flush() throws IOException {
+        if (dirty) {
+            if (TEXT) {
+                rawLogWriter.flush();
+                divatLogWriter.flush();
+            }
+            if (BINARY) {
+                historyStream.flush();
+            }
+            dirty = false;
+        }
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Start the shared writer thread the first time a log is opened
+     */
+    private static synchronized void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        writer = Threads.startDaemon(new Runnable() {
+
+            public void run() {
+                write();
+            }
+        }, "MatchLogWriter");
+    }
+
+    /**
+     * The writer loop.  Write each log as it gets lines, and with the timed
+     * flush policy flush the logs that have unflushed lines once their
+     * interval is up.
+     */
+    private static void write() {
+        ArrayList<MatchLog> unflushed = new ArrayList<MatchLog>();
+        while (true) {
+            MatchLog log;
+            try {
+                log = ready.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            if (log != null) {
+                try {
+                    log.drain();
+                } catch (RuntimeException ex) {
+                    log.fail(ex);
+                }
+                if (FLUSH_POLICY == FLUSH_INTERVAL && log.dirty && !unflushed.contains(log)) {
+                    unflushed.add(log);
+                }
+            }
+            if (!unflushed.isEmpty()) {
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < unflushed.size(); i++) {
+                    MatchLog l = unflushed.get(i);
+                    if (l.closed || !l.dirty) {
+                        unflushed.remove(i--);
+                    } else if (now - l.lastFlush >= FLUSH_INTERVAL_MS) {
+                        try {
+                            l.flush();
+                        } catch (IOException ex) {
+                            Logger.getLogger(l.errorLogger).log(Level.SEVERE,
+                                    "Could not flush match log: " + ex.toString());
+                        } catch (RuntimeException ex) {
+                            l.fail(ex);
+                        }
+                        unflushed.remove(i--);
+                    }
+                }
+            }
+        }
+    }
+}
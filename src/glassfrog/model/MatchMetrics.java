@@ -0,0 +1,223 @@
+package glassfrog.model;
+
+import glassfrog.players.Player;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MatchMetrics of a {@link Dealer} count what the dealer has done: hands
+ * played, actions taken, showdowns, actions timed out and the bytes of states
+ * sent to and responses read from the players, along with a
+ * {@link LatencyHistogram} of each player's response times.  The dealer
+ * updates them as it plays and the server reads them from its own threads,
+ * so everything is kept in atomics.
+ * @author jdavidso
+ */
+public class MatchMetrics {
+
+    private final long startTime = System.nanoTime();
+    private final AtomicLong hands = new AtomicLong();
+    private final AtomicLong actions = new AtomicLong();
+    private final AtomicLong showdowns = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final String[] names;
+    private final LatencyHistogram[] latencies;
+
+    /**
+     * Start counting for a match between players
+     * @param players The players of the match
+     */
+    public MatchMetrics(List<Player> players) {
+        names = new String[players.size()];
+        latencies = new LatencyHistogram[players.size()];
+        int i = 0;
+        for (Player p : players) {
+            names[i] = p.getName();
+            latencies[i] = new LatencyHistogram();
+            i++;
+        }
+    }
+
+    /**
+     * Count a hand played
+     */
+    public void handPlayed() {
+        hands.incrementAndGet();
+    }
+
+    /**
+     * Count a showdown
+     */
+    public void showdown() {
+        showdowns.incrementAndGet();
+    }
+
+    /**
+     * Count an action and record how long the player took over it
+     * @param player The player that acted
+     * @param nanos The time the player took in nanoseconds
+     * @param timedOut True if the player ran out of time
+     */
+    public void action(Player player, long nanos, boolean timedOut) {
+        actions.incrementAndGet();
+        if (timedOut) {
+            timeouts.incrementAndGet();
+        }
+        LatencyHistogram latency = getLatency(player.getName());
+        if (latency != null) {
+            latency.record(nanos);
+        }
+    }
+
+    /**
+     * Count a line sent to a player
+     * @param line The line, which goes out followed by a newline
+     */
+    public void sent(String line) {
+        bytesSent.addAndGet(line.length() + 1);
+    }
+
+    /**
+     * Count a line read from a player
+     * @param line The line, which came in followed by a newline
+     */
+    public void received(String line) {
+        bytesReceived.addAndGet(line.length() + 1);
+    }
+
+    /**
+     * Get the number of hands played
+     * @return the hands
+     */
+    public long getHands() {
+        return hands.get();
+    }
+
+    /**
+     * Get the number of hands played a second since the match started
+     * @return the hands per second
+     */
+    public double getHandsPerSecond() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return seconds <= 0 ? 0 : hands.get() / seconds;
+    }
+
+    /**
+     * Get the number of actions taken
+     * @return the actions
+     */
+    public long getActions() {
+        return actions.get();
+    }
+
+    /**
+     * Get the number of hands that went to a showdown
+     * @return the showdowns
+     */
+    public long getShowdowns() {
+        return showdowns.get();
+    }
+
+    /**
+     * Get the number of actions taken for players that ran out of time
+     * @return the timeouts
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Get the bytes of states sent to the players
+     * @return the bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Get the bytes of responses read from the players
+     * @return the bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Get the number of players
+     * @return the number of players
+     */
+    public int getNumPlayers() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of a player
+     * @param index The index of the player
+     * @return the name
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * Get the response times of a player
+     * @param index The index of the player
+     * @return the player's histogram
+     */
+    public LatencyHistogram getLatency(int index) {
+        return latencies[index];
+    }
+
+    /**
+     * Get the response times of a player
+     * @param name The name of the player
+     * @return the player's histogram, or null if there is no such player
+     */
+    public LatencyHistogram getLatency(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return latencies[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the metrics as : delimited lines, a MATCH line followed by a PLAYER
+     * line for each player.  Times are in milliseconds.
+     * @return The metrics
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(128 + 96 * names.length);
+        sb.append("MATCH:Hands:").append(getHands());
+        sb.append(":HandsPerSecond:").append(String.format("%.2f", getHandsPerSecond()));
+        sb.append(":Actions:").append(getActions());
+        sb.append(":Showdowns:").append(getShowdowns());
+        sb.append(":Timeouts:").append(getTimeouts());
+        sb.append(":BytesSent:").append(getBytesSent());
+        sb.append(":BytesReceived:").append(getBytesReceived());
+        for (int i = 0; i < names.length; i++) {
+            LatencyHistogram l = latencies[i];
+            sb.append("\nPLAYER:Name:").append(names[i]);
+            sb.append(":Actions:").append(l.getCount());
+            sb.append(":Mean:").append(millis(l.getMean()));
+            sb.append(":P50:").append(millis(l.getPercentile(0.5)));
+            sb.append(":P90:").append(millis(l.getPercentile(0.9)));
+            sb.append(":P99:").append(millis(l.getPercentile(0.99)));
+            sb.append(":Max:").append(millis(l.getMax()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Format a time for the metrics
+     * @param micros The time in microseconds
+     * @return The time in milliseconds to 3 places
+     */
+    private static String millis(long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,146 @@
+package glassfrog.model;
+
+import glassfrog.players.Player;
+import glassfrog.players.SeatComparator;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The result of a match played by the {@link MatchEngine}: the seed, how many
+ * hands were played and each player's score, in seat order.  Seats are
+ * numbered from 0 in the order of the players' seats.
+ * @author jdavidso
+ */
+public class MatchResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private final int seed;
+    private final int handsPlayed;
+    private final boolean disconnected;
+    private final String[] names;
+    private final int[] scores;
+
+    /**
+     * Record the result of a match from its players
+     * @param seed The seed the deck was dealt from
+     * @param handsPlayed The number of hands played
+     * @param disconnected True if the match was cut short by a player
+     * failing to act
+     * @param players The players of the match
+     */
+    public MatchResult(int seed, int handsPlayed, boolean disconnected, List<Player> players) {
+        this.seed = seed;
+        this.handsPlayed = handsPlayed;
+        this.disconnected = disconnected;
+        names = new String[players.size()];
+        scores = new int[players.size()];
+        LinkedList<Player> seatSorted = new LinkedList<Player>(players);
+        Collections.sort(seatSorted, new SeatComparator());
+        int i = 0;
+        for (Player p : seatSorted) {
+            names[i] = p.getName();
+            scores[i] = p.getScore();
+            i++;
+        }
+    }
+
+    /**
+     * Record the result of a match from the players' names and scores
+     * @param seed The seed the deck was dealt from
+     * @param handsPlayed The number of hands played
+     * @param disconnected True if the match was cut short by a player
+     * failing to act
+     * @param names The names of the players, in seat order
+     * @param scores The scores of the players, in seat order
+     */
+    public MatchResult(int seed, int handsPlayed, boolean disconnected, String[] names, int[] scores) {
+        this.seed = seed;
+        this.handsPlayed = handsPlayed;
+        this.disconnected = disconnected;
+        this.names = names;
+        this.scores = scores;
+    }
+
+    /**
+     * Get the seed of the match
+     * @return the seed the deck was dealt from
+     */
+    public int getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the number of hands played
+     * @return the number of hands played
+     */
+    public int getHandsPlayed() {
+        return handsPlayed;
+    }
+
+    /**
+     * Check to see if the match was cut short
+     * @return True if a player failed to act, False otherwise
+     */
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+    /**
+     * Get the number of players
+     * @return the number of players in the match
+     */
+    public int getNumPlayers() {
+        return names.length;
+    }
+
+    /**
+     * Get the name of the player in a seat
+     * @param seat The seat
+     * @return The name of the player
+     */
+    public String getName(int seat) {
+        return names[seat];
+    }
+
+    /**
+     * Get the score of the player in a seat
+     * @param seat The seat
+     * @return The player's score in chips
+     */
+    public int getScore(int seat) {
+        return scores[seat];
+    }
+
+    /**
+     * Get the score of a player by name
+     * @param name The name of the player
+     * @return The player's score in chips
+     * @throws IllegalArgumentException if no player has the name
+     */
+    public int getScore(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return scores[i];
+            }
+        }
+        throw new IllegalArgumentException("No player named " + name);
+    }
+
+    /**
+     * A string representation of the result
+     * @return RESULT:Seed:seed:Hands:hands followed by name:score for each seat
+     */
+    @Override
+    public String toString() {
+        String result = "RESULT:Seed:" + seed + ":Hands:" + handsPlayed;
+        for (int i = 0; i < names.length; i++) {
+            result += ":" + names[i] + ":" + scores[i];
+        }
+        if (disconnected) {
+            result += ":DISCONNECTED";
+        }
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+package glassfrog.model;
+
+/**
+ * The MatchStateEncoder writes the MATCHSTATE messages the Dealer sends to the
+ * players, in the AAAI competition format:
+ *
+ * MATCHSTATE:position:handNumber:betting:cards
+ *
+ * where the cards are each position's private cards, round by round with "/"
+ * between rounds and "|" between positions, followed by the public cards.  A
+ * player only sees their own private cards until the showdown.
+ *
+ * Each message is built in one StringBuilder that is kept and reused by the
+ * encoder, so building a message makes no garbage apart from the finished
+ * String.  An encoder is not thread safe, each Dealer has its own.
+ * @author jdavidso
+ */
+public class MatchStateEncoder {
+
+    private static final String PREFIX = "MATCHSTATE:";
+    private final StringBuilder buffer = new StringBuilder(128);
+
+    /**
+     * Encode the gamestate as seen by the player in a position
+     * @param position The position of the player the message is for
+     * @param handNumber The number of the hand being played
+     * @param betting The betting so far, as in {@link GameState#getActionString}
+     * @param hand The cards of the hand, by position
+     * @param round The current round, cards after this round are not shown
+     * @return The MATCHSTATE message for the player
+     */
+    public String encode(int position, int handNumber, CharSequence betting, Hand hand, int round) {
+        header(position, handNumber, betting);
+        int numPlayers = hand.getNumPlayers();
+        for (int p = 0; p < numPlayers; p++) {
+            if (p == position) {
+                appendPrivateCards(hand, p, round);
+            }
+            if (p < numPlayers - 1) {
+                buffer.append('|');
+            }
+        }
+        appendPublicCards(hand, round);
+        return buffer.toString();
+    }
+
+    /**
+     * Encode the gamestate at a showdown, with every position's cards and the
+     * whole board shown
+     * @param position The position of the player the message is for
+     * @param handNumber The number of the hand being played
+     * @param betting The betting of the hand, as in {@link GameState#getActionString}
+     * @param hand The cards of the hand, by position
+     * @return The showdown MATCHSTATE message for the player
+     */
+    public String encodeShowdown(int position, int handNumber, CharSequence betting, Hand hand) {
+        header(position, handNumber, betting);
+        int numPlayers = hand.getNumPlayers();
+        int lastRound = hand.getNumRounds() - 1;
+        for (int p = 0; p < numPlayers; p++) {
+            appendPrivateCards(hand, p, lastRound);
+            if (p < numPlayers - 1) {
+                buffer.append('|');
+            }
+        }
+        appendPublicCards(hand, lastRound);
+        return buffer.toString();
+    }
+
+    /**
+     * Start a new message in the buffer with the prefix, position, hand number
+     * and betting
+     */
+    private void header(int position, int handNumber, CharSequence betting) {
+        buffer.setLength(0);
+        buffer.append(PREFIX).append(position).append(':').append(handNumber).append(':');
+        buffer.append(betting).append(':');
+    }
+
+    /**
+     * Append a position's private cards up to and including a round.  Rounds
+     * after the first are preceded by a "/" if they have any cards.
+     */
+    private void appendPrivateCards(Hand hand, int position, int lastRound) {
+        for (int round = 0; round <= lastRound; round++) {
+            if (hand.getNumPrivateCards(round) > 0) {
+                if (round > 0) {
+                    buffer.append('/');
+                }
+                hand.appendPrivateCards(buffer, position, round);
+            }
+        }
+    }
+
+    /**
+     * Append the public cards up to and including a round.  Rounds after the
+     * first are preceded by a "/" if they have any cards.
+     */
+    private void appendPublicCards(Hand hand, int lastRound) {
+        for (int round = 0; round <= lastRound; round++) {
+            if (hand.getNumPublicCards(round) > 0) {
+                if (round > 0) {
+                    buffer.append('/');
+                }
+                hand.appendPublicCards(buffer, round);
+            }
+        }
+    }
+}
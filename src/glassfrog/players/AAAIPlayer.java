@@ -1,5 +1,6 @@
 package glassfrog.players;
 
+import glassfrog.tools.Threads;
 import java.io.BufferedReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -31,6 +32,7 @@ public class AAAIPlayer extends Player implements Runnable {
     private transient Socket socket;
     private transient PrintWriter pw;
     private transient BufferedReader br;
+    private transient ActionReader reader;
     private transient int port;
     private transient String scriptPath,  logPrefix;
     private transient final int TIMEOUT = 1800000;
@@ -54,38 +56,64 @@ public class AAAIPlayer extends Player implements Runnable {
             port = new Random().nextInt(1000) + portBase;
             try {
                 ss = new ServerSocket(port);
-                ss.setSoTimeout(TIMEOUT);
-                Thread t = new Thread(this);
-                t.start();
-                socket = ss.accept();
-                pw = new PrintWriter(socket.getOutputStream());
-                br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                if (!br.readLine().equalsIgnoreCase("Version:1.0.0")) {
-                    throw new IOException("Incorrect protocol version");
-                }
-                return;
             } catch (BindException ex) {
                 continue;
+            }
+            try {
+                ss.setSoTimeout(TIMEOUT);
+                Threads.start(this, "AAAIPlayer-" + name);
+                socket = ss.accept();
             } catch (SocketTimeoutException ex) {
                 System.err.println("AAAIPPlayer " + getName() + " hit timeout");
                 throw new IOException("Socket Timeout");
+            } finally {
+                ss.close();
             }
+            pw = new PrintWriter(socket.getOutputStream());
+            br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            if (!br.readLine().equalsIgnoreCase("Version:1.0.0")) {
+                throw new IOException("Incorrect protocol version");
+            }
+            return;
         }
         throw new IOException("Could not bind AAAI player to socket");
     }
 
     /**
      * Gets the action of the player through the BufferedReader
-     * @return the action sent or "f" on error
+     * @return the action sent or throw a NullPointerException on disconnect
      */
     @Override
     public String getAction() {
+        if (reader != null && reader.getReader() == br) {
+            return getAction(0);
+        }
         try {
             return br.readLine();
         } catch (IOException ex) {
             System.err.println("AAAIPlayer " + getName() + " hit IOException during read, folding hand");
             throw new NullPointerException("Player Disconnected");
-        //return "f";
+        }
+    }
+
+    /**
+     * Gets the action of the player, waiting no longer than the timeout.  The
+     * player's lines are read by an {@link ActionReader} from the first timed
+     * action on.
+     * @param timeout The longest to wait in milliseconds
+     * @return the action sent, or null if it didn't arrive in time
+     * @throws NullPointerException on disconnect
+     */
+    @Override
+    public String getAction(long timeout) {
+        if (reader == null || reader.getReader() != br) {
+            reader = new ActionReader(br, getName());
+        }
+        try {
+            return reader.readLine(timeout);
+        } catch (IOException ex) {
+            System.err.println("AAAIPlayer " + getName() + " hit IOException during read, folding hand");
+            throw new NullPointerException("Player Disconnected");
         }
     }
 
@@ -126,12 +154,10 @@ public class AAAIPlayer extends Player implements Runnable {
 
             Process p = Runtime.getRuntime().exec(command);
             StreamConnect sc = new StreamConnect(p.getInputStream(), normalOut);
-            Thread tsc = new Thread(sc);
-            tsc.start();
+            Threads.startDaemon(sc, "StreamConnect-" + getName() + "-out");
 
             StreamConnect scerr = new StreamConnect(p.getErrorStream(), errOut);
-            Thread tscerr = new Thread(scerr);
-            tscerr.start();
+            Threads.startDaemon(scerr, "StreamConnect-" + getName() + "-err");
 
         } catch (UnknownHostException ex) {
             System.err.println("Count not reach host:" + ex.toString());
@@ -149,6 +175,15 @@ public class AAAIPlayer extends Player implements Runnable {
         return true;
     }
 
+    /**
+     * Overrides the @Player implementation of hasActionReader
+     * @return True once the player's lines are read by an ActionReader
+     */
+    @Override
+    public boolean hasActionReader() {
+        return reader != null && reader.getReader() == br;
+    }
+
     /**
      * Used to reconnect a player upon dealer reloads.  This takes a socket
      * connection and re-initializes the @PrintWriter and @BufferedReader
@@ -0,0 +1,90 @@
+package glassfrog.players;
+
+import glassfrog.tools.Threads;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An ActionReader reads a player's responses on a thread of its own so the
+ * dealer can wait for an action with a deadline instead of blocking on
+ * readLine until the player answers.  Each line read goes into a queue that
+ * {@link #readLine(long)} waits on.
+ *
+ * When a wait runs out the player's late answer, if it ever comes, is left in
+ * the queue.  The Dealer checks each response against the state it just sent
+ * and asks again, so a late answer is never taken for a later state.
+ * @author jdavidso
+ */
+public class ActionReader implements Runnable {
+
+    private static final String CLOSED = new String("closed");
+    private final BufferedReader br;
+    private final String name;
+    private final LinkedBlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+
+    /**
+     * Start reading lines from a reader
+     * @param br The reader, which is only read by this ActionReader from now on
+     * @param name The name of the player, for the reading thread's name
+     */
+    public ActionReader(BufferedReader br, String name) {
+        this.br = br;
+        this.name = name;
+        Threads.startDaemon(this, "ActionReader-" + name);
+    }
+
+    /**
+     * Get the reader this ActionReader reads from
+     * @return the reader
+     */
+    public BufferedReader getReader() {
+        return br;
+    }
+
+    /**
+     * Wait for the next line from the player
+     * @param timeout The longest to wait in milliseconds, 0 or less to wait as
+     * long as it takes
+     * @return The line, or null if none arrived in time
+     * @throws java.io.IOException if the player disconnected
+     */
+    public String readLine(long timeout) throws IOException {
+        String line;
+        try {
+            if (timeout <= 0) {
+                line = lines.take();
+            } else {
+                line = lines.poll(timeout, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException("Interrupted waiting for an action");
+        }
+        if (line == CLOSED) {
+            lines.add(CLOSED);
+            throw new IOException("Player disconnected");
+        }
+        return line;
+    }
+
+    /**
+     * Read lines into the queue until the player disconnects.  A read error is
+     * logged and then treated as a disconnect, the same as the end of the
+     * stream.
+     */
+    public void run() {
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger("errorlogger").log(Level.INFO,
+                    "Read error from player " + name + ", treating it as a disconnect: " + ex.toString());
+        }
+        lines.add(CLOSED);
+    }
+}
@@ -19,6 +19,7 @@ public abstract class Player implements Comparable<Player>, Serializable{
     private int stack,  buyIn,  currentBet,  score,  
             totalCommitedToPot,  seat, handRank, position;
     private boolean acted,  folded;    
+    private transient long handTime,  lastActionTime;
 
     /**
      * Default Player constructor
@@ -124,6 +125,16 @@ public abstract class Player implements Comparable<Player>, Serializable{
     public boolean isAAAIPlayer() {
         return false;
     }
+
+    /**
+     * Check to see if the player's lines are read ahead by an
+     * {@link ActionReader}, so an answer that came too late may still be
+     * waiting when the player is next asked to act
+     * @return False for all players other than those who override this method
+     */
+    public boolean hasActionReader() {
+        return false;
+    }
     
     /**
      * Get the player's current betsize
@@ -330,6 +341,44 @@ public abstract class Player implements Comparable<Player>, Serializable{
      * 
      */
     public abstract String getAction();
+
+    /**
+     * Get the action of the player, waiting no longer than the timeout.  The
+     * players that answer straight away, such as the in process players, don't
+     * need to override this and are never timed out.
+     *
+     * @param timeout The longest to wait in milliseconds
+     * @return one of {f,c,r,rX}, or null if the player didn't answer in time
+     */
+    public String getAction(long timeout) {
+        return getAction();
+    }
+
+    /**
+     * Record the time the player took over an action, adding it to the time
+     * they have taken this hand
+     * @param nanos The time taken in nanoseconds
+     */
+    public void addActionTime(long nanos) {
+        lastActionTime = nanos;
+        handTime += nanos;
+    }
+
+    /**
+     * Get the time the player took over their last action
+     * @return the time in nanoseconds
+     */
+    public long getLastActionTime() {
+        return lastActionTime;
+    }
+
+    /**
+     * Get the time the player has taken over their actions this hand
+     * @return the time in nanoseconds
+     */
+    public long getHandTime() {
+        return handTime;
+    }
     
     /**
      * update is called by dealer to transmit the current gamestate in String 
@@ -396,6 +445,7 @@ public abstract class Player implements Comparable<Player>, Serializable{
         folded = false;
         currentBet = 0;
         totalCommitedToPot = 0;
+        handTime = 0;
     }
 
     /**
@@ -0,0 +1,20 @@
+package glassfrog.players;
+
+/**
+ * A PlayerFactory makes a new in process Player for each match of a batch, so
+ * that matches run at the same time never share a Player.  A factory should
+ * make its Player from the arguments alone, seeding any RNG from the match
+ * seed, so a match plays out the same however the batch is run.
+ * @author jdavidso
+ */
+public interface PlayerFactory {
+
+    /**
+     * Make a new Player for a match
+     * @param seat The seat the player will take
+     * @param buyIn The player's buy in, the stack size of the Gamedef
+     * @param matchSeed The seed of the match the player is for
+     * @return A new Player
+     */
+    public Player newPlayer(int seat, int buyIn, int matchSeed);
+}
@@ -83,31 +83,31 @@ public class RandomNoLimitPlayer extends RandomPlayer{
     @Override
     public void update(String gamestate) {        
         StringTokenizer st = new StringTokenizer(gamestate,":");
-        String token;
-        //Get the betting string;
-        do {
+        String token = null;
+        //Get the betting string, which starts with the blinds;
+        while (st.hasMoreTokens()) {
             token = st.nextToken();
-        }while(!token.substring(0,1).equalsIgnoreCase("b"));
-        
-        int lastRaisePos = token.lastIndexOf("r");
-        if(lastRaisePos < 0) {
-            lastRaisePos = token.lastIndexOf("b");
+            if (token.startsWith("b")) {
+                break;
+            }
+            token = null;
         }
-        
-        if(lastRaisePos < 0) {
+        if (token == null) {
             minBet = 1;
             return;
         }
         
-        int nextCall = token.indexOf("c", lastRaisePos);
-        int nextFold = token.indexOf("f", lastRaisePos);
-        
-        nextCall = (nextCall < 0 ? 0 : nextCall);
-        nextFold = (nextFold < 0 ? 0 : nextFold);
+        int lastRaisePos = Math.max(token.lastIndexOf("r"), token.lastIndexOf("b"));
+        int end = lastRaisePos + 1;
+        while (end < token.length() && Character.isDigit(token.charAt(end))) {
+            end++;
+        }
+        if (end == lastRaisePos + 1) {
+            minBet = 1;
+            return;
+        }
         
-        int lastRaise = new Integer( (nextCall < nextFold ? 
-            token.substring(lastRaisePos, nextCall) : 
-            token.substring(lastRaisePos, nextFold))).intValue();
+        int lastRaise = Integer.parseInt(token.substring(lastRaisePos + 1, end));
         
         minBet = lastRaise*2;
         
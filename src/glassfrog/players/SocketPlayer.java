@@ -19,6 +19,7 @@ public class SocketPlayer extends Player{
     protected transient Socket socket;
     protected transient BufferedReader br;
     protected transient PrintWriter pw;
+    private transient ActionReader reader;
     
     /**
      * Empty default contructor for extendability
@@ -102,13 +103,36 @@ public class SocketPlayer extends Player{
      * @return the action sent or throw a NullPointerException on disconnect
      */
     @Override
-    public String getAction(){
+    public String getAction() {
+        if (reader != null && reader.getReader() == br) {
+            return getAction(0);
+        }
         try {
             return br.readLine();
         } catch (IOException ex) {
-            System.err.println("SocketPlayer "+getName()+" hit IOException during read, folding hand");  
+            System.err.println("SocketPlayer " + getName() + " hit IOException during read, folding hand");
+            throw new NullPointerException("Player Disconnected");
+        }
+    }
+
+    /**
+     * Gets the action of the player, waiting no longer than the timeout.  The
+     * player's lines are read by an {@link ActionReader} from the first timed
+     * action on.
+     * @param timeout The longest to wait in milliseconds
+     * @return the action sent, or null if it didn't arrive in time
+     * @throws NullPointerException on disconnect
+     */
+    @Override
+    public String getAction(long timeout) {
+        if (reader == null || reader.getReader() != br) {
+            reader = new ActionReader(br, getName());
+        }
+        try {
+            return reader.readLine(timeout);
+        } catch (IOException ex) {
+            System.err.println("SocketPlayer " + getName() + " hit IOException during read, folding hand");
             throw new NullPointerException("Player Disconnected");
-            //return "f";
         }
     }
 
@@ -144,6 +168,15 @@ public class SocketPlayer extends Player{
     public boolean isSocketPlayer() {
         return true;
     }
+
+    /**
+     * Overrides the @Player implementation of hasActionReader
+     * @return True once the player's lines are read by an ActionReader
+     */
+    @Override
+    public boolean hasActionReader() {
+        return reader != null && reader.getReader() == br;
+    }
     
     /**
      * The reconnect method allows for a player to be reconnected on @Dealer load
@@ -156,6 +189,17 @@ public class SocketPlayer extends Player{
         pw = new PrintWriter(socket.getOutputStream());
     }
     
+    /**
+     * Reconnect this player on the connection of a newly connected player, used
+     * when the players were given a reader and writer instead of a @Socket
+     * @param p The @SocketPlayer that has just connected
+     */
+    public void reconnect(SocketPlayer p) {
+        this.socket = p.socket;
+        this.br = p.br;
+        this.pw = p.pw;
+    }
+
     /**
      * Return the @Socket the player is using
      * @return the @Socket the player is currently using
@@ -172,7 +216,9 @@ public class SocketPlayer extends Player{
         try {
             br.close();
             pw.close();
-            socket.close();
+            if (socket != null) {
+                socket.close();
+            }
         } catch (IOException ex) {
             System.err.println("Error while trying to close the socket for the player "+getName());
         }
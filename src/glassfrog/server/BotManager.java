@@ -46,6 +46,22 @@ public class BotManager {
         }
     }
     
+    /**
+     * The constructor for a Room that shares the server's port.  The bots are
+     * sent through the server's port after a JOIN for the room.
+     * Hardcoded to the localhost for now
+     *
+     * @param port an int value representing the server's port
+     * @param roomName the name of the Room to join
+     */
+    public BotManager(int port, String roomName) {
+        this(port);
+        if (pw != null) {
+            pw.println("JOIN:" + roomName);
+            pw.flush();
+        }
+    }
+
     /**
      * Add a bot to the botList waiting to be executed
      * @param botString A String representing the bot to be executed
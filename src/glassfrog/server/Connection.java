@@ -0,0 +1,681 @@
+package glassfrog.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking socket connection accepted by the {@link ConnectionManager}.
+ * The connection is read by one of the manager's I/O loops and starts out in
+ * line mode, where each line is passed to the {@link ConnectionHandler} for
+ * the port on a worker thread.  Only one line is in flight at a time, and the
+ * bytes after it are held back until the handler returns.
+ *
+ * A handler can switch the connection to stream mode by asking for its
+ * reader or input stream.  Everything held back is moved into the stream,
+ * and from then on the I/O loop feeds the stream instead of the handler.
+ * Players read their actions from this stream the same way they would from a
+ * socket, but no thread is tied up in a socket read while they wait.
+ *
+ * Writes go straight to the channel when it can take them, and are queued
+ * for the I/O loop to finish when it cannot.  A writer that gets too far
+ * ahead of a slow reader waits for the queue to drain.
+ *
+ * The connection's state is guarded by a ReentrantLock rather than its
+ * monitor, so a player waiting for an action on a virtual thread unmounts
+ * from its carrier instead of pinning it.
+ *
+ * @author jdavidso
+ */
+public class Connection {
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_BUFFERED = 1 << 20;
+    private final SocketChannel channel;
+    private final ConnectionManager.IOLoop loop;
+    private volatile ConnectionHandler handler;
+    private final Executor workers;
+    private final int idleTimeout;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private SelectionKey key;
+    private long lastActivity;
+    //Line mode, the bytes not yet handed out as lines
+    private byte[] pending = new byte[256];
+    private int pendingLength;
+    private boolean dispatching;
+    //Stream mode, the bytes not yet read from the input stream
+    private boolean streaming;
+    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+    private int chunkOffset;
+    private int buffered;
+    private boolean readPaused;
+    private boolean endOfStream;
+    //Writes the channel could not take yet
+    private final LinkedList<ByteBuffer> writeQueue = new LinkedList<ByteBuffer>();
+    private int queuedBytes;
+    private boolean closeAfterWrites;
+    private boolean closed;
+    private ChannelInputStream in;
+    private ChannelOutputStream out;
+    private BufferedReader reader;
+    private PrintWriter writer;
+
+    /**
+     * Create a connection for a freshly accepted channel.  The connection is
+     * not read until it has been registered with its I/O loop.
+     * @param channel The accepted channel, already non-blocking
+     * @param loop The I/O loop that will read and write the channel
+     * @param handler The handler for lines sent on the connection
+     * @param workers The executor the handler is run on
+     * @param idleTimeout Close the connection after this many ms without a
+     * line while in line mode, 0 for never
+     */
+    Connection(SocketChannel channel, ConnectionManager.IOLoop loop,
+            ConnectionHandler handler, Executor workers, int idleTimeout) {
+        this.channel = channel;
+        this.loop = loop;
+        this.handler = handler;
+        this.workers = workers;
+        this.idleTimeout = idleTimeout;
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Register the channel for reads.  Called on the I/O loop thread.
+     * @param selector The I/O loop's selector
+     */
+    void register(Selector selector) {
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        } catch (IOException ex) {
+            closeNow();
+        }
+    }
+
+    /**
+     * Pass the lines that follow the current one to a different handler.  This
+     * is how the {@link Server} hands a connection on its shared port over to
+     * the {@link Room} the connection asked to join.
+     * @param handler The handler for the rest of the lines
+     */
+    public void setHandler(ConnectionHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Get the address of the other end of the connection
+     * @return the remote address, or null if it is not connected
+     */
+    public SocketAddress getRemoteAddress() {
+        return channel.socket().getRemoteSocketAddress();
+    }
+
+    /**
+     * Get the input stream for the connection.  This switches the connection
+     * to stream mode, no more lines are passed to the handler.
+     * @return An InputStream of everything sent after the current line
+     */
+    public InputStream getInputStream() {
+        lock.lock();
+        try {
+            if (in == null) {
+                in = new ChannelInputStream();
+                streaming = true;
+                if (pendingLength > 0) {
+                    byte[] rest = new byte[pendingLength];
+                    System.arraycopy(pending, 0, rest, 0, pendingLength);
+                    chunks.add(rest);
+                    buffered += pendingLength;
+                    pendingLength = 0;
+                }
+                changed.signalAll();
+            }
+            return in;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a reader on the input stream.  This switches the connection to stream
+     * mode, see {@link #getInputStream()}
+     * @return A BufferedReader on the connection
+     */
+    public BufferedReader getReader() {
+        lock.lock();
+        try {
+            if (reader == null) {
+                reader = new BufferedReader(new InputStreamReader(getInputStream()));
+            }
+            return reader;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the output stream for the connection.  Bytes are sent when the
+     * stream is flushed.
+     * @return An OutputStream on the connection
+     */
+    public OutputStream getOutputStream() {
+        lock.lock();
+        try {
+            if (out == null) {
+                out = new ChannelOutputStream();
+            }
+            return out;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a writer on the output stream.  Lines are sent when the writer is
+     * flushed.
+     * @return A PrintWriter on the connection
+     */
+    public PrintWriter getWriter() {
+        lock.lock();
+        try {
+            if (writer == null) {
+                writer = new PrintWriter(getOutputStream());
+            }
+            return writer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check to see if the connection has been closed
+     * @return True if the connection is closed
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the connection once everything written to it has been sent
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            if (writeQueue.isEmpty()) {
+                closeNow();
+            } else {
+                closeAfterWrites = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the channel straight away, dropping anything still queued, and wake
+     * up any reader or writer waiting on the connection
+     */
+    private void closeNow() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            endOfStream = true;
+            writeQueue.clear();
+            queuedBytes = 0;
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                Logger.getLogger("errorLogger").log(Level.WARNING,
+                        "Error closing connection: " + ex.toString());
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read what is available from the channel.  Called on the I/O loop thread
+     * when the channel is readable.
+     */
+    void onReadable() {
+        int count;
+        try {
+            count = channel.read(readBuffer);
+        } catch (IOException ex) {
+            count = -1;
+        }
+        if (count == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            lastActivity = System.currentTimeMillis();
+            if (count < 0) {
+                endOfStream = true;
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                if (!streaming && !dispatching) {
+                    dispatchLine();
+                }
+                changed.signalAll();
+                return;
+            }
+            readBuffer.flip();
+            if (streaming) {
+                byte[] chunk = new byte[readBuffer.remaining()];
+                readBuffer.get(chunk);
+                chunks.add(chunk);
+                buffered += chunk.length;
+                if (buffered > MAX_BUFFERED) {
+                    readPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                changed.signalAll();
+            } else {
+                if (pendingLength + readBuffer.remaining() > MAX_BUFFERED) {
+                    closeNow();
+                    return;
+                }
+                if (pendingLength + readBuffer.remaining() > pending.length) {
+                    byte[] grown = new byte[Math.max(pending.length * 2,
+                            pendingLength + readBuffer.remaining())];
+                    System.arraycopy(pending, 0, grown, 0, pendingLength);
+                    pending = grown;
+                }
+                int n = readBuffer.remaining();
+                readBuffer.get(pending, pendingLength, n);
+                pendingLength += n;
+                if (!dispatching) {
+                    dispatchLine();
+                }
+            }
+            readBuffer.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hand the next complete line to the handler on a worker thread.  If there
+     * is no complete line, wait for more bytes, or close the connection if the
+     * other end has finished or the line is too long.
+     */
+    private void dispatchLine() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            int end = -1;
+            for (int i = 0; i < pendingLength; i++) {
+                if (pending[i] == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            int consumed = end + 1;
+            if (end < 0) {
+                if (endOfStream && pendingLength > 0) {
+                    end = pendingLength;
+                    consumed = pendingLength;
+                } else {
+                    if (endOfStream || pendingLength > MAX_LINE_LENGTH) {
+                        close();
+                    }
+                    return;
+                }
+            }
+            int length = end;
+            if (length > 0 && pending[length - 1] == '\r') {
+                length--;
+            }
+            final String line = new String(pending, 0, length);
+            pendingLength -= consumed;
+            System.arraycopy(pending, consumed, pending, 0, pendingLength);
+            dispatching = true;
+            try {
+                workers.execute(new Runnable() {
+
+                    public void run() {
+                        handleLine(line);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                Logger.getLogger("errorLogger").log(Level.WARNING,
+                        "Server busy, dropping connection from " + getRemoteAddress());
+                dispatching = false;
+                closeNow();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run the handler for a line, then dispatch the next line unless the
+     * handler switched the connection to stream mode.  Called on a worker.
+     * @param line The line to handle
+     */
+    private void handleLine(String line) {
+        try {
+            handler.handleLine(this, line);
+        } catch (RuntimeException ex) {
+            Logger.getLogger("errorLogger").log(Level.SEVERE,
+                    "Connection handler failed on " + line + ": " + ex.toString());
+            close();
+        }
+        lock.lock();
+        try {
+            dispatching = false;
+            lastActivity = System.currentTimeMillis();
+            if (!streaming) {
+                dispatchLine();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the connection if it has sat in line mode without a line for
+     * longer than the idle timeout.  Called on the I/O loop thread.
+     * @param now The current time in ms
+     */
+    void checkIdle(long now) {
+        lock.lock();
+        try {
+            if (idleTimeout > 0 && !streaming && !dispatching &&
+                    now - lastActivity > idleTimeout) {
+                close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue bytes to be sent, writing as much as the channel will take now.
+     * Blocks while too much is already queued for a slow reader.
+     * @param buffer The bytes to send
+     * @throws java.io.IOException If the connection is closed
+     */
+    private void send(ByteBuffer buffer) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            if (writeQueue.isEmpty()) {
+                try {
+                    channel.write(buffer);
+                } catch (IOException ex) {
+                    closeNow();
+                    throw ex;
+                }
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+            writeQueue.add(buffer);
+            queuedBytes += buffer.remaining();
+            loop.execute(new Runnable() {
+
+                public void run() {
+                    enableWrites();
+                }
+            });
+            while (queuedBytes > MAX_BUFFERED && !closed) {
+                try {
+                    changed.await();
+                } catch (InterruptedException ex) {
+                    throw new InterruptedIOException("Interrupted waiting to send");
+                }
+            }
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ask the I/O loop to tell us when the channel can take more bytes.
+     * Called on the I/O loop thread.
+     */
+    private void enableWrites() {
+        lock.lock();
+        try {
+            if (!writeQueue.isEmpty() && key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send as much of the write queue as the channel will take.  Called on the
+     * I/O loop thread when the channel is writable.
+     */
+    void onWritable() {
+        lock.lock();
+        try {
+            try {
+                while (!writeQueue.isEmpty()) {
+                    ByteBuffer buffer = writeQueue.getFirst();
+                    int before = buffer.remaining();
+                    channel.write(buffer);
+                    queuedBytes -= before - buffer.remaining();
+                    if (buffer.hasRemaining()) {
+                        break;
+                    }
+                    writeQueue.removeFirst();
+                }
+            } catch (IOException ex) {
+                closeNow();
+                return;
+            }
+            if (writeQueue.isEmpty()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closeAfterWrites) {
+                    closeNow();
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start reading the channel again once a paused stream has been drained.
+     * Called on the I/O loop thread.
+     */
+    private void resumeReads() {
+        lock.lock();
+        try {
+            if (readPaused && !endOfStream && key.isValid()) {
+                readPaused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The input side of the connection in stream mode.  Reads block until the
+     * I/O loop has delivered some bytes or the other end has closed.
+     */
+    private class ChannelInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                while (chunks.isEmpty() && !endOfStream) {
+                    try {
+                        changed.await();
+                    } catch (InterruptedException ex) {
+                        throw new InterruptedIOException("Interrupted waiting for input");
+                    }
+                }
+                if (chunks.isEmpty()) {
+                    return -1;
+                }
+                int n = 0;
+                while (n < len && !chunks.isEmpty()) {
+                    byte[] chunk = chunks.getFirst();
+                    int count = Math.min(len - n, chunk.length - chunkOffset);
+                    System.arraycopy(chunk, chunkOffset, b, off + n, count);
+                    n += count;
+                    chunkOffset += count;
+                    if (chunkOffset == chunk.length) {
+                        chunks.removeFirst();
+                        chunkOffset = 0;
+                    }
+                }
+                buffered -= n;
+                if (readPaused && buffered < MAX_BUFFERED / 2) {
+                    loop.execute(new Runnable() {
+
+                        public void run() {
+                            resumeReads();
+                        }
+                    });
+                }
+                return n;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return buffered;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            Connection.this.close();
+        }
+    }
+
+    /**
+     * The output side of the connection.  Bytes are collected until the stream
+     * is flushed and then sent as one buffer.
+     */
+    private class ChannelOutputStream extends OutputStream {
+
+        private byte[] buf = new byte[1024];
+        private int count;
+
+        @Override
+        public void write(int b) {
+            lock.lock();
+            try {
+                ensureCapacity(1);
+                buf[count++] = (byte) b;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            lock.lock();
+            try {
+                ensureCapacity(len);
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Grow the buffer to fit another n bytes
+         * @param n The number of bytes to make room for
+         */
+        private void ensureCapacity(int n) {
+            if (count + n > buf.length) {
+                byte[] grown = new byte[Math.max(buf.length * 2, count + n)];
+                System.arraycopy(buf, 0, grown, 0, count);
+                buf = grown;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            lock.lock();
+            try {
+                if (count == 0) {
+                    return;
+                }
+                byte[] bytes = new byte[count];
+                System.arraycopy(buf, 0, bytes, 0, count);
+                count = 0;
+                send(ByteBuffer.wrap(bytes));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                Connection.this.close();
+            }
+        }
+    }
+}
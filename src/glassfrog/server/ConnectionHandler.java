@@ -0,0 +1,25 @@
+package glassfrog.server;
+
+/**
+ * A ConnectionHandler is registered with the {@link ConnectionManager} for a
+ * listening port and is handed each line that arrives on a {@link Connection}
+ * accepted on that port.
+ *
+ * Lines for one connection are delivered one at a time, in order, on one of
+ * the manager's worker threads, so a handler may block briefly (to read a
+ * version string, for instance) but should not hold on to the worker.  A
+ * handler that wants the rest of the connection as a stream, such as a room
+ * seating a {@link glassfrog.players.SocketPlayer}, calls
+ * {@link Connection#getReader()} and no more lines are delivered to it.
+ *
+ * @author jdavidso
+ */
+public interface ConnectionHandler {
+
+    /**
+     * Handle a line sent on a connection
+     * @param connection The connection the line arrived on
+     * @param line The line, without the line terminator
+     */
+    public void handleLine(Connection connection, String line);
+}
@@ -0,0 +1,299 @@
+package glassfrog.server;
+
+import glassfrog.tools.Threads;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The ConnectionManager is the event driven transport shared by the
+ * {@link Server} and all of its {@link Room}s.  One acceptor thread accepts
+ * connections on every listening port with a single Selector, and hands each
+ * connection to one of a small, fixed pool of I/O loops, each with its own
+ * Selector.  The I/O loops read the connections and pass complete lines to the
+ * {@link ConnectionHandler} registered for the port, which runs on a bounded
+ * pool of worker threads.
+ *
+ * However many rooms and connections there are, the transport uses
+ * 1 + IO_THREADS + WORKER_THREADS threads.  The acceptor and I/O loops are
+ * always platform threads, the workers come from {@link Threads} and are
+ * virtual threads where the JVM has them.  When the workers and their queue
+ * are full, new lines are refused and the connection is dropped instead of a
+ * new thread being started.
+ *
+ * @author jdavidso
+ */
+public class ConnectionManager {
+
+    private static final int IO_THREADS =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int WORKER_THREADS = 64;
+    private static final int WORKER_QUEUE = 1024;
+    private static final int SELECT_TIMEOUT = 1000;
+    private static ConnectionManager instance;
+    private final Selector acceptSelector;
+    private final ConcurrentLinkedQueue<Runnable> acceptTasks =
+            new ConcurrentLinkedQueue<Runnable>();
+    private final IOLoop[] loops;
+    private final ThreadPoolExecutor workers;
+    private int nextLoop;
+    private volatile boolean alive = true;
+
+    /**
+     * Get the ConnectionManager, starting its threads the first time
+     * @return the shared ConnectionManager
+     * @throws java.io.IOException if a Selector could not be opened
+     */
+    public static synchronized ConnectionManager getInstance() throws IOException {
+        if (instance == null) {
+            instance = new ConnectionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Open the selectors and start the acceptor, the I/O loops and the workers
+     * @throws java.io.IOException if a Selector could not be opened
+     */
+    private ConnectionManager() throws IOException {
+        acceptSelector = Selector.open();
+        workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(WORKER_QUEUE),
+                Threads.factory("ConnectionWorker"));
+        workers.allowCoreThreadTimeOut(true);
+        loops = new IOLoop[IO_THREADS];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IOLoop();
+            Thread t = new Thread(loops[i], "IOLoop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        Thread acceptor = new Thread(new Runnable() {
+
+            public void run() {
+                accept();
+            }
+        }, "Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Listen for connections on a port.  The lines sent on every connection
+     * accepted on the port are passed to the handler.
+     * @param port The port to listen on
+     * @param handler The handler for lines sent on the port's connections
+     * @param idleTimeout Close connections that send no line for this many ms
+     * while in line mode, 0 for never
+     * @return The listening channel, used to stop listening with {@link #close}
+     * @throws java.net.BindException if the port is in use
+     * @throws java.io.IOException on any other error opening the port
+     */
+    public ServerSocketChannel listen(int port, final ConnectionHandler handler,
+            final int idleTimeout) throws IOException {
+        final ServerSocketChannel ssc = ServerSocketChannel.open();
+        try {
+            ssc.socket().setReuseAddress(true);
+            ssc.socket().bind(new InetSocketAddress(port));
+            ssc.configureBlocking(false);
+        } catch (IOException ex) {
+            ssc.close();
+            throw ex;
+        }
+        acceptTasks.add(new Runnable() {
+
+            public void run() {
+                try {
+                    ssc.register(acceptSelector, SelectionKey.OP_ACCEPT,
+                            new Listener(handler, idleTimeout));
+                } catch (IOException ex) {
+                    logError("Could not register listener: " + ex.toString());
+                }
+            }
+        });
+        acceptSelector.wakeup();
+        return ssc;
+    }
+
+    /**
+     * Stop listening on a port.  Connections already accepted are left open.
+     * @param listener The channel returned by {@link #listen}
+     */
+    public void close(ServerSocketChannel listener) {
+        try {
+            listener.close();
+        } catch (IOException ex) {
+            logError("Could not close listener: " + ex.toString());
+        }
+        acceptSelector.wakeup();
+    }
+
+    /**
+     * Stop the acceptor, the I/O loops and the workers
+     */
+    public void shutdown() {
+        alive = false;
+        acceptSelector.wakeup();
+        for (IOLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * The acceptor loop.  Accept every pending connection on the listening
+     * ports and pass each to the next I/O loop in turn.
+     */
+    private void accept() {
+        while (alive) {
+            try {
+                acceptSelector.select(SELECT_TIMEOUT);
+                Runnable task;
+                while ((task = acceptTasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> it = acceptSelector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid() || !key.isAcceptable()) {
+                        continue;
+                    }
+                    Listener listener = (Listener) key.attachment();
+                    SocketChannel channel;
+                    while ((channel = ((ServerSocketChannel) key.channel()).accept()) != null) {
+                        channel.configureBlocking(false);
+                        channel.socket().setTcpNoDelay(true);
+                        IOLoop loop = loops[nextLoop++ % loops.length];
+                        loop.add(new Connection(channel, loop, listener.handler,
+                                workers, listener.idleTimeout));
+                    }
+                }
+            } catch (ClosedSelectorException ex) {
+                return;
+            } catch (IOException ex) {
+                logError("IO Exception in acceptor: " + ex.toString());
+            }
+        }
+    }
+
+    /**
+     * Utility for logging an error message to the errorLogger
+     * @param errorMessage A message to log to the errror log
+     */
+    private static void logError(String errorMessage) {
+        Logger.getLogger("errorLogger").log(Level.SEVERE, errorMessage);
+    }
+
+    /**
+     * The handler and timeout for a listening port
+     */
+    private static class Listener {
+
+        private final ConnectionHandler handler;
+        private final int idleTimeout;
+
+        Listener(ConnectionHandler handler, int idleTimeout) {
+            this.handler = handler;
+            this.idleTimeout = idleTimeout;
+        }
+    }
+
+    /**
+     * An I/O loop.  Each loop owns a Selector and does all of the reading, and
+     * any writing that cannot be done straight away, for its connections.
+     * Other threads change a loop's selector by queueing a task and waking it.
+     */
+    class IOLoop implements Runnable {
+
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks =
+                new ConcurrentLinkedQueue<Runnable>();
+        private long lastIdleCheck;
+
+        /**
+         * Open the loop's Selector
+         * @throws java.io.IOException if the Selector could not be opened
+         */
+        IOLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Run a task on this loop's thread
+         * @param task The task to run
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Start reading a new connection on this loop
+         * @param connection The connection to read
+         */
+        void add(final Connection connection) {
+            execute(new Runnable() {
+
+                public void run() {
+                    connection.register(selector);
+                }
+            });
+        }
+
+        /**
+         * Select, run the queued tasks and service the ready connections until
+         * the manager is shut down.  Once a second, close idle connections.
+         */
+        public void run() {
+            while (alive) {
+                try {
+                    selector.select(SELECT_TIMEOUT);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastIdleCheck >= SELECT_TIMEOUT) {
+                        lastIdleCheck = now;
+                        for (SelectionKey key : new ArrayList<SelectionKey>(selector.keys())) {
+                            if (key.isValid()) {
+                                ((Connection) key.attachment()).checkIdle(now);
+                            }
+                        }
+                    }
+                } catch (ClosedSelectorException ex) {
+                    return;
+                } catch (IOException ex) {
+                    logError("IO Exception in I/O loop: " + ex.toString());
+                } catch (RuntimeException ex) {
+                    logError("Exception in I/O loop: " + ex.toString());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package glassfrog.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import glassfrog.model.LatencyHistogram;
+import glassfrog.model.MatchMetrics;
+import glassfrog.tools.Threads;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+
+/**
+ * The MetricsExporter writes the server's metrics in the Prometheus text
+ * exposition format, so the server can be scraped like any other service.
+ * It covers the JVM (heap, garbage collection, uptime), its threads, the
+ * rooms and keys in use, each room's {@link MatchMetrics} and each player's
+ * response times, as a summary with the 0.5, 0.9 and 0.99 quantiles.
+ *
+ * The metrics are the answer to the server's METRICS request, and can also
+ * be served over HTTP at /metrics on the port set with the system property
+ * glassfrog.metricsport, using the JDK's built in HTTP server.  For instance
+ * java -Dglassfrog.metricsport=9100 -jar GlassFrog.jar
+ * @author jdavidso
+ */
+public class MetricsExporter {
+
+    public static final String PORT_PROPERTY = "glassfrog.metricsport";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private final RoomRegistry rooms;
+    private HttpServer http;
+
+    /**
+     * Build an exporter for the rooms of a server
+     * @param rooms The server's rooms
+     */
+    public MetricsExporter(RoomRegistry rooms) {
+        this.rooms = rooms;
+    }
+
+    /**
+     * Serve the metrics at /metrics over HTTP
+     * @param port The port to listen on
+     * @throws java.io.IOException if the port can't be bound
+     */
+    public void startHttp(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(port), 0);
+        http.createContext("/metrics", new HttpHandler() {
+
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                        exchange.sendResponseHeaders(405, -1);
+                        return;
+                    }
+                    byte[] body = export().getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        http.setExecutor(Threads.newExecutor("MetricsHttp"));
+        http.start();
+    }
+
+    /**
+     * Stop serving the metrics over HTTP
+     */
+    public void stopHttp() {
+        if (http != null) {
+            http.stop(0);
+            http = null;
+        }
+    }
+
+    /**
+     * Get the metrics in the Prometheus text format
+     * @return The metrics, one sample per line
+     */
+    public String export() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(sb, "glassfrog_jvm_heap_used_bytes", "gauge", "Heap memory in use");
+        sample(sb, "glassfrog_jvm_heap_used_bytes", null, heap.getUsed());
+        header(sb, "glassfrog_jvm_heap_max_bytes", "gauge", "Most heap memory the JVM will use");
+        sample(sb, "glassfrog_jvm_heap_max_bytes", null, heap.getMax());
+        header(sb, "glassfrog_jvm_uptime_seconds", "gauge", "Time since the JVM started");
+        sample(sb, "glassfrog_jvm_uptime_seconds", null,
+                ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+        header(sb, "glassfrog_jvm_gc_collections_total", "counter", "Garbage collections by collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(sb, "glassfrog_jvm_gc_collections_total", label("gc", gc.getName()),
+                    Math.max(0, gc.getCollectionCount()));
+        }
+        header(sb, "glassfrog_jvm_gc_seconds_total", "counter", "Time spent in garbage collection by collector");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(sb, "glassfrog_jvm_gc_seconds_total", label("gc", gc.getName()),
+                    Math.max(0, gc.getCollectionTime()) / 1000.0);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        header(sb, "glassfrog_jvm_threads", "gauge", "Live platform threads");
+        sample(sb, "glassfrog_jvm_threads", null, threads.getThreadCount());
+        header(sb, "glassfrog_jvm_daemon_threads", "gauge", "Live platform daemon threads");
+        sample(sb, "glassfrog_jvm_daemon_threads", null, threads.getDaemonThreadCount());
+        header(sb, "glassfrog_virtual_threads", "gauge", "1 if rooms and dealers run on virtual threads");
+        sample(sb, "glassfrog_virtual_threads", null, Threads.isVirtual() ? 1 : 0);
+
+        header(sb, "glassfrog_rooms", "gauge", "Rooms on the server");
+        sample(sb, "glassfrog_rooms", null, rooms.size());
+        header(sb, "glassfrog_keys", "gauge", "Keys in use by AUTOCONNECT rooms");
+        sample(sb, "glassfrog_keys", null, rooms.getKeyCount());
+
+        // Take the rooms once, so every family lists the same ones
+        Room[] live = rooms.getRooms().toArray(new Room[0]);
+        MatchMetrics[] metrics = new MatchMetrics[live.length];
+        String[] roomLabels = new String[live.length];
+        for (int i = 0; i < live.length; i++) {
+            metrics[i] = live[i].getMatchMetrics();
+            roomLabels[i] = label("room", live[i].getName());
+        }
+        header(sb, "glassfrog_room_alive", "gauge", "1 while the room is running");
+        for (int i = 0; i < live.length; i++) {
+            sample(sb, "glassfrog_room_alive", roomLabels[i], live[i].isAlive() ? 1 : 0);
+        }
+        header(sb, "glassfrog_hands_total", "counter", "Hands played by the room's dealer");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] != null) {
+                sample(sb, "glassfrog_hands_total", roomLabels[i], metrics[i].getHands());
+            }
+        }
+        header(sb, "glassfrog_hands_per_second", "gauge", "Hands played a second since the match started");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] != null) {
+                sample(sb, "glassfrog_hands_per_second", roomLabels[i], metrics[i].getHandsPerSecond());
+            }
+        }
+        header(sb, "glassfrog_actions_total", "counter", "Actions taken");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] != null) {
+                sample(sb, "glassfrog_actions_total", roomLabels[i], metrics[i].getActions());
+            }
+        }
+        header(sb, "glassfrog_showdowns_total", "counter", "Hands that went to a showdown");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] != null) {
+                sample(sb, "glassfrog_showdowns_total", roomLabels[i], metrics[i].getShowdowns());
+            }
+        }
+        header(sb, "glassfrog_timeouts_total", "counter", "Actions taken for players that ran out of time");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] != null) {
+                sample(sb, "glassfrog_timeouts_total", roomLabels[i], metrics[i].getTimeouts());
+            }
+        }
+        header(sb, "glassfrog_sent_bytes_total", "counter", "Bytes of states sent to the players");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] != null) {
+                sample(sb, "glassfrog_sent_bytes_total", roomLabels[i], metrics[i].getBytesSent());
+            }
+        }
+        header(sb, "glassfrog_received_bytes_total", "counter", "Bytes of responses read from the players");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] != null) {
+                sample(sb, "glassfrog_received_bytes_total", roomLabels[i], metrics[i].getBytesReceived());
+            }
+        }
+
+        header(sb, "glassfrog_player_response_seconds", "summary", "Time players take to respond");
+        for (int i = 0; i < live.length; i++) {
+            if (metrics[i] == null) {
+                continue;
+            }
+            for (int p = 0; p < metrics[i].getNumPlayers(); p++) {
+                LatencyHistogram latency = metrics[i].getLatency(p);
+                String labels = roomLabels[i] + "," + label("player", metrics[i].getName(p));
+                for (double q : QUANTILES) {
+                    sample(sb, "glassfrog_player_response_seconds",
+                            labels + "," + label("quantile", Double.toString(q)),
+                            latency.getPercentile(q) / 1e6);
+                }
+                sample(sb, "glassfrog_player_response_seconds_sum", labels, latency.getTotal() / 1e6);
+                sample(sb, "glassfrog_player_response_seconds_count", labels, latency.getCount());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the HELP and TYPE lines of a metric
+     * @param sb The text to add to
+     * @param name The metric name
+     * @param type counter, gauge or summary
+     * @param help The description of the metric
+     */
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Write a whole number sample
+     * @param sb The text to add to
+     * @param name The metric name
+     * @param labels The labels, from {@link #label}, or null for none
+     * @param value The value
+     */
+    private static void sample(StringBuilder sb, String name, String labels, long value) {
+        name(sb, name, labels).append(value).append('\n');
+    }
+
+    /**
+     * Write a sample
+     * @param sb The text to add to
+     * @param name The metric name
+     * @param labels The labels, from {@link #label}, or null for none
+     * @param value The value
+     */
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        name(sb, name, labels).append(value).append('\n');
+    }
+
+    /**
+     * Write the name and labels of a sample
+     * @param sb The text to add to
+     * @param name The metric name
+     * @param labels The labels, or null for none
+     * @return The text
+     */
+    private static StringBuilder name(StringBuilder sb, String name, String labels) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        return sb.append(' ');
+    }
+
+    /**
+     * Build a label, escaping the value as the format needs
+     * @param name The label name
+     * @param value The label value
+     * @return name="value"
+     */
+    private static String label(String name, String value) {
+        StringBuilder sb = new StringBuilder(name.length() + value.length() + 3);
+        sb.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
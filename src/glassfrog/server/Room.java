@@ -3,18 +3,16 @@ package glassfrog.server;
 import glassfrog.players.Player;
 import glassfrog.players.SocketPlayer;
 import glassfrog.model.Dealer;
+import glassfrog.model.Checkpointer;
+import glassfrog.model.DealerSnapshot;
 import glassfrog.model.Gamedef;
+import glassfrog.model.MatchMetrics;
 import glassfrog.players.AAAIPlayer;
 import glassfrog.players.GUIPlayer;
 import glassfrog.tools.MatchRebuilder;
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import glassfrog.tools.Threads;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.InvalidClassException;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -22,8 +20,7 @@ import java.net.BindException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Random;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
 import java.util.logging.ConsoleHandler;
@@ -38,7 +35,11 @@ import java.util.logging.SimpleFormatter;
  * the connections to the Players, The room takes connections until it is "full"
  * then it will start the game with the given specifications.  After the game is 
  * started, the dealer will then handle all of the game logic, and the Room will
- * be responsible for message passing to the players.  Essentially, the Dealer
+ * be responsible for message passing to the players.  Connections to the room's
+ * port are accepted and read by the shared {@link ConnectionManager}, so a room
+ * does not need a thread per connection.  A room started on port 0 does not
+ * listen at all, players reach it through the server's port by sending
+ * JOIN:roomname as the first line of their handshake.  Essentially, the Dealer
  * handles the gamestates, and then the room is responsible for sending an action
  * request to the proper player.  The response is then sent back to the Dealer.
  * Once the game is over, the room will be shutdown, or restarted, depending on 
@@ -51,7 +52,8 @@ public class Room implements Runnable {
     private String name,  matchLog,  errorLog,  matchLogger,  errorLogger;
     private Gamedef gamedef;
     private Dealer dealer;
-    private ServerSocket serverSocket;
+    private ServerSocketChannel listener;
+    private RoomConnectionHandler connectionHandler = new RoomConnectionHandler();
     private LinkedList<Player> players = new LinkedList<Player>();
     private int playerCount;
     private int port;
@@ -63,6 +65,7 @@ public class Room implements Runnable {
     private static final int MAX_CONNECTION_ATTEMPTS = 3;
     private static final int CONNECTION_TIMEOUT = 60000;
     private static final int SOCKET_TIMEOUT = 1000;
+    private static final int MONITOR_INTERVAL = 1000;
 
     /**
      * Start a Room with a name, Gamedef and a port
@@ -196,92 +199,90 @@ public class Room implements Runnable {
     }
 
     /**
-     * Set up the server socket. If we can't bind to the port specified by the
-     * server, we wait 10s, and try again for a maximum of 3 attempts. After that
-     * we throw an exception, which will get passed back to the server
+     * Start listening on the room's port through the ConnectionManager. If we
+     * can't bind to the port specified by the server, we wait 60s, and try
+     * again for a maximum of 3 attempts. After that we throw the exception,
+     * which will get passed back to the server.  A room on port 0 shares the
+     * server's port and does not listen.
      * @throws java.io.IOException
      */
     private void initServerSocket() throws IOException, InterruptedException {
+        if (port == 0) {
+            return;
+        }
         int attempts = 0;
-        while (attempts++ < MAX_CONNECTION_ATTEMPTS) {
-            serverSocket = new ServerSocket(port);
-            if (serverSocket.isBound()) {
+        while (true) {
+            try {
+                listener = ConnectionManager.getInstance().listen(port,
+                        connectionHandler, SOCKET_TIMEOUT);
                 return;
-            } else {
+            } catch (BindException ex) {
+                if (++attempts >= MAX_CONNECTION_ATTEMPTS) {
+                    throw ex;
+                }
                 Thread.sleep(CONNECTION_TIMEOUT);
             }
         }
-        throw new SocketException("Could not bind to an open port in the port range");
     }
 
     /**
-     * Listen for incoming connections.  Create a thread to handle the connection
-     * which will figure out if the connection request is a the dealer, server or 
-     * player then do the appropriate operations.
-     * When handling connections, if we are waiting to start the game, then 
-     * this method will create and execute a dealer thread to be run in the game
-     * This thread will check for new connections every 3s
-     * 
+     * Watch the room.  Player connections are handled by the RoomConnectionHandler
+     * on the ConnectionManager's threads, so this loop only has to create and
+     * execute a dealer thread once enough players have joined, and then check
+     * every second to see whether the game has ended.
      */
     private void listen() throws IOException {
-        logInfo("Room " + name + " listening for incoming connections on port: " + port, true);
-        serverSocket.setSoTimeout(SOCKET_TIMEOUT);
+        if (port == 0) {
+            logInfo("Room " + name + " joinable through the server port", true);
+        } else {
+            logInfo("Room " + name + " listening for incoming connections on port: " + port, true);
+        }
         Thread dealerThread = null;
         while (alive) {
             try {
-                Socket socket = serverSocket.accept();
-                Thread t = new Thread(new RoomConnectionHandler(socket));
-                t.start();
-            } catch (SocketTimeoutException ex) {
-                if (playerCount == gamedef.getMinPlayers() && dealerThread == null) {
+                Thread.sleep(MONITOR_INTERVAL);
+            } catch (InterruptedException ex) {
+                logError(ex);
+            }
+            if (playerCount == gamedef.getMinPlayers() && dealerThread == null) {
+                try {
+                    DealerSnapshot snapshot = DealerSnapshot.load(getSaveFile());
+                    logInfo("Loading a dealer for Room:" + name, true);
+                    if (!restoreDealer(snapshot)) {
+                        logInfo("Could not reconnect players, shutting down room", true);                                                        
+                        return;
+                    }                        
+                } catch (FileNotFoundException ex1) {
+                    startNewDealer();
                     try {
-                        String filename = "save/" + name + ".dealer.ser";
-                        FileInputStream fis = new FileInputStream(filename);
-                        ObjectInputStream in = new ObjectInputStream(fis);
-                        logInfo("Loading a dealer for Room:" + name, true);
-                        dealer = (Dealer) in.readObject();
-                        in.close();
-                        if(!dealer.reconnectPlayers(players)) {
+                        logInfo("Room:" + name + " checking for restore point", true);
+                        if (!restoreDealer(MatchRebuilder.restore(name))) {
                             logInfo("Could not reconnect players, shutting down room", true);                                                        
                             return;
-                        }                        
-                    } catch (ClassNotFoundException ex1) {
-                        logError(ex1);
-                        logInfo("Room:" + name + " could not load dealer from save, attempting logfile restore...", true);                        
-                        startNewDealer();
-                    } catch (InvalidClassException ex1) {
-                        logError(ex1);
-                        logInfo("Room:" + name + " could not load dealer from save, attempting logfile restore...", true);
-                        startNewDealer();
-                    } catch (FileNotFoundException ex1) {
-                        startNewDealer();
-                        try {
-                            logInfo("Room:" + name + " checking for restore point", true);
-                            dealer = MatchRebuilder.restore(name);
-                            if(!dealer.reconnectPlayers(players)) {
-                                logInfo("Could not reconnect players, shutting down room", true);                                                        
-                                return;
-                            }
-                        } catch (FileNotFoundException ex2) {
-                            //Could not restore a dealer, default to new.
-                            logInfo("Room:" + name + " could not find restore point", true);
-                            logInfo("Room:" + name + " starting a new dealer", true);
-                        } catch (ClassNotFoundException ex2) {
-                            logInfo("Room:" + name + " error restoring dealer", true);                            
-                            logInfo("Room:" + name + " starting a new dealer", true);
-                        }                                                
-                    }
-                    dealerThread = new Thread(dealer);
-                    dealerThread.start();
-                }
-                if (dealerThread != null) {                    
-                    if (dealer.isDisconnected() || dealer.isGameOver()) {
-                        saveDealer();
-                        String gameStatus = getStatus();
-                        logInfo(gameStatus, true);                        
-                        if (runOnce) {
-                            shutdown();
                         }
+                    } catch (FileNotFoundException ex2) {
+                        //Could not restore a dealer, default to new.
+                        logInfo("Room:" + name + " could not find restore point", true);
+                        logInfo("Room:" + name + " starting a new dealer", true);
+                    } catch (IOException ex2) {
+                        logError(ex2);
+                        logInfo("Room:" + name + " error restoring dealer", true);                            
+                        logInfo("Room:" + name + " starting a new dealer", true);
+                    }                                                
+                } catch (IOException ex1) {
+                    logError(ex1);
+                    logInfo("Room:" + name + " could not load dealer from save, starting a new dealer", true);
+                    startNewDealer();
+                }
+                dealerThread = Threads.start(dealer, "Dealer-" + name);
+            }
+            if (dealerThread != null) {                    
+                if (dealer.isDisconnected() || dealer.isGameOver()) {
+                    saveDealer();
+                    String gameStatus = getStatus();
+                    logInfo(gameStatus, true);                        
+                    if (runOnce) {
+                        shutdown();
                     }
                 }
             }
@@ -297,19 +298,40 @@ public class Room implements Runnable {
         } else {
             dealer = new Dealer(gamedef, players);
         }
+        dealer.setCheckpointFile(getSaveFile());
         saveDealer();
     }
 
     /**
-     * Save the instance of the dealer to file for reloading of the game
+     * Build a dealer for the players that have connected from a snapshot
+     * @param snapshot The snapshot of the match to carry on
+     * @return True if every player in the snapshot has connected
+     */
+    private boolean restoreDealer(DealerSnapshot snapshot) {
+        Dealer restored = new Dealer(gamedef, players, snapshot.newDeck(), snapshot.getName());
+        if (!restored.restoreSnapshot(snapshot)) {
+            return false;
+        }
+        restored.setCheckpointFile(getSaveFile());
+        dealer = restored;
+        return true;
+    }
+
+    /**
+     * Get the file the room's dealer is saved to
+     * @return the snapshot file name
+     */
+    private String getSaveFile() {
+        return "save/" + name + ".dealer.snap";
+    }
+
+    /**
+     * Save a snapshot of the dealer to file for reloading of the game.  This
+     * replaces any checkpoint the dealer has queued, see {@link Checkpointer}
      */
     private void saveDealer() {
         try {
-            String filename = "save/" + name + ".dealer.ser";
-            FileOutputStream fos = new FileOutputStream(filename);
-            ObjectOutputStream out = new ObjectOutputStream(fos);
-            out.writeObject(dealer);
-            out.close();
+            Checkpointer.save(getSaveFile(), dealer.getSnapshot());
         } catch (IOException ex) {
             logError(ex);
         }
@@ -345,6 +367,58 @@ public class Room implements Runnable {
         return status;
     }
 
+    /**
+     * Get the metrics of the room's current match
+     * @return the metrics, or null if no match has started
+     */
+    public MatchMetrics getMatchMetrics() {
+        Dealer d = dealer;
+        return d == null ? null : d.getMetrics();
+    }
+
+    /**
+     * Get the metrics of the room's current match, as : delimited lines headed
+     * by the room's name and port.  See {@link MatchMetrics}
+     * @return The room's metrics, or just the ROOM line if no match has
+     * started
+     */
+    public String getMetrics() {
+        String header = "ROOM:" + name + ":" + port;
+        MatchMetrics metrics = getMatchMetrics();
+        if (metrics == null) {
+            return header;
+        }
+        return header + "\n" + metrics;
+    }
+
+    /**
+     * Take over a connection made to the server's shared port.  The lines
+     * that follow are handled exactly as if they had been sent to the room's
+     * own port.
+     * @param connection The connection that asked to join the room
+     */
+    public void join(Connection connection) {
+        connection.setHandler(connectionHandler);
+    }
+
+    /**
+     * Get the port the room listens on
+     * @return The room's port, or 0 if the room is joined through the
+     * server's port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the port other players are started on relative to.  Rooms sharing the
+     * server's port use the server's port.
+     * @return The room's port, or the server's port if the room has none
+     */
+    private int getPortBase() {
+        return port != 0 ? port : Server.PORT;
+    }
+
     /**
      * Return the key associated with the room if it exits, else return "None"
      * @return A String representation of the key the room uses
@@ -378,15 +452,17 @@ public class Room implements Runnable {
      */
     public void shutdown() {
         alive = false;
-        try {
-            serverSocket.close();
-            errorFileHandler.close();
-            matchFileHandler.close();
-            for (Player p : players) {
-                p.shutdown();
+        if (listener != null) {
+            try {
+                ConnectionManager.getInstance().close(listener);
+            } catch (IOException ex) {
+                logError(ex);
             }
-        } catch (IOException ex) {
-            logError(ex);
+        }
+        errorFileHandler.close();
+        matchFileHandler.close();
+        for (Player p : players) {
+            p.shutdown();
         }
     }
 
@@ -406,119 +482,140 @@ public class Room implements Runnable {
      * An Inner Class used to handle incoming connections to the room.
      * These connections should be player connections, and each type of player
      * will have thier own way to connect depending on the type of player.
-     * 
+     * One handler is shared by every connection to the room, and is passed
+     * each line the ConnectionManager reads from them.
      */
-    private class RoomConnectionHandler implements Runnable {
-
-        private String connectionArgs;
-        private Socket socket;
-        private PrintWriter pw;
-        private BufferedReader br;
+    private class RoomConnectionHandler implements ConnectionHandler {
 
         /**
-         * The constructor for the ConnectionHandler inner class.  The connection
-         * handler takes a socket passed in from the room, opens a print writer 
-         * and buffered reader on the socket and then parses the first argument
-         * sent by the connection.  The connections should be players connections
-         * or commands send by the server
-         * 
-         * @param socket A socket passed in to handle the connection in and outputs
+         * This method handles a request sent in on a connection.  A
+         * SocketPlayer takes over the connection for the rest of the game.
+         * Other requests, such as the AAAIPlayer lines sent by the BotManager,
+         * can follow each other on the same connection.
          * 
+         * @param connection The connection the request was sent on
+         * @param connectionArgs The request line
          */
-        public RoomConnectionHandler(Socket socket) throws IOException {
-            this.socket = socket;
-            this.socket.setSoTimeout(SOCKET_TIMEOUT);
-            br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            pw = new PrintWriter(socket.getOutputStream());
-
+        public void handleLine(Connection connection, String connectionArgs) {
+            PrintWriter pw = connection.getWriter();
+            try {
+                StringTokenizer st = new StringTokenizer(connectionArgs, ":");
+                if (st.hasMoreTokens()) {
+                    String type = st.nextToken();
+                    if (type.equalsIgnoreCase("SocketPlayer")) {
+                        SocketPlayer p;
+                        p = new SocketPlayer(st.nextToken(),
+                                new Integer(st.nextToken()).intValue(),
+                                new Integer(st.nextToken()).intValue(),
+                                connection.getReader(), pw);
+                        addPlayer(p);
+                    } else if (type.equalsIgnoreCase("GUIPlayer")) {
+                        acceptGUIPlayer(connection, st);
+                    } else if (type.equalsIgnoreCase("AAAIPlayer")) {
+                        acceptAAAIPlayer(connection, st);
+                    } else if (type.equalsIgnoreCase("Status")) {
+                        getStatus();
+                    } else {
+                        logWarning("Unknown request: " + type);
+                    }
+                }
+            } catch (IOException ex) {
+                logError(ex);
+                connection.close();
+            } catch (NullPointerException ex) {
+                logError(ex);
+                connection.close();
+            }
         }
 
         /**
-         * This method handles the request sent in on the socket.  
-         * If the request is of the player type, then handlePlayerRequest is called.  
-         * If the request is of the server type, then the handleServerRequest is
-         * called.
-         * 
+         * Send the gamedef to a GUI client, then wait for it to connect to a
+         * player port of its own.  The wait is on a thread of its own so that
+         * it doesn't hold one of the ConnectionManager's workers.
+         *
+         * @param connection The connection the request was sent on
+         * @param st The rest of the request, the name, buy in and seat
          */
-        public void run() {
-            while (socket.isConnected()) {
-                try {
-                    connectionArgs = br.readLine();
-                    StringTokenizer st = new StringTokenizer(connectionArgs, ":");
-                    if (st.hasMoreTokens()) {
-                        String type = st.nextToken();
-                        if (type.equalsIgnoreCase("SocketPlayer")) {
-                            SocketPlayer p;
-                            p = new SocketPlayer(st.nextToken(),
-                                    new Integer(st.nextToken()).intValue(),
-                                    new Integer(st.nextToken()).intValue(), br, pw);
-                            addPlayer(p);
-                        } else if (type.equalsIgnoreCase("GUIPlayer")) {
-                            GUIPlayer p;
-                            ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-                            oos.writeObject(gamedef);
-                            oos.flush();                            
-                            int playerPort;          
-                            ServerSocket ss;
-                            Socket playerSocket;
-                            for(int i = 0; i< 3; i++) {
-                                playerPort  = new Random().nextInt(1000) + port;                                
-                                try{
-                                    ss = new ServerSocket(playerPort);
-                                    pw.println("Listening on port:" + playerPort);
-                                    pw.flush();
-                                    playerSocket = ss.accept();
-                                    p = new GUIPlayer(st.nextToken(),
-                                    new Integer(st.nextToken()).intValue(),
-                                    new Integer(st.nextToken()).intValue(), playerSocket);                                                                        
-                                    addPlayer(p);
-                                    logInfo("Room " + name + " added new player " + p.toString(), true);
-                                    return;
-                                } catch (BindException ex) {
-                                    continue;
-                                }                                                                
+        private void acceptGUIPlayer(final Connection connection, final StringTokenizer st) {
+            Threads.start(new Runnable() {
+
+                public void run() {
+                    PrintWriter pw = connection.getWriter();
+                    try {
+                        GUIPlayer p;
+                        ObjectOutputStream oos = new ObjectOutputStream(connection.getOutputStream());
+                        oos.writeObject(gamedef);
+                        oos.flush();
+                        int playerPort;
+                        ServerSocket ss;
+                        Socket playerSocket;
+                        for (int i = 0; i < 3; i++) {
+                            playerPort = new Random().nextInt(1000) + getPortBase();
+                            try {
+                                ss = new ServerSocket(playerPort);
+                            } catch (BindException ex) {
+                                continue;
                             }
-                            pw.println("ERROR:Could not connect to the server, the server may be full\n.Please try again later.");
-                            pw.flush();
-                            logError(new BindException("Could not bind a player port"));
-                            socket.close();
-                            alive = false;
-                        } else if (type.equalsIgnoreCase("AAAIPlayer")) {
-                            AAAIPlayer p;
                             try {
-                                p = new AAAIPlayer(st.nextToken(),
-                                    new Integer(st.nextToken()).intValue(),
-                                    new Integer(st.nextToken()).intValue(),
-                                    port, st.nextToken(), name);
-                                    addPlayer(p);
-                                    logInfo("Room " + name + " added new player " + p.toString(), true);
-                            } catch(IOException ex) {
-                                logError(ex);
-                                socket.close();
-                                alive = false;
+                                pw.println("Listening on port:" + playerPort);
+                                pw.flush();
+                                playerSocket = ss.accept();
+                            } finally {
+                                ss.close();
                             }
-                        } else if (type.equalsIgnoreCase("Status")) {
-                            getStatus();
-                        } else {
-                            logWarning("Unknown request: " + type);
+                            p = new GUIPlayer(st.nextToken(),
+                                    Integer.parseInt(st.nextToken()),
+                                    Integer.parseInt(st.nextToken()), playerSocket);
+                            addPlayer(p);
+                            logInfo("Room " + name + " added new player " + p.toString(), true);
+                            return;
                         }
+                        pw.println("ERROR:Could not connect to the server, the server may be full\n.Please try again later.");
+                        pw.flush();
+                        logError(new BindException("Could not bind a player port"));
+                        connection.close();
+                        alive = false;
+                    } catch (IOException ex) {
+                        logError(ex);
+                        connection.close();
+                    } catch (NullPointerException ex) {
+                        logError(ex);
+                        connection.close();
                     }
-                } catch (SocketTimeoutException ex) {
+                }
+            }, "GUIPlayerAccept-" + name);
+        }
+
+        /**
+         * Start an AAAIPlayer's bot and wait for it to connect.  The wait is on
+         * a thread of its own so that it doesn't hold one of the
+         * ConnectionManager's workers.
+         *
+         * @param connection The connection the request was sent on
+         * @param st The rest of the request, the name, buy in, seat and script
+         */
+        private void acceptAAAIPlayer(final Connection connection, final StringTokenizer st) {
+            Threads.start(new Runnable() {
+
+                public void run() {
+                    AAAIPlayer p;
                     try {
-                        socket.close();
-                        return;
-                    } catch (IOException ex1) {
-                        logError(ex1);
-                        return;
+                        p = new AAAIPlayer(st.nextToken(),
+                                Integer.parseInt(st.nextToken()),
+                                Integer.parseInt(st.nextToken()),
+                                getPortBase(), st.nextToken(), name);
+                        addPlayer(p);
+                        logInfo("Room " + name + " added new player " + p.toString(), true);
+                    } catch (IOException ex) {
+                        logError(ex);
+                        connection.close();
+                        alive = false;
+                    } catch (NullPointerException ex) {
+                        logError(ex);
+                        connection.close();
                     }
-                } catch (IOException ex) {
-                    logError(ex);
-                    return;
-                } catch (NullPointerException ex) {
-                    logError(ex);
-                    return;
                 }
-            }
+            }, "AAAIPlayerAccept-" + name);
         }
 
         /**
@@ -528,7 +625,7 @@ public class Room implements Runnable {
          * 
          * @param newPlayer The player to ba added to the players list
          */
-        private void addPlayer(Player newPlayer) {
+        private synchronized void addPlayer(Player newPlayer) {
             for (Player p : players) {
                 if (p.getName().equalsIgnoreCase(newPlayer.getName())) {
                     newPlayer.setName(newPlayer.getName() + new Random().nextInt(10));
@@ -0,0 +1,190 @@
+package glassfrog.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The RoomRegistry holds the {@link Server}'s rooms, the keys in use by
+ * AUTOCONNECT rooms and the ports handed out to new rooms.  It is read and
+ * changed from the ConnectionManager's worker threads as requests come in and
+ * from the server's housekeeping, so everything is kept in ConcurrentHashMaps:
+ * looking up a room by name or port takes the same time however many rooms
+ * there are, and keys and ports are claimed with putIfAbsent so two requests
+ * can never get the same one.
+ *
+ * Room names and keys are matched ignoring case, as the requests always have.
+ * @author jdavidso
+ */
+public class RoomRegistry {
+
+    private static final int PORT_RANGE = 1000;
+    private final ConcurrentHashMap<String, Room> byName = new ConcurrentHashMap<String, Room>();
+    private final ConcurrentHashMap<Integer, Room> byPort = new ConcurrentHashMap<Integer, Room>();
+    private final ConcurrentHashMap<Integer, String> reservedPorts = new ConcurrentHashMap<Integer, String>();
+    private final ConcurrentHashMap<String, String> keys = new ConcurrentHashMap<String, String>();
+    private final int basePort;
+    private final Random random = new Random();
+
+    /**
+     * Build an empty registry handing out ports above basePort, up to
+     * basePort + 999.  basePort itself is the server's own port and is never
+     * handed out.
+     * @param basePort The server's port, just below the ports handed out
+     */
+    public RoomRegistry(int basePort) {
+        this.basePort = basePort;
+    }
+
+    /**
+     * Add a room, unless there is already a room with the same name
+     * @param room The room to add
+     * @return True if the room was added, false if the name is taken
+     */
+    public boolean add(Room room) {
+        if (byName.putIfAbsent(normalize(room.getName()), room) != null) {
+            return false;
+        }
+        int port = room.getPort();
+        if (port != 0) {
+            byPort.put(port, room);
+            reservedPorts.remove(port);
+        }
+        return true;
+    }
+
+    /**
+     * Remove a room, freeing its name and its port
+     * @param room The room to remove
+     * @return True if the room was in the registry
+     */
+    public boolean remove(Room room) {
+        if (!byName.remove(normalize(room.getName()), room)) {
+            return false;
+        }
+        if (room.getPort() != 0) {
+            byPort.remove(room.getPort(), room);
+        }
+        return true;
+    }
+
+    /**
+     * Look up a room by name
+     * @param name The room name
+     * @return The room or null if there is no room of that name
+     */
+    public Room get(String name) {
+        return byName.get(normalize(name));
+    }
+
+    /**
+     * Look up a room by the port it listens on
+     * @param port The port
+     * @return The room or null if no room has that port
+     */
+    public Room getByPort(int port) {
+        return byPort.get(port);
+    }
+
+    /**
+     * Get the rooms.  The collection is a live view, safe to iterate while
+     * rooms come and go.
+     * @return The rooms
+     */
+    public Collection<Room> getRooms() {
+        return byName.values();
+    }
+
+    /**
+     * Get the number of rooms
+     * @return the number of rooms
+     */
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * Claim a key for a room
+     * @param key The key
+     * @return True if the key was free and is now in use, false if it was
+     * already in use
+     */
+    public boolean claimKey(String key) {
+        return keys.putIfAbsent(normalize(key), key) == null;
+    }
+
+    /**
+     * Free a key so it can be used again
+     * @param key The key
+     * @return True if the key was in use
+     */
+    public boolean freeKey(String key) {
+        return keys.remove(normalize(key)) != null;
+    }
+
+    /**
+     * Get the number of keys in use
+     * @return the number of keys
+     */
+    public int getKeyCount() {
+        return keys.size();
+    }
+
+    /**
+     * Pick a random port that no room has and nobody else has reserved, and
+     * reserve it.  The reservation ends when a room on the port is added,
+     * the owner's room is removed or the port is released.
+     * @param owner The name of the room the port is for
+     * @return The port
+     * @throws IllegalStateException if every port is taken
+     */
+    public int reservePort(String owner) {
+        for (int tries = 0; tries < PORT_RANGE * 4; tries++) {
+            int port = basePort + 1 + random.nextInt(PORT_RANGE - 1);
+            if (!byPort.containsKey(port) && reservedPorts.putIfAbsent(port, owner) == null) {
+                return port;
+            }
+        }
+        throw new IllegalStateException("No free ports above " + basePort);
+    }
+
+    /**
+     * Give up a port reserved with {@link #reservePort} when no room was
+     * added on it.  Only the owner's reservation is released.
+     * @param port The port
+     * @param owner The name of the room the port was reserved for
+     * @return True if the port was reserved by the owner
+     */
+    public boolean releasePort(int port, String owner) {
+        return reservedPorts.remove(port, owner);
+    }
+
+    /**
+     * Remove the rooms that are no longer alive, freeing their names, ports
+     * and port reservations.  Shutting the rooms down and freeing their keys
+     * is left to the caller.
+     * @return The rooms removed
+     */
+    public ArrayList<Room> removeDead() {
+        ArrayList<Room> removed = new ArrayList<Room>();
+        for (Room r : byName.values()) {
+            if (!r.isAlive() && remove(r)) {
+                removed.add(r);
+            }
+        }
+        for (Room r : removed) {
+            reservedPorts.values().remove(r.getName());
+        }
+        return removed;
+    }
+
+    /**
+     * Names and keys are matched ignoring case
+     * @param name A room name or key
+     * @return The name to use as a map key
+     */
+    private static String normalize(String name) {
+        return name.toUpperCase();
+    }
+}
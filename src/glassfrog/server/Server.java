@@ -1,19 +1,20 @@
 package glassfrog.server;
 
 import glassfrog.model.Gamedef;
+import glassfrog.tools.Threads;
 import glassfrog.tools.XMLParser;
 import glassfrog.tools.XMLValidator;
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.net.BindException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-import java.util.ArrayList;
-import java.util.Random;
+import java.nio.channels.ServerSocketChannel;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
@@ -27,42 +28,81 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 /**
- * The Server class is a persistant java server that has a {@link ServerSocket}
- * serving on port 9000.  This ServerSocket handles incoming connections and 
- * sends back information depending on the request made.  The Server is capable 
- * of creating a {@link Room}, querying information about a Room or general 
- * status
+ * The Server class is a persistant java server listening on port 9000.
+ * Requests made on this port are answered with information depending on the
+ * request made.  The Server is capable of creating a {@link Room}, querying
+ * information about a Room or general status
  *  
- * Each connection to the server is forked into a separate thread to allow 
- * multiple conncurent connections to the Server.  Each thread only stays alive 
- * for the duration of the request connection and then is terminated.
+ * Connections are accepted and read by the shared {@link ConnectionManager},
+ * so many connections can be served at once without a thread per connection.
+ * Each request is handled on one of the manager's worker threads, the answer
+ * is sent, and the connection is closed.
+ *
+ * A JOIN:roomname request instead hands the connection to that Room, and the
+ * rest of the player's handshake goes to the room as if it had connected to
+ * the room's own port.  Started with -shared, the server creates its rooms on
+ * port 0 so every room is reached this way, through the one server port.
  * 
  * @author jdavidso
  */
 public class Server implements Runnable {
 
-    private static ArrayList<Room> rooms = new ArrayList();
-    private static ArrayList portList = new ArrayList();
-    private static ArrayList keyList = new ArrayList();
-    private static ArrayList<Thread> liveThreads = new ArrayList();
-    private static ServerSocket ss;
+    static final int PORT = 9000;
+    private static final RoomRegistry rooms = new RoomRegistry(PORT);
+    private static ConnectionManager connections;
+    private static ScheduledExecutorService housekeeper;
+    private static MetricsExporter exporter;
+    private static ServerSocketChannel listener;
+    private static final Object lock = new Object();
     private FileHandler errorFileHandler,  serverFileHandler;
     private String serverLog, errorLog;
     private static boolean alive = true;
-    private static final int PORT = 9000;
-    private static final int TIMEOUT = 30000;
-    private static final int CONNECTION_MAX = 64;
+    private static boolean sharedPort = false;
+    private static final int HOUSEKEEPING_INTERVAL = 30000;
+    public static final String METRICS_DUMP_PROPERTY = "glassfrog.metricsdump";
+    private static final String METRICS_FILE = "logs/server.metrics";
+    private static final int REQUEST_TIMEOUT = 300000;
 
     /**
      * The constructor for the server starts up a server on port 9000 and 
-     * opens a ServerSocket to handle server requests
+     * registers it with the ConnectionManager to handle server requests
      * @throws java.net.BindException
      * @throws java.io.IOException
      */
     public Server() throws BindException, IOException {
-        ss = new ServerSocket(PORT);
-        ss.setSoTimeout(TIMEOUT);
+        this(false);
+    }
+
+    /**
+     * Start up a server on port 9000, optionally with every room it creates
+     * sharing that port
+     * @param sharedPort True to create rooms on port 0, joined through the
+     * server's port with a JOIN request
+     * @throws java.net.BindException
+     * @throws java.io.IOException
+     */
+    public Server(boolean sharedPort) throws BindException, IOException {
+        Server.sharedPort = sharedPort;
+        connections = ConnectionManager.getInstance();
+        listener = connections.listen(PORT, new ConnectionHandler() {
+
+            public void handleLine(Connection connection, String request) {
+                new ServerConnectionHandler(connection).handle(request);
+            }
+        }, REQUEST_TIMEOUT);
         initLogging();
+        exporter = new MetricsExporter(rooms);
+        String metricsPort = System.getProperty(MetricsExporter.PORT_PROPERTY);
+        if (metricsPort != null) {
+            try {
+                exporter.startHttp(Integer.parseInt(metricsPort));
+                logInfo("Serving metrics over HTTP on port " + metricsPort);
+            } catch (NumberFormatException ex) {
+                logWarning("Unknown " + MetricsExporter.PORT_PROPERTY + " " + metricsPort + ", not serving metrics over HTTP");
+            } catch (IOException ex) {
+                logError("Could not serve metrics over HTTP on port " + metricsPort + ": " + ex.toString());
+            }
+        }
     }
     
     /**
@@ -118,70 +158,113 @@ public class Server implements Runnable {
     }
 
     /**
-     * The run method for the server.  A server will busy wait and listen for 
-     * incoming connections on it's ServerSocket and then fork a ServerConnectionHandler
-     * thread to deal with the connections while the server is still alive
+     * The run method for the server.  Requests are handled by the
+     * ConnectionManager's threads and the housekeeping is run every 30 seconds
+     * on a scheduled executor, so the server thread just waits until the
+     * server is killed
      */
-    public void run() {                
-        while (alive) {
-            try {
-                if (liveThreads.size() < CONNECTION_MAX) {
-                    Socket s = ss.accept();
-                    Thread t = new Thread(new ServerConnectionHandler(s));
-                    t.start();
-                    liveThreads.add(t);
-                } else {
-                    logError("Max connections reached.  Try again in 5s");
-                    Thread.sleep(4000);
-                }
-                houseKeeping();
-            } catch (SocketTimeoutException ex) {
+    public void run() {
+        housekeeper = Executors.newSingleThreadScheduledExecutor(Threads.factory("ServerHousekeeping"));
+        housekeeper.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
                 houseKeeping();
-            } catch (IOException ex) {                
-                logError("IO Exception in server run thread: "+ex.toString());
-                logError(ex.getStackTrace().toString());
-                System.exit(-1);
-            } catch (InterruptedException ex) {
-                logError("Server thread interrupted");
-                logError(ex.toString());
             }
+        }, HOUSEKEEPING_INTERVAL, HOUSEKEEPING_INTERVAL, TimeUnit.MILLISECONDS);
+        int dumpInterval = getMetricsDumpInterval();
+        if (dumpInterval > 0) {
+            housekeeper.scheduleWithFixedDelay(new Runnable() {
+
+                public void run() {
+                    dumpMetrics();
+                }
+            }, dumpInterval, dumpInterval, TimeUnit.SECONDS);
         }
-        try {
-            ss.close();
-        } catch (IOException ex) {
-            logError("IO Error caugtht while attepting to close socket in Server run thread:"+ex.toString());
-            logError(ex.getStackTrace().toString());
-            System.exit(-1);
+        synchronized (lock) {
+            while (alive) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    logError("Server thread interrupted");
+                    logError(ex.toString());
+                }
+            }
         }
+        housekeeper.shutdown();
+        exporter.stopHttp();
+        connections.close(listener);
     }
 
     /**
-     * Do some housekeeping whenever a new connection is started or every 30 seconds
-     * on the socket timeout
+     * Do some housekeeping every 30 seconds: remove the rooms that have
+     * stopped and free their keys
      */
     private void houseKeeping() {
-        //Some housekeeping every 30s
-        for (int i = 0; i < rooms.size(); i++) {
-            Room r = rooms.get(i);
-            if (!r.isAlive()) {
-                if (keyList.contains(r.getName())) {
-                    System.out.println("Freeing Key: " + r.getName());
-                    logInfo("Freeing Key: " + r.getName());
-                    keyList.remove(r.getName());
-                }
-                r.shutdown();
-                System.out.println("Removing Room: " + r.getName() + " from active list");
-                logInfo("Removing Room: " + r.getName() + " from active list");
-                rooms.remove(r);
-                i--;
+        for (Room r : rooms.removeDead()) {
+            if (rooms.freeKey(r.getName())) {
+                System.out.println("Freeing Key: " + r.getName());
+                logInfo("Freeing Key: " + r.getName());
             }
+            r.shutdown();
+            System.out.println("Removing Room: " + r.getName() + " from active list");
+            logInfo("Removing Room: " + r.getName() + " from active list");
+        }
+    }
+
+    /**
+     * Get the number of seconds between dumps of the metrics file, from the
+     * system property glassfrog.metricsdump (60 by default, 0 for none)
+     * @return the interval in seconds
+     */
+    private int getMetricsDumpInterval() {
+        String interval = System.getProperty(METRICS_DUMP_PROPERTY, "60");
+        try {
+            return Math.max(0, Integer.parseInt(interval));
+        } catch (NumberFormatException ex) {
+            logWarning("Unknown " + METRICS_DUMP_PROPERTY + " " + interval + ", dumping metrics every 60s");
+            return 60;
+        }
+    }
+
+    /**
+     * Get the metrics of every room, each followed by ||
+     * @return The metrics
+     */
+    private static String getMetrics() {
+        StringBuilder metrics = new StringBuilder();
+        for (Room r : rooms.getRooms()) {
+            metrics.append(r.getMetrics()).append("||");
         }
-        for (int i = 0; i < liveThreads.size(); i++) {
-            Thread t = liveThreads.get(i);
-            if (!t.isAlive()) {
-                liveThreads.remove(t);
-                i--;
+        return metrics.toString();
+    }
+
+    /**
+     * Write the metrics of every room to logs/server.metrics, a room to a
+     * block, replacing the last dump
+     */
+    private void dumpMetrics() {
+        File file = new File(METRICS_FILE);
+        File tmp = new File(METRICS_FILE + ".tmp");
+        try {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+            try {
+                out.println("TIME:" + System.currentTimeMillis() + ":Rooms:" + rooms.size());
+                for (Room r : rooms.getRooms()) {
+                    out.println(r.getMetrics());
+                    out.println();
+                }
+                if (out.checkError()) {
+                    throw new IOException("Write failed");
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                tmp.renameTo(file);
             }
+        } catch (IOException ex) {
+            logError("Could not write " + METRICS_FILE + ": " + ex.toString());
         }
     }
 
@@ -192,65 +275,54 @@ public class Server implements Runnable {
      * state of the server
      * @author jdavidso
      */
-    public class ServerConnectionHandler implements Runnable {
+    public class ServerConnectionHandler {
 
         private PrintWriter pw;
-        private BufferedReader br;
-        private Socket socket;
-        private final int TIMEOUT = 300000;
+        private Connection connection;
+        private boolean joined = false;
 
         /**
-         * The ServerConnectionHandler takes the socket that the ServerSocket 
-         * gets from an accepted connection.  A PrintWriter and BufferedReader
-         * are then set up to get the incoming request and possibly return any
+         * The ServerConnectionHandler takes a connection the ConnectionManager
+         * got a request on.  A PrintWriter is then set up to return any
          * information to the sender.
          * 
-         * After 30s of inactivity from a socket, the socket will timeout
+         * After 300s of inactivity the connection will timeout
          * 
-         * @param socket A Socket passed in from the server
-         * @throws java.io.IOException Any exceptions from the socket handleing
+         * @param connection A Connection passed in from the ConnectionManager
          */        
-        public ServerConnectionHandler(Socket socket) throws IOException {
-            this.socket = socket;
-            this.socket.setSoTimeout(TIMEOUT);
-            this.br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            this.pw = new PrintWriter(socket.getOutputStream());
+        public ServerConnectionHandler(Connection connection) {
+            this.connection = connection;
+            this.pw = connection.getWriter();
         }
 
         /**
-         * A wrapper to handle the requests from the server so that this can be
-         * invoked in a thread
+         * Handle a request, then close the connection once the answer is sent
+         * @param request The request line
          */
-        public void run() {
+        public void handle(String request) {
             try {
-                handleRequest();
+                handleRequest(request);
             } catch (InterruptedException ex) {
-                logError("Interrupted Exception in connection handler run thread: " + ex.toString());
+                logError("Interrupted Exception in connection handler: " + ex.toString());
                 logError(ex.getStackTrace().toString());
-            } catch (SocketTimeoutException ex) {
-                try {
-                    logError("SocketTimeout Exception in connection handler run thread: " + ex.toString());
-                    logError(ex.getStackTrace().toString());
-                    br.close();
-                    pw.close();
-                    socket.close();
-                } catch (IOException ex1) {
-                    logError("Could not shut down socket, IO Exception caught in shutdown routine");
-                }
             } catch (IOException ex) {
-                logError("IO Exception in connection handler run thread: "+ex.toString());
+                logError("IO Exception in connection handler: "+ex.toString());
                 logError(ex.getStackTrace().toString());                
+            } finally {
+                pw.flush();
+                if (!joined) {
+                    connection.close();
+                }
             }
         }
 
         /**
          * Handles any request made from a connection to the server
+         * @param request The request line
          * @throws java.io.IOException
-         * @throws java.socket.SocketTimeoutException
          */
-        private void handleRequest() throws IOException, SocketTimeoutException,
+        private void handleRequest(String request) throws IOException,
                 InterruptedException {
-            String request = br.readLine();
             StringTokenizer st = new StringTokenizer(request, ":");
             if (st.countTokens() < 1) {
                 logError("Server request " + request + "empty or missing parameters");                
@@ -263,7 +335,10 @@ public class Server implements Runnable {
                 pw.println(getRooms());
                 pw.flush();
             }
-            if (requestType.equalsIgnoreCase("STATUS")) {
+            if (requestType.equalsIgnoreCase("JOIN")) {
+                //Hand the connection over to a room on the shared port
+                join(st.hasMoreTokens() ? st.nextToken() : "");
+            } else if (requestType.equalsIgnoreCase("STATUS")) {
                 while (st.hasMoreTokens()) {
                     pw.println(getStatus(st.nextToken()));
                     pw.flush();
@@ -274,41 +349,64 @@ public class Server implements Runnable {
                     kill(st.nextToken());
                 }
             } else if (requestType.equalsIgnoreCase("NEW")) {
-                //Handle New Room from Command Line
+                //Handle New Room from Command Line, NEW:name:gamedef[:port]
                 if (st.countTokens() < 2) {
                     pw.println("Invalid request, missing arguments.  Please " +
                             "specify the room with a name, a path to a gamedef, " +
                             "and optionally a port to start the room on");
                     pw.flush();
+                    return;
                 }
                 String name = st.nextToken();
                 String gamedefName = st.nextToken();
                 Gamedef gd;
                 int port;
                 try {
-                    gd = new Gamedef(st.nextToken());
+                    gd = new Gamedef(gamedefName);
                 } catch (ParserConfigurationException ex) {
                     logError("Caught ParserConfigurationException while trying to parse gamedef" + gamedefName);
+                    pw.println("ERROR:Could not parse gamedef " + gamedefName);
+                    pw.flush();
                     return;
                 } catch (SAXParseException ex) {
                     logError("Caught SaxParserException while trying to parse gamedef" + gamedefName);
+                    pw.println("ERROR:Could not parse gamedef " + gamedefName);
+                    pw.flush();
                     return;
                 } catch (SAXException ex) {
                     logError("Caught SaxException while trying to parse gamedef" + gamedefName);
+                    pw.println("ERROR:Could not parse gamedef " + gamedefName);
+                    pw.flush();
                     return;
                 }
-                if (st.countTokens() == 3) {
+                if (st.hasMoreTokens()) {
                     try {
                         port = new Integer(st.nextToken()).intValue();
                     } catch (NumberFormatException ex) {
-                        port = new Random().nextInt(1000) + PORT;
+                        port = rooms.reservePort(name);
                     }
+                } else if (sharedPort) {
+                    port = 0;
                 } else {
-                    port = new Random().nextInt(1000) + PORT;
+                    port = rooms.reservePort(name);
+                }
+                boolean added = false;
+                try {
+                    Room r = new Room(name, gd, port);
+                    if (!rooms.add(r)) {
+                        r.shutdown();
+                        pw.println("ERROR:Room name " + name + " already in use");
+                        pw.flush();
+                        return;
+                    }
+                    added = true;
+                    Threads.start(r, "Room-" + name);
+                } finally {
+                    if (!added) {
+                        rooms.releasePort(port, name);
+                    }
                 }
-                Room r = new Room(name, gd, port);
-                rooms.add(r);
-                pw.println("New room added successfully on port " + port);
+                pw.println("New room added successfully on port " + (port != 0 ? port : PORT));
                 pw.flush();
             } else if (requestType.equalsIgnoreCase("CONFIG")) {
                 //Handle New room from Config File
@@ -319,7 +417,7 @@ public class Server implements Runnable {
                  * invalid key message
                  */
                 String key = st.nextToken().toUpperCase();
-                if (keyList.contains(key)) {
+                if (!rooms.claimKey(key)) {
                     pw.println("ERROR:Key already in use, Please try another key or " +
                             "logout where the first key is in use");
                     pw.flush();
@@ -346,11 +444,31 @@ public class Server implements Runnable {
                         pw.println("ERROR:Validation server down, please try again later");
                         pw.flush();
                         System.exit(-1);
+                    } finally {
+                        //The room is named after the key, without one the key is free again
+                        if (rooms.get(key) == null) {
+                            rooms.freeKey(key);
+                        }
                     }
                 }
+            } else if (requestType.equalsIgnoreCase("PERF")) {
+                /* Hands, actions, bytes and player response times of a room,
+                 * or of every room with ALL or no room */
+                String roomName = st.hasMoreTokens() ? st.nextToken() : "ALL";
+                if (roomName.equalsIgnoreCase("ALL")) {
+                    pw.println(getMetrics());
+                } else {
+                    Room r = rooms.get(roomName);
+                    pw.println(r == null ? "ERROR:No room named " + roomName : r.getMetrics() + "||");
+                }
+                pw.flush();
+            } else if (requestType.equalsIgnoreCase("METRICS")) {
+                /* Every metric in the Prometheus text format */
+                pw.print(exporter.export());
+                pw.flush();
             } else if (requestType.equalsIgnoreCase("GETINFO")) {
                 /* Monitor Script, return some stats to the python monitor */
-                pw.println("Rooms in Use: " + rooms.size() + ": Keys In Use: " + keyList.size());
+                pw.println("Rooms in Use: " + rooms.size() + ": Keys In Use: " + rooms.getKeyCount());
                 pw.flush();
             } else {
                 pw.println("Invalid request: " + requestType);
@@ -373,13 +491,17 @@ public class Server implements Runnable {
             pw.flush();
             seed = new Integer(st.nextToken()).intValue();
             config = st.nextToken();
-            int port = new Random().nextInt(1000) + PORT;
-            while (portList.contains(port)) {
-                port = new Random().nextInt(1000) + PORT;
+            int port = 0;
+            if (!sharedPort) {
+                port = rooms.reservePort(key);
+            }
+            try {
+                parseConfigFile("config/"+config, key, seed, port);
+            } finally {
+                if (rooms.get(key) == null) {
+                    rooms.releasePort(port, key);
+                }
             }
-            portList.add(port);
-            keyList.add(key);
-            parseConfigFile("config/"+config, key, seed, port);
         }
 
         /**
@@ -408,6 +530,24 @@ public class Server implements Runnable {
             return userName + ":" + seed + ":" + config;
         }
 
+        /**
+         * Hand this connection over to the named room.  Everything the player
+         * sends after the JOIN line goes to the room.
+         * @param roomName The name of the room to join
+         */
+        private void join(String roomName) {
+            Room r = rooms.get(roomName);
+            if (r != null && r.isAlive()) {
+                r.join(connection);
+                joined = true;
+                logInfo("Connection from " + connection.getRemoteAddress() +
+                        " joined room " + roomName);
+                return;
+            }
+            pw.println("ERROR:No room named " + roomName);
+            pw.flush();
+        }
+
         /**
          * Get the status for a given room name, or for all the rooms if ALL is
          * specified as the argument.  Rooms are delimited by ||
@@ -415,15 +555,18 @@ public class Server implements Runnable {
          * @return The status of a given room or all the rooms
          */
         private String getStatus(String roomName) {
-            String status = "";
-            for (Room r : rooms) {
-                if (roomName.equalsIgnoreCase("All") ||
-                        r.getName().equalsIgnoreCase(roomName)) {
-                    status += r.getStatus();
+            StringBuilder status = new StringBuilder();
+            if (roomName.equalsIgnoreCase("All")) {
+                for (Room r : rooms.getRooms()) {
+                    status.append(r.getStatus()).append("||");
+                }
+            } else {
+                Room r = rooms.get(roomName);
+                if (r != null) {
+                    status.append(r.getStatus()).append("||");
                 }
-                status += "||";
             }
-            return status;
+            return status.toString();
         }
 
         /**
@@ -432,11 +575,11 @@ public class Server implements Runnable {
          * @return
          */
         private String getRooms() {
-            String roomList = "";
-            for (Room r : rooms) {
-                roomList += r.toString() + "||";
+            StringBuilder roomList = new StringBuilder();
+            for (Room r : rooms.getRooms()) {
+                roomList.append(r.toString()).append("||");
             }
-            return roomList;
+            return roomList.toString();
         }
 
         /**
@@ -525,7 +668,7 @@ public class Server implements Runnable {
                         logError("IOException for gamedef file: " + gamedefPath);
                         return;
                     }
-                    if (port == 0) {
+                    if (port == 0 && !sharedPort) {
                         port = parser.getIntFromNode(roomNode, "Port");
                     }
                     try {
@@ -535,9 +678,14 @@ public class Server implements Runnable {
                         } else {
                             r = new Room(name, gamedef, port);
                         }
-                        Thread t = new Thread(r);
-                        t.start();
-                        rooms.add(r);
+                        if (!rooms.add(r)) {
+                            r.shutdown();
+                            logError("Room name " + name + " already in use");
+                            pw.println("ERROR:Room name " + name + " already in use");
+                            pw.flush();
+                            return;
+                        }
+                        Threads.start(r, "Room-" + name);
                     } catch (IOException ex) {
                         logError("Caught IO Exception while trying to parse config file" +ex.toString());
                         logError(ex.getStackTrace().toString());                
@@ -549,7 +697,12 @@ public class Server implements Runnable {
                 }
             }
             //Get the BotList info            
-            BotManager bm = new BotManager(port);
+            BotManager bm;
+            if (port == 0) {
+                bm = new BotManager(PORT, name);
+            } else {
+                bm = new BotManager(port);
+            }
             nl = parser.parseElements("Bot");
             for (int i = 0; i < nl.getLength(); i++) {
                 Node botNode = nl.item(i);
@@ -563,7 +716,11 @@ public class Server implements Runnable {
                 }
             }
             bm.startBots();
-            pw.println("New room started on port:" + port);
+            if (port == 0) {
+                pw.println("New room started on port:" + PORT + ":Room:" + name);
+            } else {
+                pw.println("New room started on port:" + port);
+            }
             pw.flush();
         }
 
@@ -573,16 +730,20 @@ public class Server implements Runnable {
          * @param roomName The name of the room to kill
          */
         private void kill(String roomName) throws IOException {
-            for (Room r : rooms) {
-                if (roomName.equalsIgnoreCase("ALL") ||
-                        r.getName().equalsIgnoreCase(roomName)) {
+            if (roomName.equalsIgnoreCase("ALL")) {
+                for (Room r : rooms.getRooms()) {
                     r.shutdown();
                     pw.println("Room " + roomName + " shutting down");
                     pw.flush();
                 }
-            }
-            if (roomName.equalsIgnoreCase("ALL")) {
                 killServer();
+                return;
+            }
+            Room r = rooms.get(roomName);
+            if (r != null) {
+                r.shutdown();
+                pw.println("Room " + roomName + " shutting down");
+                pw.flush();
             }
         }
 
@@ -597,16 +758,26 @@ public class Server implements Runnable {
             pw.println("Server shutting down");
             pw.flush();
             alive = false;
+            synchronized (lock) {
+                lock.notifyAll();
+            }
         }
     }
 
     /**
      * Start the server from the command line.  Can also be started via the class
-     * @param args Command line args
+     * @param args Command line args, -shared to have all rooms share the
+     * server's port
      */
     public static void main(String[] args) {
         try {
-            Server instance = new Server();
+            boolean shared = false;
+            for (String arg : args) {
+                if (arg.equalsIgnoreCase("-shared")) {
+                    shared = true;
+                }
+            }
+            Server instance = new Server(shared);
             Thread t = new Thread(instance);
             t.start();
             while (t.isAlive()) {
@@ -0,0 +1,106 @@
+package glassfrog.tools;
+
+import glassfrog.model.BatchResult;
+import glassfrog.model.BatchRunner;
+import glassfrog.model.Gamedef;
+import glassfrog.players.Player;
+import glassfrog.players.PlayerFactory;
+import glassfrog.players.RandomLimitPlayer;
+import glassfrog.players.StringPlayer;
+import java.util.LinkedList;
+
+/**
+ * Play a batch of matches between in process players from the command line
+ * and print the totals for each seat.  Usage:
+ *
+ * java -cp GlassFrog.jar glassfrog.tools.BatchMatch [-threads N] [-hands N]
+ * [-matches] [-duplicate] gamedef firstSeed numMatches player player...
+ *
+ * A player is RandomLimit, a RandomLimitPlayer seeded from the match seed, or
+ * String:actions, a StringPlayer with a "|" delimited action string.  With
+ * -matches the result of every match is printed as well, and with -duplicate
+ * each seed is played as a duplicate match.
+ * @author jdavidso
+ */
+public class BatchMatch {
+
+    /**
+     * Get a factory for a player from the command line
+     * @param spec RandomLimit or String:actions
+     * @return A factory for the player
+     */
+    private static PlayerFactory parsePlayer(final String spec) {
+        if (spec.equalsIgnoreCase("RandomLimit")) {
+            return new PlayerFactory() {
+
+                public Player newPlayer(int seat, int buyIn, int matchSeed) {
+                    return new RandomLimitPlayer("RandomLimit" + seat, buyIn, seat,
+                            matchSeed * 31 + seat);
+                }
+            };
+        } else if (spec.startsWith("String:")) {
+            final String actions = spec.substring("String:".length());
+            return new PlayerFactory() {
+
+                public Player newPlayer(int seat, int buyIn, int matchSeed) {
+                    return new StringPlayer("String" + seat, buyIn, seat, actions);
+                }
+            };
+        }
+        throw new IllegalArgumentException("Unknown player " + spec);
+    }
+
+    /**
+     * Run the batch
+     * @param args The command line, see the class description
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hands = -1;
+        boolean printMatches = false;
+        boolean duplicate = false;
+        int arg = 0;
+        while (arg < args.length && args[arg].startsWith("-")) {
+            if (args[arg].equals("-threads")) {
+                threads = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-hands")) {
+                hands = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-matches")) {
+                printMatches = true;
+            } else if (args[arg].equals("-duplicate")) {
+                duplicate = true;
+            } else {
+                break;
+            }
+            arg++;
+        }
+        if (args.length - arg < 5) {
+            System.err.println("Usage: BatchMatch [-threads N] [-hands N] [-matches] [-duplicate] " +
+                    "gamedef firstSeed numMatches player player...");
+            System.exit(1);
+        }
+        Gamedef gamedef = new Gamedef(args[arg++]);
+        int firstSeed = Integer.parseInt(args[arg++]);
+        int numMatches = Integer.parseInt(args[arg++]);
+        LinkedList<PlayerFactory> factories = new LinkedList<PlayerFactory>();
+        while (arg < args.length) {
+            factories.add(parsePlayer(args[arg++]));
+        }
+
+        BatchRunner runner = new BatchRunner(gamedef, factories);
+        runner.setThreads(threads);
+        runner.setDuplicate(duplicate);
+        long start = System.currentTimeMillis();
+        BatchResult result = hands < 0 ? runner.run(firstSeed, numMatches) :
+            runner.run(firstSeed, numMatches, hands);
+        long time = System.currentTimeMillis() - start;
+        if (printMatches) {
+            for (int i = 0; i < result.getNumMatches(); i++) {
+                System.out.println(result.getResult(i));
+            }
+        }
+        System.out.print(result);
+        System.out.println("TIME:" + time + "ms:Threads:" + runner.getThreads() +
+                ":HandsPerSecond:" + (result.getHandsPlayed() * 1000 / Math.max(time, 1)));
+    }
+}
@@ -0,0 +1,118 @@
+package glassfrog.tools;
+
+import glassfrog.handevaluator.EvaluateCard;
+import glassfrog.handevaluator.HandRanker;
+import glassfrog.handevaluator.LegacyHandRanker;
+import glassfrog.handevaluator.TableHandRanker;
+
+/**
+ * This class is used to check a HandRanker against the original HandEvaluator.
+ * Every combination of 5, 6 and 7 cards from the deck is ranked by both and any
+ * hand where the ranks differ is printed.  Run this after any change to the
+ * evaluators, the 7 card pass takes a couple of minutes.
+ */
+public class EvaluatorCheck {
+
+    private static final int MAX_REPORTED = 20;
+
+    private HandRanker expected;
+    private HandRanker actual;
+    private int[] cards = new int[7];
+    private long checked;
+    private long mismatches;
+
+    /**
+     * Set up a check of one ranker against another
+     * @param expected The reference HandRanker
+     * @param actual The HandRanker being checked
+     */
+    public EvaluatorCheck(HandRanker expected, HandRanker actual) {
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    /**
+     * Compare the rankers over every combination of numCards cards
+     * @param numCards The number of cards in each hand, 5 to 7
+     * @return The number of hands where the rankers disagree
+     */
+    public long checkAll(int numCards) {
+        checked = 0;
+        mismatches = 0;
+        enumerate(0, 0, numCards);
+        return mismatches;
+    }
+
+    /**
+     * Get the number of hands compared by the last checkAll call
+     * @return The number of hands compared
+     */
+    public long getChecked() {
+        return checked;
+    }
+
+    /**
+     * Recursively fill the card array with every combination of cards
+     * @param depth The next index of the card array to fill
+     * @param first The lowest card index that may be used at this depth
+     * @param numCards The number of cards in each hand
+     */
+    private void enumerate(int depth, int first, int numCards) {
+        if (depth == numCards) {
+            checked++;
+            int e = expected.rankCards(cards, numCards);
+            int a = actual.rankCards(cards, numCards);
+            if (e != a) {
+                if (mismatches++ < MAX_REPORTED) {
+                    System.out.println("Mismatch for " + cardsToString(numCards) +
+                            ": expected " + e + " got " + a);
+                }
+            }
+            return;
+        }
+        for (int c = first; c <= EvaluateCard.NUM_CARDS - (numCards - depth); c++) {
+            cards[depth] = c;
+            enumerate(depth + 1, c + 1, numCards);
+        }
+    }
+
+    /**
+     * Print the current cards
+     * @param numCards The number of cards to print
+     * @return A space delimited string of the cards
+     */
+    private String cardsToString(int numCards) {
+        String s = "";
+        for (int i = 0; i < numCards; i++) {
+            s += new EvaluateCard(cards[i]).toString() + " ";
+        }
+        return s.trim();
+    }
+
+    /**
+     * Check the table ranker against the legacy evaluator from the command line.
+     * @param args Optionally the hand sizes to check, defaults to 5 6 7
+     */
+    public static void main(String[] args) {
+        int[] sizes = new int[]{5, 6, 7};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        EvaluatorCheck check = new EvaluatorCheck(new LegacyHandRanker(),
+                TableHandRanker.getInstance());
+        long failures = 0;
+        for (int numCards : sizes) {
+            long start = System.currentTimeMillis();
+            long bad = check.checkAll(numCards);
+            System.out.println(numCards + " cards: " + check.getChecked() + " hands, " +
+                    bad + " mismatches in " + (System.currentTimeMillis() - start) + "ms");
+            failures += bad;
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package glassfrog.tools;
+
+import glassfrog.model.HandHistory;
+import glassfrog.model.HandRecord;
+import glassfrog.model.MatchHeader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read a binary hand history (see {@link HandHistory}) through a memory map.
+ * When the reader is opened it walks the record headers once, without
+ * decoding the hands, and builds an index of where each hand starts, so any
+ * hand can be found by its number without reading the file again.  The hands
+ * are decoded as they are asked for, either one at a time or with an
+ * iterator over the whole match.
+ *
+ * Files larger than a single map are read through a window of the file that
+ * is moved along as needed.  A record cut off at the end of the file, as
+ * after a crash, is left out.
+ *
+ * java -cp GlassFrog.jar glassfrog.tools.HandHistoryReader file.hh [handNumber]
+ * prints the score of each player over the file, or one hand.
+ * @author jdavidso
+ */
+public class HandHistoryReader implements Iterable<HandRecord> {
+
+    private static final long WINDOW = 64L << 20;
+    private static final int MAX_RECORD_HEADER = 6;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private MatchHeader[] headers = new MatchHeader[1];
+    private int numHeaders;
+    private long[] handOffsets = new long[1024];
+    private int[] handLengths = new int[1024];
+    private int[] handNumbers = new int[1024];
+    private int[] handHeaders = new int[1024];
+    private int numHands;
+    private boolean ordered = true;
+
+    /**
+     * Open a hand history and index its hands
+     * @param path The .hh file
+     * @throws java.io.IOException if the file can't be read or isn't a hand
+     * history
+     */
+    public HandHistoryReader(String path) throws IOException {
+        file = new RandomAccessFile(new File(path), "r");
+        channel = file.getChannel();
+        size = channel.size();
+        try {
+            buildIndex();
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            close();
+            throw new IOException("Could not read hand history " + path + ": " + ex.toString());
+        }
+    }
+
+    /**
+     * Walk the records and note where each header and hand starts
+     * @throws java.io.IOException on a read error
+     */
+    private void buildIndex() throws IOException {
+        long offset = 0;
+        while (offset < size) {
+            ByteBuffer in = map(offset, (int) Math.min(MAX_RECORD_HEADER, size - offset));
+            int type = in.get();
+            int length;
+            try {
+                length = HandHistory.getInt(in);
+            } catch (RuntimeException ex) {
+                break;
+            }
+            long bodyOffset = windowStart + in.position();
+            if (bodyOffset + length > size) {
+                break;
+            }
+            if (type == HandHistory.HEADER) {
+                if (numHeaders == headers.length) {
+                    MatchHeader[] grown = new MatchHeader[numHeaders * 2];
+                    System.arraycopy(headers, 0, grown, 0, numHeaders);
+                    headers = grown;
+                }
+                headers[numHeaders++] = new MatchHeader(map(bodyOffset, length));
+            } else if (type == HandHistory.HAND) {
+                if (numHeaders == 0) {
+                    throw new IOException("Hand record before the header");
+                }
+                if (numHands == handOffsets.length) {
+                    growHands();
+                }
+                int handNumber = HandHistory.getInt(map(bodyOffset, length));
+                if (numHands > 0 && handNumber <= handNumbers[numHands - 1]) {
+                    ordered = false;
+                }
+                handOffsets[numHands] = bodyOffset;
+                handLengths[numHands] = length;
+                handNumbers[numHands] = handNumber;
+                handHeaders[numHands] = numHeaders - 1;
+                numHands++;
+            }
+            offset = bodyOffset + length;
+        }
+    }
+
+    private void growHands() {
+        long[] offsets = new long[numHands * 2];
+        int[] lengths = new int[numHands * 2];
+        int[] numbers = new int[numHands * 2];
+        int[] owners = new int[numHands * 2];
+        System.arraycopy(handOffsets, 0, offsets, 0, numHands);
+        System.arraycopy(handLengths, 0, lengths, 0, numHands);
+        System.arraycopy(handNumbers, 0, numbers, 0, numHands);
+        System.arraycopy(handHeaders, 0, owners, 0, numHands);
+        handOffsets = offsets;
+        handLengths = lengths;
+        handNumbers = numbers;
+        handHeaders = owners;
+    }
+
+    /**
+     * Get a buffer over part of the file, moving the mapped window if the part
+     * isn't in it.  The buffer is positioned at the start of the part and
+     * limited to its end.
+     * @param offset Where the part starts in the file
+     * @param length The length of the part
+     * @return A buffer over the part
+     * @throws java.io.IOException if the file can't be mapped
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart ||
+                offset + length > windowStart + window.capacity()) {
+            long mapSize = Math.min(Math.max(WINDOW, length), size - offset);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapSize);
+            windowStart = offset;
+        }
+        ByteBuffer part = window.duplicate();
+        int start = (int) (offset - windowStart);
+        part.limit(start + length);
+        part.position(start);
+        return part;
+    }
+
+    /**
+     * Get the number of complete hands in the file
+     * @return the number of hands
+     */
+    public int getNumHands() {
+        return numHands;
+    }
+
+    /**
+     * Get the number of header records in the file, one for each time the
+     * dealer opened its logs
+     * @return the number of headers
+     */
+    public int getNumHeaders() {
+        return numHeaders;
+    }
+
+    /**
+     * Get a header
+     * @param index The index of the header in the file
+     * @return the header
+     */
+    public MatchHeader getHeader(int index) {
+        return headers[index];
+    }
+
+    /**
+     * Get the header that a hand was played under
+     * @param index The index of the hand in the file
+     * @return the header
+     */
+    public MatchHeader getHeaderOf(int index) {
+        return headers[handHeaders[index]];
+    }
+
+    /**
+     * Get the hand number of a hand
+     * @param index The index of the hand in the file
+     * @return the hand number
+     */
+    public int getHandNumber(int index) {
+        return handNumbers[index];
+    }
+
+    /**
+     * Decode a hand
+     * @param index The index of the hand in the file
+     * @return The hand
+     * @throws java.io.IOException if the file can't be mapped
+     */
+    public HandRecord getHand(int index) throws IOException {
+        if (index < 0 || index >= numHands) {
+            throw new IndexOutOfBoundsException("No hand at index " + index);
+        }
+        return new HandRecord(headers[handHeaders[index]], map(handOffsets[index], handLengths[index]));
+    }
+
+    /**
+     * Find a hand by its hand number
+     * @param handNumber The hand number
+     * @return The index of the last hand in the file with that number, or -1
+     * if there is none
+     */
+    public int indexOfHand(int handNumber) {
+        if (ordered) {
+            int low = 0;
+            int high = numHands - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (handNumbers[mid] < handNumber) {
+                    low = mid + 1;
+                } else if (handNumbers[mid] > handNumber) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+        for (int i = numHands - 1; i >= 0; i--) {
+            if (handNumbers[i] == handNumber) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Iterate over the hands in file order
+     * @return an iterator over the hands
+     */
+    public Iterator<HandRecord> iterator() {
+        return new Iterator<HandRecord>() {
+
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < numHands;
+            }
+
+            public HandRecord next() {
+                if (next >= numHands) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return getHand(next++);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex.toString());
+                }
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Close the file
+     * @throws java.io.IOException on a close error
+     */
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    /**
+     * Print the players' scores over a hand history, or one of its hands
+     * @param args file [handNumber]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: HandHistoryReader file.hh [handNumber]");
+            System.exit(1);
+        }
+        HandHistoryReader reader = new HandHistoryReader(args[0]);
+        try {
+            if (args.length == 2) {
+                int index = reader.indexOfHand(Integer.parseInt(args[1]));
+                if (index < 0) {
+                    System.err.println("No hand " + args[1]);
+                    System.exit(1);
+                }
+                HandRecord hand = reader.getHand(index);
+                MatchHeader header = reader.getHeaderOf(index);
+                System.out.println(hand.getHand());
+                for (int p = 0; p < hand.getNumPlayers(); p++) {
+                    System.out.println("POSITION:" + p + ":Name:" +
+                            header.getName(header.indexOfSeat(hand.getSeat(p))) +
+                            ":Net:" + hand.getNet(p));
+                }
+                return;
+            }
+            if (reader.getNumHeaders() == 0) {
+                System.out.println("HANDS:0");
+                return;
+            }
+            MatchHeader header = reader.getHeader(0);
+            int[] scores = new int[header.getNumPlayers()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = header.getScore(i);
+            }
+            for (HandRecord hand : reader) {
+                for (int p = 0; p < hand.getNumPlayers(); p++) {
+                    scores[header.indexOfSeat(hand.getSeat(p))] += hand.getScoreChange(p);
+                }
+            }
+            System.out.println("HANDS:" + reader.getNumHands() + ":Seed:" + header.getSeed());
+            for (int i = 0; i < scores.length; i++) {
+                System.out.println("PLAYER:Name:" + header.getName(i) + ":Seat:" +
+                        header.getSeat(i) + ":Score:" + scores[i]);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
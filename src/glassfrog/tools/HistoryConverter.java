@@ -0,0 +1,260 @@
+package glassfrog.tools;
+
+import glassfrog.model.GameState;
+import glassfrog.model.Hand;
+import glassfrog.model.HandHistory;
+import glassfrog.model.HandRecord;
+import glassfrog.model.MatchHeader;
+import glassfrog.model.MatchStateEncoder;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Write a binary hand history back out as the rawlog or divatlog the dealer
+ * would have written.  Usage:
+ *
+ * java -cp GlassFrog.jar glassfrog.tools.HistoryConverter [-divat] file.hh
+ *
+ * The log is written to standard out.  The file is read one record at a time,
+ * so a history of any size can be converted.
+ * @author jdavidso
+ */
+public class HistoryConverter {
+
+    private final Writer out;
+    private final boolean divat;
+    private final MatchStateEncoder encoder = new MatchStateEncoder();
+    private MatchHeader header;
+    private int[] scores;
+
+    /**
+     * Set up a converter
+     * @param out Where to write the log
+     * @param divat True to write the divatlog, False for the rawlog
+     */
+    public HistoryConverter(Writer out, boolean divat) {
+        this.out = out;
+        this.divat = divat;
+    }
+
+    /**
+     * Convert every record of a hand history
+     * @param in The hand history
+     * @throws java.io.IOException on a read or write error
+     */
+    public void convert(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        byte[] body = new byte[256];
+        int type;
+        while ((type = data.read()) >= 0) {
+            int length = readVarint(data);
+            if (length > body.length) {
+                body = new byte[Math.max(length, body.length * 2)];
+            }
+            data.readFully(body, 0, length);
+            ByteBuffer record = ByteBuffer.wrap(body, 0, length);
+            if (type == HandHistory.HEADER) {
+                header = new MatchHeader(record);
+                scores = new int[header.getNumPlayers()];
+                for (int i = 0; i < scores.length; i++) {
+                    scores[i] = header.getScore(i);
+                }
+            } else if (type == HandHistory.HAND) {
+                if (header == null) {
+                    throw new IOException("Hand record before the header");
+                }
+                HandRecord hand = new HandRecord(header, record);
+                if (divat) {
+                    writeDivat(hand);
+                } else {
+                    writeRaw(hand);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Write the rawlog lines of a hand, in the order the dealer logs them
+     * @param record The hand
+     * @throws java.io.IOException on a write error
+     */
+    private void writeRaw(HandRecord record) throws IOException {
+        Hand hand = record.getHand();
+        int handNumber = record.getHandNumber();
+        int numPlayers = record.getNumPlayers();
+        GameState gamestate = new GameState();
+        writeLine(hand.toString());
+        for (int event = 0; event < record.getNumEvents(); event++) {
+            switch (record.getEventType(event)) {
+                case HandHistory.EVENT_ROUND:
+                    gamestate.nextRound();
+                    break;
+                case HandHistory.EVENT_BLIND:
+                    gamestate.addAction('b', record.getAmount(event), true);
+                    break;
+                case HandHistory.EVENT_ACTION:
+                    int position = record.getPosition(event);
+                    String sent = null;
+                    for (int p = 0; p < numPlayers; p++) {
+                        String state = encoder.encode(p, handNumber, gamestate.getActionString(),
+                                hand, gamestate.getRound());
+                        writeLine(state);
+                        if (p == position) {
+                            sent = state;
+                        }
+                    }
+                    if (record.getResponseKind(event) == HandHistory.RESPONSE_ECHO) {
+                        writeLine(sent + ":" + record.getResponseText(event));
+                    } else if (record.getResponseKind(event) == HandHistory.RESPONSE_VERBATIM) {
+                        writeLine(record.getResponseText(event));
+                    }
+                    gamestate.addAction(record.getAction(event), record.getAmount(event),
+                            record.isAmountShown(event));
+                    break;
+                case HandHistory.EVENT_END:
+                    for (int p = 0; p < numPlayers; p++) {
+                        writeLine(encoder.encode(p, handNumber, gamestate.getActionString(),
+                                hand, gamestate.getRound()));
+                    }
+                    break;
+            }
+        }
+        for (int pot = 0; pot < record.getNumPots(); pot++) {
+            if (record.isShowdown(pot)) {
+                for (int p = 0; p < numPlayers; p++) {
+                    writeLine(encoder.encodeShowdown(p, handNumber, gamestate.getActionString(), hand));
+                }
+            }
+        }
+
+        StringBuilder stats = new StringBuilder();
+        stats.append("STATS:Current Player:").append(record.getCurrentPlayer());
+        stats.append(":Hands Played:").append(handNumber + 1).append('\n');
+        for (int p = 0; p < numPlayers; p++) {
+            int index = header.indexOfSeat(record.getSeat(p));
+            scores[index] += record.getScoreChange(p);
+            stats.append(header.getPrefix(index)).append("PLAYER:Name:").append(header.getName(index));
+            stats.append(":Stack:").append(header.getBuyIn(index) + record.getNet(p));
+            stats.append(":Seat:").append(record.getSeat(p));
+            stats.append(":Position:").append((p + 1) % numPlayers);
+            stats.append(":Score:").append(scores[index]).append('\n');
+        }
+        writeLine(stats.toString());
+    }
+
+    /**
+     * Write the divatlog lines of a hand, one for each pot, as the dealer
+     * does for heads up limit games
+     * @param record The hand
+     * @throws java.io.IOException on a write error
+     */
+    private void writeDivat(HandRecord record) throws IOException {
+        if (!header.isDivatLogged()) {
+            return;
+        }
+        Hand hand = record.getHand();
+        int numPlayers = record.getNumPlayers();
+        GameState gamestate = new GameState();
+        for (int event = 0; event < record.getNumEvents(); event++) {
+            switch (record.getEventType(event)) {
+                case HandHistory.EVENT_ROUND:
+                    gamestate.nextRound();
+                    break;
+                case HandHistory.EVENT_BLIND:
+                    gamestate.addAction('b', record.getAmount(event), true);
+                    break;
+                case HandHistory.EVENT_ACTION:
+                    gamestate.addAction(record.getAction(event), record.getAmount(event),
+                            record.isAmountShown(event));
+                    break;
+            }
+        }
+        for (int pot = 0; pot < record.getNumPots(); pot++) {
+            String divatLine = record.getHandNumber() + ":";
+            for (int p = 0; p < numPlayers; p++) {
+                divatLine += header.getName(header.indexOfSeat(record.getSeat(p))) + ",";
+            }
+            divatLine = divatLine.substring(0, divatLine.length() - 1);
+            divatLine += ":" + 0;
+            divatLine += gamestate.getActionString() + ":";
+            for (int r = 0; r <= gamestate.getRound(); r++) {
+                String privateCards = "";
+                for (int p = 0; p < numPlayers; p++) {
+                    privateCards = hand.getPrivateCardsString(p, r);
+                    if (!privateCards.isEmpty()) {
+                        divatLine += privateCards + ",";
+                    }
+                }
+                if (!privateCards.isEmpty()) {
+                    divatLine = divatLine.substring(0, divatLine.length() - 1);
+                    divatLine += "|";
+                }
+                String publicCards = hand.getPublicCardsString(r);
+                if (!publicCards.isEmpty()) {
+                    divatLine += "/" + publicCards;
+                }
+            }
+            divatLine += ":";
+            for (int p = 0; p < numPlayers; p++) {
+                divatLine += record.getNet(pot, p) + ",";
+            }
+            divatLine = divatLine.substring(0, divatLine.length() - 1);
+            writeLine(divatLine);
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+    }
+
+    /**
+     * Read a record length from the stream
+     * @param in The stream
+     * @return The length
+     * @throws java.io.IOException on a read error or a cut off record
+     */
+    private static int readVarint(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Hand history ends inside a record");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad record length");
+    }
+
+    /**
+     * Convert a hand history file to standard out
+     * @param args [-divat] file
+     */
+    public static void main(String[] args) throws IOException {
+        boolean divat = args.length > 0 && args[0].equals("-divat");
+        int arg = divat ? 1 : 0;
+        if (args.length - arg != 1) {
+            System.err.println("Usage: HistoryConverter [-divat] file.hh");
+            System.exit(1);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        FileInputStream in = new FileInputStream(args[arg]);
+        try {
+            new HistoryConverter(out, divat).convert(in);
+        } finally {
+            in.close();
+        }
+    }
+}
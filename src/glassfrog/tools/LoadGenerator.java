@@ -0,0 +1,547 @@
+package glassfrog.tools;
+
+import glassfrog.model.Gamedef;
+import glassfrog.model.LatencyHistogram;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LoadGenerator puts a running {@link glassfrog.server.Server} on this
+ * host under load so the host can be sized before a competition.  It starts
+ * a number of rooms with the server's NEW request and seats two simulated
+ * socket bots in each, which connect as a SocketPlayer would, speak the
+ * Version:1.0.0 MATCHSTATE protocol and answer each state with a random
+ * action after a think time.  Usage:
+ *
+ * java -cp GlassFrog.jar glassfrog.tools.LoadGenerator [-port N] [-rooms N]
+ * [-think ms] [-jitter ms] [-duration s] [-report s] [-name prefix] gamedef
+ *
+ * The gamedef path is sent to the server, so it must be the same file for
+ * both, for instance gamedef/2Player.limit.gamedef.xml run from the server's
+ * folder.  Only heads up games can be driven.  Every report interval a LOAD
+ * line is printed with the hands played, hands a second, the round trip time
+ * of the bots' actions, from sending an action to reading the server's next
+ * state, as percentiles in milliseconds, and the number of failures: rooms
+ * that could not be started, bots that could not connect and bots that were
+ * disconnected.  When the duration is up, or every match is over, the rooms
+ * are killed and the totals are printed.
+ * @author jdavidso
+ */
+public class LoadGenerator {
+
+    private static final String HOST = "localhost";
+    private static final String VERSION = "Version:1.0.0";
+    private static final int CONNECT_ATTEMPTS = 5;
+    private static final int CONNECT_RETRY = 200;
+    private static final double FOLD_CHANCE = 0.1;
+    private static final double RAISE_CHANCE = 0.3;
+    private final int serverPort;
+    private final String gamedefPath;
+    private final Gamedef gamedef;
+    private final int thinkTime;
+    private final int thinkJitter;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong hands = new AtomicLong();
+    private final AtomicLong actions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final ArrayList<String> roomNames = new ArrayList<String>();
+    private final ArrayList<Bot> bots = new ArrayList<Bot>();
+    private volatile boolean stopping = false;
+    private long startTime;
+
+    /**
+     * Build a load generator for a server
+     * @param serverPort The server's port
+     * @param gamedefPath The path to the gamedef the rooms play
+     * @param thinkTime The least time in milliseconds a bot takes to act
+     * @param thinkJitter The most time in milliseconds added at random to
+     * the think time
+     * @throws java.lang.Exception if the gamedef can't be read
+     */
+    public LoadGenerator(int serverPort, String gamedefPath, int thinkTime,
+            int thinkJitter) throws Exception {
+        this.serverPort = serverPort;
+        this.gamedefPath = gamedefPath;
+        this.gamedef = new Gamedef(gamedefPath);
+        this.thinkTime = thinkTime;
+        this.thinkJitter = thinkJitter;
+        if (gamedef.getMinPlayers() != 2) {
+            throw new IllegalArgumentException("LoadGenerator only drives heads up games");
+        }
+    }
+
+    /**
+     * Start the rooms and seat the bots in them
+     * @param numRooms The number of rooms to start
+     * @param prefix The start of the room names, which are numbered from 0
+     */
+    public void start(int numRooms, String prefix) {
+        startTime = System.nanoTime();
+        for (int i = 0; i < numRooms; i++) {
+            String name = prefix + i;
+            int port = newRoom(name);
+            if (port < 0) {
+                continue;
+            }
+            roomNames.add(name);
+            boolean join = port == serverPort;
+            for (int seat = 0; seat < gamedef.getMinPlayers(); seat++) {
+                Bot bot = new Bot(name, seat, join ? serverPort : port, join);
+                bots.add(bot);
+                Threads.startDaemon(bot, "LoadBot-" + name + "-" + seat);
+            }
+        }
+    }
+
+    /**
+     * Check to see if every bot has finished, either with its match over or
+     * disconnected
+     * @return True if no bot is playing
+     */
+    public boolean isDone() {
+        for (Bot bot : bots) {
+            if (!bot.done) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Disconnect the bots and kill the rooms that were started
+     */
+    public void stop() {
+        stopping = true;
+        if (!roomNames.isEmpty()) {
+            StringBuilder kill = new StringBuilder("KILL");
+            for (String name : roomNames) {
+                kill.append(':').append(name);
+            }
+            try {
+                request(kill.toString());
+            } catch (IOException ex) {
+                System.err.println("Could not kill the rooms: " + ex.toString());
+            }
+        }
+        for (Bot bot : bots) {
+            bot.close();
+        }
+    }
+
+    /**
+     * Start a room through the server's NEW request
+     * @param name The name of the room
+     * @return The port to connect to the room on, which is the server's port
+     * for a room joined through it, or -1 if the room couldn't be started
+     */
+    private int newRoom(String name) {
+        String reply;
+        try {
+            reply = request("NEW:" + name + ":" + gamedefPath);
+        } catch (IOException ex) {
+            failure("Could not start room " + name + ": " + ex.toString());
+            return -1;
+        }
+        if (reply == null || !reply.startsWith("New room")) {
+            failure("Could not start room " + name + ": " + reply);
+            return -1;
+        }
+        try {
+            return Integer.parseInt(reply.substring(reply.lastIndexOf(' ') + 1));
+        } catch (NumberFormatException ex) {
+            failure("Could not read the port of room " + name + ": " + reply);
+            return -1;
+        }
+    }
+
+    /**
+     * Send a request to the server and read the first line of the answer
+     * @param request The request line
+     * @return The answer, or null if the server closed the connection
+     * without one
+     * @throws java.io.IOException if the server can't be reached
+     */
+    private String request(String request) throws IOException {
+        Socket s = new Socket(HOST, serverPort);
+        try {
+            PrintWriter pw = new PrintWriter(s.getOutputStream());
+            BufferedReader br = new BufferedReader(new InputStreamReader(s.getInputStream()));
+            pw.println(request);
+            pw.flush();
+            return br.readLine();
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * Count a failure and say what it was
+     * @param message What failed
+     */
+    private void failure(String message) {
+        failures.incrementAndGet();
+        System.err.println(message);
+    }
+
+    /**
+     * Get the totals so far as a : delimited LOAD line.  Times are in
+     * milliseconds.
+     * @return The totals
+     */
+    public String getReport() {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("LOAD:Seconds:").append(String.format("%.1f", seconds));
+        sb.append(":Rooms:").append(roomNames.size());
+        sb.append(":Hands:").append(hands.get());
+        sb.append(":HandsPerSecond:").append(String.format("%.2f",
+                seconds <= 0 ? 0 : hands.get() / seconds));
+        sb.append(":Actions:").append(actions.get());
+        sb.append(":P50:").append(millis(latency.getPercentile(0.5)));
+        sb.append(":P90:").append(millis(latency.getPercentile(0.9)));
+        sb.append(":P99:").append(millis(latency.getPercentile(0.99)));
+        sb.append(":Max:").append(millis(latency.getMax()));
+        sb.append(":Failures:").append(failures.get());
+        return sb.toString();
+    }
+
+    /**
+     * Format a time for the report
+     * @param micros The time in microseconds
+     * @return The time in milliseconds to 3 places
+     */
+    private static String millis(long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+
+    /**
+     * Check to see if a hand is over: someone has folded or the cards of
+     * every position are shown
+     * @param betting The betting of a MATCHSTATE
+     * @param cards The cards of a MATCHSTATE
+     * @return True if the hand is over
+     */
+    static boolean isHandOver(String betting, String cards) {
+        if (betting.indexOf('f') >= 0) {
+            return true;
+        }
+        int end = cards.indexOf('/');
+        String[] privateCards = (end < 0 ? cards : cards.substring(0, end)).split("\\|", -1);
+        for (String c : privateCards) {
+            if (c.length() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Work out which position is to act in a heads up game from the betting.
+     * The first to act is the small blind before the flop with reversed
+     * blinds, and position 0 otherwise, and the players then take turns.  A
+     * round is over once it has had two actions and the last is a call, and
+     * a no limit hand is over once the whole stack is in the pot.
+     * @param betting The betting of a MATCHSTATE
+     * @return The position to act, or -1 if nobody is to act
+     */
+    int toAct(String betting) {
+        if (gamedef.isNoLimit() && committed(betting) >= gamedef.getStackSize()) {
+            return -1;
+        }
+        int round = 0;
+        int count = 0;
+        char last = 0;
+        for (int i = 0; i < betting.length(); i++) {
+            char c = betting.charAt(i);
+            if (c == '/') {
+                round++;
+                count = 0;
+                last = 0;
+            } else if (c == 'f' || c == 'c' || c == 'r') {
+                count++;
+                last = c;
+            }
+        }
+        if (count >= 2 && last == 'c') {
+            return -1;
+        }
+        int first = (round == 0 && gamedef.isReverseBlinds()) ? 1 : 0;
+        return (first + count) % 2;
+    }
+
+    /**
+     * Get the chips each player has put in the pot in the rounds that are
+     * over.  No limit amounts are what the bet went to in the round, so the
+     * largest amount of each round is what both players put in.
+     * @param betting The betting of a no limit MATCHSTATE
+     * @return The chips in the pot from each player before this round
+     */
+    static int committed(String betting) {
+        int committed = 0;
+        int roundBet = 0;
+        int amount = 0;
+        for (int i = 0; i < betting.length(); i++) {
+            char c = betting.charAt(i);
+            if (c >= '0' && c <= '9') {
+                amount = amount * 10 + (c - '0');
+                continue;
+            }
+            roundBet = Math.max(roundBet, amount);
+            amount = 0;
+            if (c == '/') {
+                committed += roundBet;
+                roundBet = 0;
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Get the amount the last bet or raise in the betting went to
+     * @param betting The betting of a no limit MATCHSTATE
+     * @return The amount, or 0 if there was none
+     */
+    static int lastBet(String betting) {
+        int pos = Math.max(betting.lastIndexOf('r'), betting.lastIndexOf('b'));
+        int amount = 0;
+        for (int i = pos + 1; pos >= 0 && i < betting.length(); i++) {
+            char c = betting.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            amount = amount * 10 + (c - '0');
+        }
+        return amount;
+    }
+
+    /**
+     * A Bot is one simulated socket player.  It connects to its room, reads
+     * MATCHSTATE lines and, when it is to act, waits the think time and sends
+     * the state back with a random action.  Each action's round trip time is
+     * recorded when the next line arrives, and the hands are counted by the
+     * bot in seat 0.
+     */
+    private class Bot implements Runnable {
+
+        private final String room;
+        private final int seat;
+        private final int port;
+        private final boolean join;
+        private final Random random;
+        private volatile Socket socket;
+        private volatile boolean done = false;
+
+        /**
+         * Build a bot for a seat in a room
+         * @param room The room name
+         * @param seat The seat to ask for
+         * @param port The port to connect on
+         * @param join True to join the room through the server's port
+         */
+        public Bot(String room, int seat, int port, boolean join) {
+            this.room = room;
+            this.seat = seat;
+            this.port = port;
+            this.join = join;
+            this.random = new Random(room.hashCode() * 31 + seat);
+        }
+
+        /**
+         * Connect and play until the match is over or the bot is stopped
+         */
+        public void run() {
+            try {
+                socket = connect();
+                if (socket == null) {
+                    return;
+                }
+                BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                PrintWriter pw = new PrintWriter(socket.getOutputStream());
+                if (join) {
+                    pw.println("JOIN:" + room);
+                }
+                pw.println("SocketPlayer:" + room + "-" + seat + ":" + gamedef.getStackSize() + ":" + seat);
+                pw.println(VERSION);
+                pw.flush();
+                play(br, pw);
+            } catch (IOException ex) {
+                if (!stopping) {
+                    failure("Bot " + seat + " in room " + room + " hit " + ex.toString());
+                }
+            } catch (InterruptedException ex) {
+            } finally {
+                done = true;
+                close();
+            }
+        }
+
+        /**
+         * Connect to the room, trying again a few times if the connection is
+         * refused
+         * @return The socket, or null if the bot couldn't connect
+         */
+        private Socket connect() throws InterruptedException {
+            for (int attempt = 1; !stopping; attempt++) {
+                try {
+                    Socket s = new Socket(HOST, port);
+                    s.setTcpNoDelay(true);
+                    return s;
+                } catch (IOException ex) {
+                    if (attempt >= CONNECT_ATTEMPTS) {
+                        failure("Bot " + seat + " could not connect to room " + room +
+                                " on port " + port + ": " + ex.toString());
+                        return null;
+                    }
+                    Thread.sleep(CONNECT_RETRY);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Answer the states sent by the room until the match is over
+         * @param br The reader for the room's lines
+         * @param pw The writer for the actions
+         */
+        private void play(BufferedReader br, PrintWriter pw) throws IOException,
+                InterruptedException {
+            long sent = 0;
+            int lastHandOver = -1;
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (sent != 0) {
+                    latency.record(System.nanoTime() - sent);
+                    sent = 0;
+                }
+                if (line.startsWith("#GAMEOVER")) {
+                    return;
+                }
+                if (!line.startsWith("MATCHSTATE:")) {
+                    continue;
+                }
+                String[] fields = line.split(":", -1);
+                if (fields.length != 5) {
+                    failure("Bot " + seat + " in room " + room + " could not read " + line);
+                    continue;
+                }
+                int position = Integer.parseInt(fields[1]);
+                int hand = Integer.parseInt(fields[2]);
+                String betting = fields[3];
+                if (isHandOver(betting, fields[4])) {
+                    if (seat == 0 && hand != lastHandOver) {
+                        hands.incrementAndGet();
+                    }
+                    lastHandOver = hand;
+                    continue;
+                }
+                if (toAct(betting) != position) {
+                    continue;
+                }
+                int think = thinkTime + (thinkJitter > 0 ? random.nextInt(thinkJitter + 1) : 0);
+                if (think > 0) {
+                    Thread.sleep(think);
+                }
+                pw.println(line + ":" + getAction(betting));
+                pw.flush();
+                sent = System.nanoTime();
+                actions.incrementAndGet();
+            }
+            if (!stopping) {
+                failure("Bot " + seat + " in room " + room + " was disconnected");
+            }
+        }
+
+        /**
+         * Pick a random action, mostly calls.  A no limit raise doubles the
+         * last bet, up to the rest of the stack.
+         * @param betting The betting so far
+         * @return f, c, r or rN
+         */
+        private String getAction(String betting) {
+            double sample = random.nextDouble();
+            if (sample < FOLD_CHANCE) {
+                return "f";
+            } else if (sample < FOLD_CHANCE + RAISE_CHANCE) {
+                if (gamedef.isNoLimit()) {
+                    int rest = gamedef.getStackSize() - committed(betting);
+                    return "r" + Math.min(Math.max(2 * lastBet(betting), 1), rest);
+                }
+                return "r";
+            }
+            return "c";
+        }
+
+        /**
+         * Close the bot's connection
+         */
+        public void close() {
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the load
+     * @param args The command line, see the class description
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 9000;
+        int numRooms = 10;
+        int think = 0;
+        int jitter = 0;
+        int duration = 60;
+        int report = 5;
+        String prefix = "Load" + System.currentTimeMillis() + "-";
+        int arg = 0;
+        while (arg < args.length - 1 && args[arg].startsWith("-")) {
+            if (args[arg].equals("-port")) {
+                port = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-rooms")) {
+                numRooms = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-think")) {
+                think = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-jitter")) {
+                jitter = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-duration")) {
+                duration = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-report")) {
+                report = Integer.parseInt(args[++arg]);
+            } else if (args[arg].equals("-name")) {
+                prefix = args[++arg];
+            } else {
+                break;
+            }
+            arg++;
+        }
+        if (args.length - arg != 1) {
+            System.err.println("Usage: LoadGenerator [-port N] [-rooms N] [-think ms] " +
+                    "[-jitter ms] [-duration s] [-report s] [-name prefix] gamedef");
+            System.exit(1);
+        }
+        LoadGenerator load = new LoadGenerator(port, args[arg], think, jitter);
+        load.start(numRooms, prefix);
+        long end = System.currentTimeMillis() + duration * 1000L;
+        long nextReport = System.currentTimeMillis() + report * 1000L;
+        while (System.currentTimeMillis() < end && !load.isDone()) {
+            Thread.sleep(100);
+            if (report > 0 && System.currentTimeMillis() >= nextReport) {
+                System.out.println(load.getReport());
+                nextReport += report * 1000L;
+            }
+        }
+        load.stop();
+        System.out.println(load.getReport());
+        System.exit(0);
+    }
+}
@@ -1,15 +1,13 @@
 package glassfrog.tools;
 
-import glassfrog.model.Dealer;
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import glassfrog.model.DealerSnapshot;
+import glassfrog.model.HandRecord;
+import glassfrog.model.MatchHeader;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InvalidClassException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.LinkedList;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,21 +15,31 @@ import java.util.logging.Logger;
 /**
  * This class is used to rebuild a match from a log file.  This is in the event
  * that there was a server crash, we need to rebuild a match from a log in order
- * to save a serialized version of the match at the point of the log.
+ * to save a snapshot of the match at the point of the log.
  * @author jdavidso
  */
 public class MatchRebuilder {   
 
+    private static final int CHUNK_SIZE = 8192;
+
     public MatchRebuilder() {}
 
     /**
      * Restore a match from the last state found in the log file.  Hopefully you
-     * don't loose the ser and log files, or you are sunk
-     * @return True on sucessfully resoring the dealer.ser file for the game
+     * don't loose the snapshot and log files, or you are sunk.
+     *
+     * Only the end of the log is read: it is searched backwards for the last
+     * STATS line that is followed by a line for every player, and the
+     * snapshot is moved on to that hand once.  A block cut off by a crash is
+     * skipped in favour of the one before it.
+     *
+     * A match logged with glassfrog.matchlog=binary has no rawlog, and is
+     * restored from the last hand in its hand history, logs/key.dealer.hh,
+     * instead.
+     * @return The snapshot of the match at the last hand in the log, which is
+     * also written to the dealer.snap file for the game
      */
-    public static Dealer restore(String key) throws FileNotFoundException, IOException, ClassNotFoundException {
-        FileInputStream fis = null;
-        BufferedReader br;
+    public static DealerSnapshot restore(String key) throws FileNotFoundException, IOException {
         int handNumber;
         String name;
         int stack;
@@ -39,33 +47,39 @@ public class MatchRebuilder {
         int position;
         int score;
         //Get the last saved file.  If one doesn't exist we will have to create it.
-        String filename = "save/" + key + ".dealer.ser";
-        fis = new FileInputStream(filename);
-        ObjectInputStream in = new ObjectInputStream(fis);
-        Dealer dealer = (Dealer) in.readObject();
-        fis.close();
-        //Parse the hand and score info from the 
+        String filename = "save/" + key + ".dealer.snap";
+        DealerSnapshot snapshot = DealerSnapshot.load(filename);
+        //Parse the hand and score info from the last stats in the log
         String logName = "logs/" + key + ".dealer.rawlog";
-        br = new BufferedReader(new FileReader(logName));
-        String nextLine;
-        while ((nextLine = br.readLine()) != null) {
-            if (nextLine.startsWith("STATS")) {
-                StringTokenizer st = new StringTokenizer(nextLine, ":");
-                st.nextToken();
-                st.nextToken();
-                st.nextToken();
-                st.nextToken();
-                try {
-                    handNumber = new Integer(st.nextToken()).intValue();
-                    //Restore the dealer to the last hand played
-                    dealer.restoreToHand(handNumber);                   
-                } catch (NumberFormatException ex) {
-                    System.err.println("Could not parse hand number, exiting");
-                    throw new ClassNotFoundException();
+        String historyName = "logs/" + key + ".dealer.hh";
+        String[] block;
+        if (!new File(logName).exists() && new File(historyName).exists()) {
+            logName = historyName;
+            block = lastHistoryStats(historyName);
+        } else {
+            block = lastStats(logName, snapshot.getNumPlayers());
+        }
+        if (block != null) {
+            StringTokenizer st = new StringTokenizer(block[0], ":");
+            st.nextToken();
+            st.nextToken();
+            st.nextToken();
+            st.nextToken();
+            try {
+                handNumber = new Integer(st.nextToken()).intValue();
+                //Restore the dealer to the last hand played
+                snapshot = snapshot.atHand(handNumber);
+            } catch (NumberFormatException ex) {
+                System.err.println("Could not parse hand number, exiting");
+                throw new IOException("Could not parse hand number in " + logName);
+            }
+            for (int i = 1; i < block.length; i++) {
+                String nextLine = block[i];
+                if (!nextLine.startsWith("AAAIPLAYER") && !nextLine.startsWith("GUIPLAYER")) {
+                    continue;
                 }
-            } else if (nextLine.startsWith("AAAIPLAYER") || nextLine.startsWith("GUIPLAYER")) {
                 //Setup a AAAI Player
-                StringTokenizer st = new StringTokenizer(nextLine, ":");
+                st = new StringTokenizer(nextLine, ":");
                 st.nextToken();
                 st.nextToken();
                 name = st.nextToken();
@@ -78,25 +92,168 @@ public class MatchRebuilder {
                     position = new Integer(st.nextToken()).intValue();
                     st.nextToken();
                     score = new Integer(st.nextToken()).intValue();
-                    if (!dealer.restorePlayer(name, seat, stack, position, score)) {
+                    if (!snapshot.restorePlayer(name, seat, stack, position, score)) {
                         System.err.println("Could not restore player " + name + ", exiting");
-                        throw new ClassNotFoundException();
-                    } 
+                        throw new IOException("Could not restore player " + name);
+                    }
                 } catch (NumberFormatException ex) {
                     System.err.println("Could not parse player info, exiting");
-                    throw new ClassNotFoundException();
+                    throw new IOException("Could not parse player info in " + logName);
                 }
             }
         }
 
-        //Write out the new serialized file           
+        //Write out the new snapshot
         System.out.println("Restored session: "+key);
         System.out.println("Writing new dealer to file " + filename);
-        FileOutputStream fos = new FileOutputStream(filename);
-        ObjectOutputStream out = new ObjectOutputStream(fos);
-        out.writeObject(dealer);
-        out.close();
-        return dealer;
+        snapshot.save(filename);
+        return snapshot;
+    }
+
+    /**
+     * Find the last complete STATS block in a rawlog by reading it backwards
+     * from the end a chunk at a time.  A block is complete when the STATS line
+     * is followed by a whole line for each player.
+     * @param logName The rawlog
+     * @param numPlayers The number of players in the match
+     * @return The STATS line followed by the player lines, or null if the log
+     * has no complete block
+     * @throws java.io.FileNotFoundException if there is no log
+     * @throws java.io.IOException on a read error
+     */
+    static String[] lastStats(String logName, int numPlayers) throws FileNotFoundException, IOException {
+        RandomAccessFile file = new RandomAccessFile(logName, "r");
+        try {
+            // The lines after the one being looked at, nearest first
+            LinkedList<String> following = new LinkedList<String>();
+            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] partial = new byte[0];
+            long pos = file.length();
+            boolean lastLine = true;
+            while (pos > 0) {
+                int n = (int) Math.min(CHUNK_SIZE, pos);
+                pos -= n;
+                file.seek(pos);
+                file.readFully(chunk, 0, n);
+                byte[] bytes = new byte[n + partial.length];
+                System.arraycopy(chunk, 0, bytes, 0, n);
+                System.arraycopy(partial, 0, bytes, n, partial.length);
+                int end = bytes.length;
+                if (lastLine) {
+                    // Anything after the last newline was cut off
+                    while (end > 0 && bytes[end - 1] != '\n') {
+                        end--;
+                    }
+                    if (end == 0 && pos > 0) {
+                        partial = bytes;
+                        continue;
+                    }
+                    lastLine = false;
+                }
+                // Each line is between a newline (or the start of the file)
+                // and the newline at end - 1
+                int lineEnd = end;
+                for (int i = end - 2; i >= -1; i--) {
+                    if (i >= 0 && bytes[i] != '\n') {
+                        continue;
+                    }
+                    if (i < 0 && pos > 0) {
+                        break;
+                    }
+                    String line = new String(bytes, i + 1, Math.max(0, lineEnd - 1 - (i + 1)));
+                    lineEnd = i + 1;
+                    if (line.length() == 0) {
+                        continue;
+                    }
+                    if (line.startsWith("STATS") && isComplete(following, numPlayers)) {
+                        String[] block = new String[numPlayers + 1];
+                        block[0] = line;
+                        for (int p = 0; p < numPlayers; p++) {
+                            block[p + 1] = following.get(p);
+                        }
+                        return block;
+                    }
+                    following.addFirst(line);
+                    if (following.size() > numPlayers) {
+                        following.removeLast();
+                    }
+                }
+                partial = new byte[lineEnd];
+                System.arraycopy(bytes, 0, partial, 0, lineEnd);
+            }
+            return null;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Build the STATS block the dealer would have logged after the last hand
+     * in a hand history, as {@link HistoryConverter} writes it.  The scores
+     * are those in the header the hand was played under, plus the changes of
+     * every hand played under that header.
+     * @param historyName The hand history
+     * @return The STATS line followed by the player lines, or null if the
+     * history has no hands
+     * @throws java.io.IOException if the history can't be read
+     */
+    static String[] lastHistoryStats(String historyName) throws IOException {
+        HandHistoryReader reader = new HandHistoryReader(historyName);
+        try {
+            int last = reader.getNumHands() - 1;
+            if (last < 0) {
+                return null;
+            }
+            MatchHeader header = reader.getHeaderOf(last);
+            int first = last;
+            while (first > 0 && reader.getHeaderOf(first - 1) == header) {
+                first--;
+            }
+            int[] scores = new int[header.getNumPlayers()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = header.getScore(i);
+            }
+            HandRecord hand = null;
+            for (int i = first; i <= last; i++) {
+                hand = reader.getHand(i);
+                for (int p = 0; p < hand.getNumPlayers(); p++) {
+                    scores[header.indexOfSeat(hand.getSeat(p))] += hand.getScoreChange(p);
+                }
+            }
+            int numPlayers = hand.getNumPlayers();
+            String[] block = new String[numPlayers + 1];
+            block[0] = "STATS:Current Player:" + hand.getCurrentPlayer() +
+                    ":Hands Played:" + (hand.getHandNumber() + 1);
+            for (int p = 0; p < numPlayers; p++) {
+                int index = header.indexOfSeat(hand.getSeat(p));
+                block[p + 1] = header.getPrefix(index) + "PLAYER:Name:" + header.getName(index) +
+                        ":Stack:" + (header.getBuyIn(index) + hand.getNet(p)) +
+                        ":Seat:" + hand.getSeat(p) +
+                        ":Position:" + (p + 1) % numPlayers +
+                        ":Score:" + scores[index];
+            }
+            return block;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Check that the lines after a STATS line are a line for each player
+     * @param following The lines after the STATS line, nearest first
+     * @param numPlayers The number of players in the match
+     * @return True if the block is complete
+     */
+    private static boolean isComplete(LinkedList<String> following, int numPlayers) {
+        if (following.size() < numPlayers) {
+            return false;
+        }
+        for (int p = 0; p < numPlayers; p++) {
+            if (following.get(p).indexOf("PLAYER:Name:") < 0) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -110,8 +267,6 @@ public class MatchRebuilder {
             Logger.getLogger(MatchRebuilder.class.getName()).log(Level.SEVERE, null, ex);
         } catch (IOException ex) {
             Logger.getLogger(MatchRebuilder.class.getName()).log(Level.SEVERE, null, ex);
-        } catch (ClassNotFoundException ex) {
-            Logger.getLogger(MatchRebuilder.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
 }
@@ -0,0 +1,169 @@
+package glassfrog.tools;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Starts the server's threads.  Rooms, dealers, connection workers and the
+ * AAAI bot helpers all get their threads from here, so that they can be run on
+ * virtual threads where the JVM has them.  A virtual thread blocked waiting for
+ * a player's action does not hold on to an OS thread, so a JVM can host
+ * thousands of matches.
+ *
+ * Virtual threads are used by default when the JVM supports them (Java 21 and
+ * later) and platform threads otherwise.  Set the system property
+ * glassfrog.threads to "platform" to always use platform threads, for
+ * instance java -Dglassfrog.threads=platform -jar GlassFrog.jar
+ *
+ * Room and dealer threads are started with {@link #start} and, as platform
+ * threads, keep the JVM running until their matches are over.  The threads
+ * that only serve a connection, such as a player's reader, are started with
+ * {@link #startDaemon}.  Virtual threads are always daemon threads.
+ *
+ * The virtual thread API is looked up by reflection so the server still
+ * builds and runs on older JVMs.
+ * @author jdavidso
+ */
+public class Threads {
+
+    public static final String MODE_PROPERTY = "glassfrog.threads";
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+    private static final Method NEW_THREAD_PER_TASK = lookup(Executors.class,
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final boolean VIRTUAL =
+            !"platform".equalsIgnoreCase(System.getProperty(MODE_PROPERTY)) &&
+            virtualThreadsWork();
+
+    private Threads() {
+    }
+
+    /**
+     * Look up a public method, or return null if this JVM doesn't have it
+     * @param c The class to look in
+     * @param name The name of the method
+     * @param types The parameter types
+     * @return The method or null
+     */
+    private static Method lookup(Class<?> c, String name, Class<?>... types) {
+        try {
+            return c.getMethod(name, types);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Check that this JVM can actually start virtual threads.  On Java 19 and
+     * 20 the method is there but throws unless preview features are enabled.
+     * @return True if Thread.ofVirtual() can be called
+     */
+    private static boolean virtualThreadsWork() {
+        if (OF_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            OF_VIRTUAL.invoke(null);
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Check to see if threads are started as virtual threads
+     * @return True for virtual threads, False for platform threads
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+
+    /**
+     * Get a ThreadFactory for threads named prefix-0, prefix-1 and so on.
+     * Virtual threads are always daemon threads, and platform threads from
+     * this factory are made daemons to match.
+     * @param prefix The start of the thread names
+     * @return A ThreadFactory for virtual or platform threads
+     */
+    public static ThreadFactory factory(final String prefix) {
+        if (VIRTUAL) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (Exception ex) {
+                throw new IllegalStateException("Could not create a virtual thread factory", ex);
+            }
+        }
+        return new ThreadFactory() {
+
+            private int count;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Start a task on a new thread.  A platform thread is not a daemon, so the
+     * JVM will not exit while the task is running.
+     * @param task The task to run
+     * @param name The name of the thread
+     * @return The started thread
+     */
+    public static Thread start(Runnable task, String name) {
+        return start(task, name, false);
+    }
+
+    /**
+     * Start a task on a new daemon thread, for helpers that should not keep
+     * the JVM running once the rooms and dealers are done
+     * @param task The task to run
+     * @param name The name of the thread
+     * @return The started thread
+     */
+    public static Thread startDaemon(Runnable task, String name) {
+        return start(task, name, true);
+    }
+
+    /**
+     * Start a task on a new thread
+     * @param task The task to run
+     * @param name The name of the thread
+     * @param daemon True to make a platform thread a daemon
+     * @return The started thread
+     */
+    private static Thread start(Runnable task, String name, boolean daemon) {
+        Thread t = factory(name).newThread(task);
+        t.setName(name);
+        if (!VIRTUAL) {
+            t.setDaemon(daemon);
+        }
+        t.start();
+        return t;
+    }
+
+    /**
+     * Get an executor that runs each task on its own new thread.  With virtual
+     * threads this is the JVM's thread per task executor, otherwise a cached
+     * pool of platform threads.
+     * @param prefix The start of the thread names
+     * @return An ExecutorService
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        ThreadFactory factory = factory(prefix);
+        if (VIRTUAL && NEW_THREAD_PER_TASK != null) {
+            try {
+                return (ExecutorService) NEW_THREAD_PER_TASK.invoke(null, factory);
+            } catch (Exception ex) {
+                throw new IllegalStateException("Could not create a virtual thread executor", ex);
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+}